@@ -0,0 +1,117 @@
+package org.sdsai.dsp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A {@link BpskDetector} that finds its own carrier.
+ *
+ * Audio is passed through a {@link CarrierAcquisition} before it is demodulated. When an
+ * idle signal is found away from where the detector is tuned the detector is
+ * {@link BpskDetector#tune(double) tuned} to it, so the carrier need not be known in advance.
+ *
+ * This class is not thread safe.
+ */
+public class AcquiringDetector implements SymbolDetector {
+
+    /**
+     * How far, in Hz, a carrier must be from the detector's frequency before the detector is retuned.
+     * Retuning resets the detector's filters, so small differences are ignored.
+     */
+    private static final double RETUNE_HZ = 1.0;
+
+    private final BpskDetector detector;
+
+    private final CarrierAcquisition acquisition;
+
+    /**
+     * Constructor.
+     *
+     * @param detector The detector to tune. Its frequency is used until a carrier is found.
+     */
+    public AcquiringDetector(final BpskDetector detector) {
+        this.detector    = detector;
+        this.acquisition = new CarrierAcquisition(detector.getSampleRate(), detector.getSymbolRate());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sampleRate The audio sample rate.
+     * @param symbolsPerSecond How many symbols per second. For PSK31 this is {@link BpskGenerator#PSK31_SYMBOLS_PER_SECOND}.
+     */
+    public AcquiringDetector(final int sampleRate, final double symbolsPerSecond) {
+        this(new BpskDetector(BpskGenerator.DEFAULT_FREQUENCY, sampleRate, symbolsPerSecond));
+    }
+
+    /**
+     * Search the audio for a carrier and tune to it if one is found.
+     */
+    private void acquire(final byte[] data, final int off, final int len) {
+        if (acquisition.process(data, off, len)) {
+            final double hz = acquisition.getCarrier();
+
+            if (Math.abs(hz - detector.getFrequency()) > RETUNE_HZ) {
+                detector.tune(hz);
+            }
+        }
+    }
+
+    @Override
+    public void detectSignal(final byte[] data, final int off, final int len, final SymbolSink sink)
+        throws IOException
+    {
+        acquire(data, off, len);
+        detector.detectSignal(data, off, len, sink);
+    }
+
+    @Override
+    public void detectSignal(final byte[] data, final int off, final int len, final OutputStream os)
+        throws IOException
+    {
+        acquire(data, off, len);
+        detector.detectSignal(data, off, len, os);
+    }
+
+    /**
+     * Return the carrier search, so its band, timing and threshold may be set.
+     *
+     * @return the carrier search.
+     */
+    public CarrierAcquisition getAcquisition() {
+        return acquisition;
+    }
+
+    /**
+     * Return the wrapped detector.
+     *
+     * @return the wrapped detector.
+     */
+    public BpskDetector getDetector() {
+        return detector;
+    }
+
+    /**
+     * Return the frequency the detector is tuned to.
+     *
+     * @return the frequency the detector is tuned to.
+     */
+    public double getFrequency() {
+        return detector.getFrequency();
+    }
+
+    @Override
+    public int getFrameSize() {
+        return detector.getFrameSize();
+    }
+
+    @Override
+    public int getSampleRate() {
+        return detector.getSampleRate();
+    }
+
+    @Override
+    public double getSymbolRate() {
+        return detector.getSymbolRate();
+    }
+}
@@ -0,0 +1,105 @@
+package org.sdsai.dsp;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * A fixed set of equally sized audio buffers shared by many producers and consumers.
+ *
+ * Every buffer is allocated when the pool is built, so the memory used for audio in flight
+ * is bounded by the pool, not by the number of streams using it. Taking a buffer never blocks.
+ * When none are free {@link #take()} returns null and the caller decides whether to wait or drop audio.
+ *
+ * This class is thread safe.
+ */
+public class AudioBufferPool {
+
+    private final ArrayBlockingQueue<ByteBuffer> free;
+
+    private final int bufferSize;
+
+    private final int buffers;
+
+    /**
+     * Constructor.
+     *
+     * @param bufferSize The size, in bytes, of every buffer.
+     * @param buffers The number of buffers.
+     */
+    public AudioBufferPool(final int bufferSize, final int buffers) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be positive: "+bufferSize);
+        }
+        if (buffers < 1) {
+            throw new IllegalArgumentException("Buffer count must be positive: "+buffers);
+        }
+
+        this.free       = new ArrayBlockingQueue<ByteBuffer>(buffers);
+        this.bufferSize = bufferSize;
+        this.buffers    = buffers;
+
+        for (int i = 0; i < buffers; ++i) {
+            free.add(ByteBuffer.allocate(bufferSize));
+        }
+    }
+
+    /**
+     * Take a free buffer.
+     *
+     * @return A cleared buffer or null if every buffer is in use.
+     */
+    public ByteBuffer take() {
+        final ByteBuffer buffer = free.poll();
+
+        if (buffer != null) {
+            buffer.clear();
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Return a buffer taken from this pool.
+     *
+     * @param buffer The buffer. It must not be used after it is returned.
+     *
+     * @throws IllegalArgumentException if the buffer is not the size of this pool's buffers.
+     * @throws IllegalStateException if more buffers are returned than were taken.
+     */
+    public void give(final ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize) {
+            throw new IllegalArgumentException("Buffer of "+buffer.capacity()+" bytes is not from a pool of "+bufferSize+" byte buffers.");
+        }
+
+        if (!free.offer(buffer)) {
+            throw new IllegalStateException("More buffers were returned than were taken.");
+        }
+    }
+
+    /**
+     * Return the number of free buffers.
+     *
+     * @return the number of free buffers.
+     */
+    public int available() {
+        return free.size();
+    }
+
+    /**
+     * Return the size of every buffer.
+     *
+     * @return the size of every buffer.
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Return the number of buffers in the pool.
+     *
+     * @return the number of buffers in the pool.
+     */
+    public int getBuffers() {
+        return buffers;
+    }
+}
@@ -0,0 +1,293 @@
+package org.sdsai.dsp;
+
+import java.io.IOException;
+
+/**
+ * Demodulate a BPSK signal that has already been mixed near to 0 Hz and decimated.
+ *
+ * This is the per signal half of a {@link PskChannelizer}. Each complex sample is
+ * <ol>
+ * <li>mixed by the remaining carrier offset, which is tracked by squaring the signal to
+ *     remove the modulation and measuring how fast the result rotates,</li>
+ * <li>summed over one symbol, a matched filter for the PSK31 pulse,</li>
+ * <li>and, once per symbol at the sample where the summed energy is highest, compared
+ *     with the previous symbol. A reversal of phase is a 0, otherwise a 1.</li>
+ * </ol>
+ * Only a handful of samples per symbol are needed, so this costs far less than a
+ * {@link BpskDetector} working on full rate audio.
+ */
+public class BasebandBpskDemodulator {
+
+    /**
+     * The weight of a new symbol's energy in the running average of its slot.
+     */
+    private static final double ENERGY_WEIGHT = 1.0 / 8.0;
+
+    /**
+     * The weight of a new sample in the averaged rotation of the squared signal.
+     */
+    private static final double ROTATION_WEIGHT = 1.0 / 16.0;
+
+    /**
+     * The fraction of the measured frequency error corrected every sample.
+     */
+    private static final double FREQUENCY_GAIN = 1.0 / 64.0;
+
+    /**
+     * The number of symbols during which the timing may jump to any slot.
+     * After this it moves at most one slot per symbol.
+     */
+    private static final int ACQUIRE_SYMBOLS = 16;
+
+    private final double sampleRate;
+
+    /**
+     * The number of samples in each symbol, rounded. This is the length of the matched filter
+     * and the number of slots each symbol period is divided into for timing.
+     */
+    private final int samplesPerSymbol;
+
+    /**
+     * The phase of the correcting oscillator, in radians.
+     */
+    private double mixPhase;
+
+    /**
+     * The frequency of the correcting oscillator, in radians per sample.
+     */
+    private double mixStep;
+
+    /**
+     * The last mixed sample squared.
+     */
+    private double lastSquareI;
+    private double lastSquareQ;
+
+    /**
+     * The averaged rotation of the squared signal from one sample to the next.
+     */
+    private double rotationI;
+    private double rotationQ;
+
+    /**
+     * The last {@link #samplesPerSymbol} mixed samples.
+     */
+    private final double[] historyI;
+    private final double[] historyQ;
+
+    /**
+     * The sum of {@link #historyI} and {@link #historyQ}.
+     */
+    private double sumI;
+    private double sumQ;
+
+    /**
+     * Where in {@link #historyI} and {@link #historyQ} the next sample goes.
+     */
+    private int historyIndex;
+
+    /**
+     * How far through the current symbol period the last sample was, from 0 to 1.
+     */
+    private double symbolClock;
+
+    /**
+     * How far {@link #symbolClock} advances each sample.
+     */
+    private final double symbolStep;
+
+    /**
+     * The running average energy of the symbol sum at each slot of the symbol period.
+     */
+    private final double[] slotEnergy;
+
+    /**
+     * The slot with the most energy, where each symbol is decided.
+     */
+    private int center;
+
+    /**
+     * The number of symbol periods seen, up to {@link #ACQUIRE_SYMBOLS}.
+     */
+    private int periods;
+
+    /**
+     * The number of samples since the last decision.
+     */
+    private int sinceDecision;
+
+    /**
+     * The symbol sum at the last decision.
+     */
+    private double lastI;
+    private double lastQ;
+
+    /**
+     * Constructor.
+     *
+     * @param sampleRate The rate of the complex samples.
+     * @param symbolsPerSecond How many symbols per second. There must be at least four samples per symbol.
+     */
+    public BasebandBpskDemodulator(final double sampleRate, final double symbolsPerSecond) {
+        this.sampleRate       = sampleRate;
+        this.samplesPerSymbol = (int) Math.round(sampleRate / symbolsPerSecond);
+        this.symbolStep       = symbolsPerSecond / sampleRate;
+
+        if (samplesPerSymbol < 4) {
+            throw new IllegalArgumentException("At least four samples per symbol are needed: "+sampleRate / symbolsPerSecond);
+        }
+
+        this.historyI   = new double[samplesPerSymbol];
+        this.historyQ   = new double[samplesPerSymbol];
+        this.slotEnergy = new double[samplesPerSymbol];
+
+        reset(0);
+    }
+
+    /**
+     * Forget the signal and start over.
+     *
+     * @param offsetHz The first guess at the carrier's offset from 0 Hz.
+     */
+    public void reset(final double offsetHz) {
+        mixPhase      = 0;
+        mixStep       = 2.0 * Math.PI * offsetHz / sampleRate;
+        lastSquareI   = 0;
+        lastSquareQ   = 0;
+        rotationI     = 0;
+        rotationQ     = 0;
+        sumI          = 0;
+        sumQ          = 0;
+        historyIndex  = 0;
+        symbolClock   = 0;
+        center        = 0;
+        periods       = 0;
+        sinceDecision = 0;
+        lastI         = 0;
+        lastQ         = 0;
+
+        for (int i = 0; i < samplesPerSymbol; ++i) {
+            historyI[i]   = 0;
+            historyQ[i]   = 0;
+            slotEnergy[i] = 0;
+        }
+    }
+
+    /**
+     * Demodulate one complex sample.
+     *
+     * @param i The in phase part of the sample.
+     * @param q The quadrature part of the sample.
+     * @param sink Receives each symbol, a 1 or 0, as it is decided.
+     *
+     * @throws IOException on errors from {@code sink}.
+     */
+    public void process(final double i, final double q, final SymbolSink sink) throws IOException {
+        /* Mix by the carrier offset. */
+        final double c = Math.cos(mixPhase);
+        final double s = Math.sin(mixPhase);
+        final double mi = i * c + q * s;
+        final double mq = q * c - i * s;
+
+        mixPhase += mixStep;
+        if (mixPhase > Math.PI) {
+            mixPhase -= 2.0 * Math.PI;
+        }
+        else if (mixPhase < -Math.PI) {
+            mixPhase += 2.0 * Math.PI;
+        }
+
+        /* Squaring removes the BPSK modulation, leaving twice the remaining offset. */
+        final double si = mi * mi - mq * mq;
+        final double sq = 2.0 * mi * mq;
+        rotationI += ROTATION_WEIGHT * ((si * lastSquareI + sq * lastSquareQ) - rotationI);
+        rotationQ += ROTATION_WEIGHT * ((sq * lastSquareI - si * lastSquareQ) - rotationQ);
+        lastSquareI = si;
+        lastSquareQ = sq;
+
+        if (rotationI != 0 || rotationQ != 0) {
+            mixStep += FREQUENCY_GAIN * Math.atan2(rotationQ, rotationI) / 2.0;
+        }
+
+        /* Sum over one symbol. */
+        sumI += mi - historyI[historyIndex];
+        sumQ += mq - historyQ[historyIndex];
+        historyI[historyIndex] = mi;
+        historyQ[historyIndex] = mq;
+
+        if (++historyIndex == samplesPerSymbol) {
+            historyIndex = 0;
+        }
+
+        /* Advance the symbol clock. A symbol need not be a whole number of samples. */
+        final double before = symbolClock;
+        symbolClock += symbolStep;
+
+        final boolean wrapped = symbolClock >= 1.0;
+        if (wrapped) {
+            symbolClock -= 1.0;
+        }
+
+        final int slot = (int) (symbolClock * samplesPerSymbol);
+        slotEnergy[slot] += ENERGY_WEIGHT * ((sumI * sumI + sumQ * sumQ) - slotEnergy[slot]);
+
+        /* Decide when the clock passes the middle of the center slot. */
+        final double decision = (center + 0.5) / samplesPerSymbol;
+        final boolean crossed = wrapped
+            ? (before < decision || symbolClock >= decision)
+            : (before < decision && symbolClock >= decision);
+
+        /* While acquiring the decision may jump to a slot the clock is about to pass. */
+        if (++sinceDecision > samplesPerSymbol / 2 && crossed) {
+            /* A phase reversal from the last symbol is a 0. */
+            sink.putSymbol((sumI * lastI + sumQ * lastQ < 0) ? 0 : 1);
+            lastI         = sumI;
+            lastQ         = sumQ;
+            sinceDecision = 0;
+
+            /* Moving the decision just after making one keeps the next one a symbol, plus or minus a slot, away. */
+            updateTiming();
+        }
+    }
+
+    /**
+     * Move the decision slot toward the slot with the most energy.
+     */
+    private void updateTiming() {
+        int max = 0;
+        for (int s = 1; s < samplesPerSymbol; ++s) {
+            if (slotEnergy[s] > slotEnergy[max]) {
+                max = s;
+            }
+        }
+
+        if (periods < ACQUIRE_SYMBOLS) {
+            ++periods;
+            center = max;
+        }
+        else {
+            /* Track slowly so noise can not make the timing slip. */
+            final int n    = samplesPerSymbol;
+            final int step = ((max - center + n + n / 2) % n) - n / 2;
+            center = (center + Integer.signum(step) + n) % n;
+        }
+    }
+
+    /**
+     * Return the carrier's offset from 0 Hz as currently tracked.
+     *
+     * @return the carrier's offset from 0 Hz.
+     */
+    public double getFrequencyOffset() {
+        return mixStep * sampleRate / (2.0 * Math.PI);
+    }
+
+    /**
+     * Return the number of samples in each symbol.
+     *
+     * @return the number of samples in each symbol.
+     */
+    public int getSamplesPerSymbol() {
+        return samplesPerSymbol;
+    }
+}
@@ -1,8 +1,8 @@
 package org.sdsai.dsp;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Arrays;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioSystem;
@@ -15,13 +15,22 @@ import javax.sound.sampled.LineUnavailableException;
  * Detect and decode BPSK modulated audio signals.
  *
  * This class uses default settings from {@link BpskGenerator} when possible.
+ *
+ * Only {@link #tune(double)} and {@link #getFrequency()} may be called while another thread
+ * is decoding. Everything else must be called from the decoding thread.
  */
-public class BpskDetector {
+public class BpskDetector implements SymbolDetector {
 
     /**
-     * The target frequency to generate or decode a PSK31 signal on.
+     * The tuning most recently set by {@link #tune(double)}, possibly from another thread.
      */
-    private double hz;
+    private volatile Tuning tuning;
+
+    /**
+     * The tuning the detector is using. This is replaced by {@link #tuning} at the start of
+     * a call to decode.
+     */
+    private Tuning applied;
 
     /**
      * The audio sample rate. Typically 11025, 22050, or 44100.
@@ -59,18 +68,70 @@ public class BpskDetector {
     private MovingAverageFilter movingAverageFilter;
 
     /**
-     * The number of signal samples necessary to do any work.
+     * Collects symbols for {@link #detectSignal(byte[], int, int)} and
+     * {@link #detectSignal(byte[], int, int, OutputStream)}. This is reused by every call.
+     */
+    private final SymbolBuffer symbols;
+
+    /**
+     * The phase of the carrier, in radians, at the start of the current {@link #signalDetector} window.
      *
-     * This should be less than the number of {@link #samplesPerSymbol}
-     * but larger than two samples per wave form.
+     * When a window does not hold a whole number of carrier cycles the phase reported by
+     * successive windows rotates. This is subtracted from each result to undo that.
+     */
+    private double windowPhase;
+
+    /**
+     * How far, in radians, the carrier advances over one {@link #signalDetector} window.
      */
-    private int binSize;
+    private double windowAdvance;
+
+    /**
+     * {@link #windowPhase} as a unit complex number, for decisions without angles.
+     */
+    private double windowI;
+    private double windowQ;
+
+    /**
+     * {@link #windowAdvance} as a unit complex number.
+     */
+    private double advanceI;
+    private double advanceQ;
 
     /**
      * The current phase of the signal as detected by the {@link #signalDetector}.
      */
     private double phase;
 
+    /**
+     * The phase of the latest {@link #signalDetector} window, in radians.
+     */
+    private double phaseNow;
+
+    /**
+     * The signal at the last decision, the complex counterpart of {@link #phase}.
+     */
+    private double referenceI;
+    private double referenceQ;
+
+    /**
+     * The signal of the latest {@link #signalDetector} window with {@link #windowPhase} removed.
+     */
+    private double nowI;
+    private double nowQ;
+
+    /**
+     * The square of the cosine of the phase change beyond which a reversal is detected.
+     * See {@link #setReversalThreshold(double)}.
+     */
+    private double reversalThreshold2;
+
+    /**
+     * If true phases are computed as angles and compared, as a diagnostic.
+     * Otherwise only the sign of a complex product is used.
+     */
+    private boolean angleDecisions;
+
     /**
      * The symbol detected in the previous match of {@link #signalDetector} or by {@link #sampleCount}.
      *
@@ -120,84 +181,198 @@ public class BpskDetector {
         this.symbolsPerSecond     = symbolsPerSecond;
         this.samplesPerSymbol     = (int)(this.sampleRate / this.symbolsPerSecond);
         this.signalDetectorResult = new Goertzel.Result();
+        this.symbols              = new SymbolBuffer(64);
 
         tune(hz);
 
-        this.phase       = Double.NaN;
-        this.sampleCount = 0;
-        this.lastSymbol  = 1;
+        /* Leave room in the filter to retune down to the symbol rate without allocating. */
+        this.signalDetector      = new Goertzel(tuning.goertzel);
+        this.movingAverageFilter = new MovingAverageFilter(Math.max(
+            tuning.filterLength,
+            MovingAverageFilter.length(symbolsPerSecond, sampleRate)));
+        apply(tuning);
+
+        this.phase              = Double.NaN;
+        this.referenceI         = 0;
+        this.referenceQ         = 0;
+        this.reversalThreshold2 = 0;
+        this.angleDecisions     = false;
+        this.sampleCount        = 0;
+        this.lastSymbol         = 1;
     }
 
     /**
-     * Set the target frequency and build related objects.
+     * Everything that depends on the target frequency, computed when tuning.
      *
-     * This allows a user to change the tuning of a created BpskDetector instead of having t
+     * This does not change once built. The {@link Goertzel} only carries settings
+     * and is never given samples.
+     */
+    private static final class Tuning {
+        private final double hz;
+        private final Goertzel goertzel;
+        private final int filterLength;
+        private final double windowAdvance;
+        private final double advanceI;
+        private final double advanceQ;
+
+        private Tuning(final double hz, final int sampleRate, final int samplesPerSymbol) {
+            final int binSize = binSize(hz, sampleRate, samplesPerSymbol);
+
+            this.hz            = hz;
+            this.goertzel      = new Goertzel(hz, sampleRate, binSize);
+            this.filterLength  = MovingAverageFilter.length(hz, sampleRate);
+            this.windowAdvance = (2.0 * Math.PI * hz * binSize / sampleRate) % (2.0 * Math.PI);
+            this.advanceI      = Math.cos(windowAdvance);
+            this.advanceQ      = Math.sin(windowAdvance);
+        }
+    }
+
+    /**
+     * Set the target frequency.
+     *
+     * This allows a user to change the tuning of a created BpskDetector instead of having to
      * destroy and create a new one. This is desirable in cases where the BpskDetector object
      * has been incorporated in a pipeline of data and is not easily removed or replaced.
      *
-     * The user should take care to prevent data from being processed by this object
-     * while the tune method is being called.
+     * This may be called from any thread, even while another is decoding. The settings for
+     * the new frequency are computed here and the decoding thread starts using them at the
+     * start of its next call to {@code detectSignal}, without waiting or allocating.
      *
      * @param hz The new target frequncy for this object.
      *
      */
     public void tune(final double hz) {
-        this.hz                  = hz;
-        this.binSize             = (int)(sampleRate / hz) * 2;
-        this.signalDetector      = new Goertzel(hz, sampleRate, this.binSize);
-        this.movingAverageFilter = new MovingAverageFilter(hz, sampleRate);
+        this.tuning = new Tuning(hz, sampleRate, samplesPerSymbol);
     }
 
     /**
-     * Given a 16bit, big endian, signed audio sample, convert it to short[] and apply filters.
+     * Start using a tuning. This is only called from the decoding thread.
      */
-    private short[] convertToSamples(final byte[] buffer, final int off, final int len) {
-        short[] samples = new short[len / 2];
+    private void apply(final Tuning tuning) {
+        this.signalDetector.tune(tuning.goertzel);
+        this.movingAverageFilter.resize(tuning.filterLength);
+        this.windowPhase   = 0;
+        this.windowAdvance = tuning.windowAdvance;
+        this.windowI       = 1;
+        this.windowQ       = 0;
+        this.advanceI      = tuning.advanceI;
+        this.advanceQ      = tuning.advanceQ;
+        this.applied       = tuning;
+    }
+
+    /**
+     * Set how large a change of phase between symbols is detected as a reversal.
+     *
+     * A reversal is detected when the cosine of the change of phase is below {@code -cosine}.
+     * The default of 0 detects any change of more than 90 degrees. Larger values demand a
+     * cleaner reversal, so noise is less likely to cause a false 0.
+     *
+     * @param cosine The threshold, from 0 up to but not including 1.
+     */
+    public void setReversalThreshold(final double cosine) {
+        if (cosine < 0 || cosine >= 1) {
+            throw new IllegalArgumentException("Threshold must be at least 0 and less than 1: "+cosine);
+        }
+
+        this.reversalThreshold2 = cosine * cosine;
+    }
+
+    /**
+     * Choose how a change of phase is detected.
+     *
+     * By default the latest window is multiplied by the conjugate of the window at the
+     * last decision and only the sign of the real part of the product is used, so no
+     * trigonometry is done. Deciding with angles computes the phase of every window with
+     * {@link Goertzel.Result#phase()}, which is slower, and is kept for diagnostics.
+     * The reversal threshold is not used when deciding with angles.
+     *
+     * @param angleDecisions True to decide with angles.
+     */
+    public void setAngleDecisions(final boolean angleDecisions) {
+        if (angleDecisions != this.angleDecisions) {
+            /* Carry the window's phase over and start comparing afresh. */
+            if (angleDecisions) {
+                windowPhase = Math.atan2(windowQ, windowI);
+            }
+            else {
+                windowI = Math.cos(windowPhase);
+                windowQ = Math.sin(windowPhase);
+            }
 
-        /* Convert the incoming buffer into an array of samples. */
-        for (int i = 0; i < samples.length; ++i) {
-            /* Convert the raw bytes to a sample. */
-            samples[i] = (short)(((buffer[off+i*2] << 8) & 0xff00) | (buffer[off+i*2+1] & 0xff));
+            this.angleDecisions = angleDecisions;
+            this.phase          = Double.NaN;
+            this.referenceI     = 0;
+            this.referenceQ     = 0;
+        }
+    }
 
-            /* Apply a moving average filter to that sample. */
-            samples[i] = movingAverageFilter.process(samples[i]);
+    /**
+     * Choose the number of samples in each {@link #signalDetector} window.
+     *
+     * A window covers two carrier cycles, but at higher symbol rates it is shortened
+     * to one cycle so that several windows still fit in every symbol and a phase
+     * reversal is confirmed by two windows well before the next symbol.
+     *
+     * @param hz The carrier frequency.
+     * @param sampleRate The audio sample rate.
+     * @param samplesPerSymbol The number of audio samples in each symbol.
+     *
+     * @return The number of samples in each window.
+     */
+    static int binSize(final double hz, final int sampleRate, final int samplesPerSymbol) {
+        final int cycleSamples = Math.max(1, (int)(sampleRate / hz));
+
+        if (cycleSamples * 2 * 4 <= samplesPerSymbol) {
+            return cycleSamples * 2;
         }
 
-        return samples;
+        return cycleSamples;
     }
 
     /**
      * Given a signal encoded as specified by {@link #getAudioFormat()} demodule it.
      *
-     * If any data is made available by demodulating the buffer, b, it is returned to the user
-     * as a series of integer values 1 and 0 in the returned array.
+     * If any data is made available by demodulating the buffer it is put into {@code sink}
+     * as a series of symbols 1 and 0.
+     *
+     * Each sample is decoded from the bytes, filtered and passed to the {@link Goertzel} in a
+     * single pass that stops at the end of each window to decide on a symbol.
+     * This allocates nothing, provided {@code sink} does not, even after {@link #tune(double)}.
      *
      * @param data Raw audio data.
      * @param off The offset into the buffer to operate on.
      * @param len The length of data to operate on.
-     * @param os Output stream that bytes are written too as they are detected.
+     * @param sink The sink that symbols are put into as they are detected.
      *
-     * @throws IOException on IO errors when populating various internal buffers.
+     * @throws IOException on errors from {@code sink}.
      */
-    public void detectSignal(final byte[] data, final int off, final int len, final OutputStream os)
+    public void detectSignal(final byte[] data, final int off, final int len, final SymbolSink sink)
         throws IOException
     {
-        final short samples[] = convertToSamples(data, off, len);
+        /* Pick up a new tuning between calls, never part way through. */
+        final Tuning latest = tuning;
+        if (latest != applied) {
+            apply(latest);
+        }
+
+        /* Only whole samples are processed. */
+        final int end = off + (len & ~1);
 
-        int samplesOff = 0;
+        int dataOff = off;
 
         do {
-            final int sampled = signalDetector.process(samples, samplesOff, samples.length-samplesOff, signalDetectorResult);
+            final int consumed = signalDetector.processBigEndian(
+                data, dataOff, end-dataOff, movingAverageFilter, signalDetectorResult);
 
-            /* Sampled = -1, the no result is available. Just update the offsets. */
-            if (sampled == -1) {
-                sampleCount += samples.length - samplesOff;
-                samplesOff   = samples.length;
+            /* Consumed = -1, the no result is available. Just update the offsets. */
+            if (consumed == -1) {
+                sampleCount += (end - dataOff) / 2;
+                dataOff      = end;
             }
             /* Otherwise, a result is available. */
             else {
-                sampleCount += sampled;
-                samplesOff  += sampled;
+                sampleCount += consumed / 2;
+                dataOff     += consumed;
 
                 // FIXME - leave out until the system is a bit more stable.
                 // final double magnitude = signalDetectorResult.magnitude();
@@ -207,17 +382,16 @@ public class BpskDetector {
                 // }
                 // lastMagnitude = magnitude;
 
-                final double phaseNow   = signalDetectorResult.phase();
-                final double deltaPhase = Math.abs((phaseNow - phase) % (2.0*Math.PI));
-// System.out.println("PHASE "+phase+" PHASE NOW "+phaseNow+" DELTA PHASE "+deltaPhase);
+                final boolean reversed = angleDecisions ? reversedByAngle() : reversedByProduct();
+
                 /* This if-else handles signal detection. */
-                if (deltaPhase > Math.PI / 2.0 && deltaPhase < 3.0 * Math.PI / 2.0 )
+                if (reversed)
                 {
                     if (lastSymbol == 0) {
                         sampleCount = 0;
-                        phase       = phaseNow;
+                        holdReference();
                         lastSymbol  = 2;
-                        os.write(0);
+                        sink.putSymbol(0);
 // System.out.println("write 0");
                     }
                     else {
@@ -228,9 +402,9 @@ public class BpskDetector {
                 else if (sampleCount >= samplesPerSymbol) {
                     if (lastSymbol == 1) {
                         sampleCount = (sampleCount % samplesPerSymbol);
-                        phase       = phaseNow;
+                        holdReference();
                         lastSymbol  = 2;
-                        os.write(1);
+                        sink.putSymbol(1);
 // System.out.println("write 1");
                     }
                     else {
@@ -240,7 +414,79 @@ public class BpskDetector {
                 }
             }
 
-        } while (samplesOff < samples.length);
+        } while (dataOff < end);
+    }
+
+    /**
+     * Check if the phase of the latest window is reversed from the last decision by comparing angles.
+     */
+    private boolean reversedByAngle() {
+        phaseNow    = signalDetectorResult.phase() - windowPhase;
+        windowPhase = (windowPhase + windowAdvance) % (2.0 * Math.PI);
+
+        final double deltaPhase = Math.abs((phaseNow - phase) % (2.0*Math.PI));
+
+        return deltaPhase > Math.PI / 2.0 && deltaPhase < 3.0 * Math.PI / 2.0;
+    }
+
+    /**
+     * Check if the phase of the latest window is reversed from the last decision
+     * by the sign of the real part of the latest window times the conjugate of the last decision.
+     */
+    private boolean reversedByProduct() {
+        final double real      = signalDetectorResult.real;
+        final double imaginary = signalDetectorResult.imaginary;
+
+        /* Remove the window's phase by multiplying by its conjugate. */
+        nowI = real * windowI + imaginary * windowQ;
+        nowQ = imaginary * windowI - real * windowQ;
+
+        /* Advance the window's phase, keeping it on the unit circle. */
+        final double i     = windowI * advanceI - windowQ * advanceQ;
+        final double q     = windowQ * advanceI + windowI * advanceQ;
+        final double scale = (3.0 - (i * i + q * q)) / 2.0;
+        windowI = i * scale;
+        windowQ = q * scale;
+
+        final double dot = nowI * referenceI + nowQ * referenceQ;
+
+        return dot < 0 && dot * dot >= reversalThreshold2
+            * (nowI * nowI + nowQ * nowQ) * (referenceI * referenceI + referenceQ * referenceQ);
+    }
+
+    /**
+     * Make the latest window the reference that following windows are compared to.
+     */
+    private void holdReference() {
+        phase      = phaseNow;
+        referenceI = nowI;
+        referenceQ = nowQ;
+    }
+
+    /**
+     * Given a signal encoded as specified by {@link #getAudioFormat()} demodule it.
+     *
+     * Symbols are collected as in {@link #detectSignal(byte[], int, int, SymbolSink)}
+     * and then written to {@code os} as the bytes 1 and 0.
+     *
+     * @param data Raw audio data.
+     * @param off The offset into the buffer to operate on.
+     * @param len The length of data to operate on.
+     * @param os Output stream that bytes are written too as they are detected.
+     *
+     * @throws IOException on IO errors when populating various internal buffers.
+     */
+    public void detectSignal(final byte[] data, final int off, final int len, final OutputStream os)
+        throws IOException
+    {
+        /* Every symbol takes at least two samples, so each piece fits in the buffer. */
+        final int piece = 2 * getFrameSize() * (symbols.capacity() - 1);
+
+        for (int i = 0; i < len; i += piece) {
+            detectSignal(data, off + i, Math.min(piece, len - i), symbols);
+
+            symbols.writeTo(os);
+        }
     }
 
     /**
@@ -250,17 +496,29 @@ public class BpskDetector {
      * @param off Offset into data at which to start detecting a signal.
      * @param len The length from offset.
      *
+     * The returned array is newly allocated. Use {@link #detectSignal(byte[], int, int, OutputStream)}
+     * to decode without allocating.
+     *
      * @return A squence of 1 and 0 symbols detected from the given audio data. Note that
      *         partially detected signals may be internally buffered and not necessarily returned.
      */
     public byte[] detectSignal(final byte[] data, final int off, final int len) {
         try
         {
-            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            /* Every symbol takes at least two samples, so each piece fits in the buffer. */
+            final int piece  = 2 * getFrameSize() * (symbols.capacity() - 1);
+            byte[]    result = new byte[len / getFrameSize() / 2 + 1];
+            int       fill   = 0;
 
-            detectSignal(data, off, len, baos);
+            for (int i = 0; i < len; i += piece) {
+                detectSignal(data, off + i, Math.min(piece, len - i), symbols);
 
-            return baos.toByteArray();
+                symbols.copyTo(0, result, fill, symbols.size());
+                fill += symbols.size();
+                symbols.clear();
+            }
+
+            return Arrays.copyOf(result, fill);
         }
         catch (final IOException t) {
             return null;
@@ -298,6 +556,112 @@ public class BpskDetector {
         return this.symbolsPerSecond;
     }
 
+    /**
+     * The complete state of a {@link BpskDetector} at some point in the audio.
+     *
+     * A snapshot does not change, so it may be restored any number of times,
+     * into any detector with the same sample rate and symbol rate, on any thread.
+     */
+    public static final class Snapshot {
+        private final Tuning tuning;
+        private final Tuning applied;
+        private final int sampleRate;
+        private final double symbolsPerSecond;
+        private final Goertzel signalDetector;
+        private final MovingAverageFilter movingAverageFilter;
+        private final double windowPhase;
+        private final double windowI;
+        private final double windowQ;
+        private final double phase;
+        private final double referenceI;
+        private final double referenceQ;
+        private final double reversalThreshold2;
+        private final boolean angleDecisions;
+        private final int sampleCount;
+        private final int lastSymbol;
+
+        private Snapshot(final BpskDetector detector) {
+            this.tuning              = detector.tuning;
+            this.applied             = detector.applied;
+            this.sampleRate          = detector.sampleRate;
+            this.symbolsPerSecond    = detector.symbolsPerSecond;
+            this.signalDetector      = new Goertzel(detector.signalDetector);
+            this.movingAverageFilter = new MovingAverageFilter(detector.movingAverageFilter);
+            this.windowPhase         = detector.windowPhase;
+            this.windowI             = detector.windowI;
+            this.windowQ             = detector.windowQ;
+            this.phase               = detector.phase;
+            this.referenceI          = detector.referenceI;
+            this.referenceQ          = detector.referenceQ;
+            this.reversalThreshold2  = detector.reversalThreshold2;
+            this.angleDecisions      = detector.angleDecisions;
+            this.sampleCount         = detector.sampleCount;
+            this.lastSymbol          = detector.lastSymbol;
+        }
+
+        /**
+         * Return the carrier frequency of the detector.
+         *
+         * @return the carrier frequency of the detector.
+         */
+        public double getFrequency() {
+            return tuning.hz;
+        }
+    }
+
+    /**
+     * Capture the state of this detector between calls to {@code detectSignal}.
+     *
+     * @return the state of this detector.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Return this detector to the state in a {@link Snapshot}, including its tuning.
+     * A tuning set by {@link #tune(double)} while this runs may be lost.
+     *
+     * Decoding the same audio after restoring gives the same symbols as it did
+     * after the snapshot was taken.
+     *
+     * @param snapshot The state to return to.
+     */
+    public void restore(final Snapshot snapshot) {
+        if (snapshot.sampleRate != sampleRate || snapshot.symbolsPerSecond != symbolsPerSecond) {
+            throw new IllegalArgumentException(
+                "Snapshot of a detector at "+snapshot.sampleRate+" Hz and "+snapshot.symbolsPerSecond+
+                " symbols per second can not be restored at "+sampleRate+" Hz and "+symbolsPerSecond+".");
+        }
+
+        this.signalDetector      = new Goertzel(snapshot.signalDetector);
+        this.movingAverageFilter = new MovingAverageFilter(snapshot.movingAverageFilter);
+        this.windowPhase         = snapshot.windowPhase;
+        this.windowAdvance       = snapshot.applied.windowAdvance;
+        this.windowI             = snapshot.windowI;
+        this.windowQ             = snapshot.windowQ;
+        this.advanceI            = snapshot.applied.advanceI;
+        this.advanceQ            = snapshot.applied.advanceQ;
+        this.applied             = snapshot.applied;
+        this.tuning              = snapshot.tuning;
+        this.phase               = snapshot.phase;
+        this.referenceI          = snapshot.referenceI;
+        this.referenceQ          = snapshot.referenceQ;
+        this.reversalThreshold2  = snapshot.reversalThreshold2;
+        this.angleDecisions      = snapshot.angleDecisions;
+        this.sampleCount         = snapshot.sampleCount;
+        this.lastSymbol          = snapshot.lastSymbol;
+    }
+
+    /**
+     * Return the carrier frequency most recently tuned to.
+     *
+     * @return the carrier frequency most recently tuned to.
+     */
+    public double getFrequency() {
+        return tuning.hz;
+    }
+
     /**
      * Return the size of a single audio frame.
      *
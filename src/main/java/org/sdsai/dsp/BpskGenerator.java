@@ -1,6 +1,9 @@
 package org.sdsai.dsp;
 
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioSystem;
@@ -14,13 +17,28 @@ import javax.sound.sampled.LineUnavailableException;
  *
  * This operates on 16 bit audio samples.
  */
-public class BpskGenerator
+public class BpskGenerator implements SymbolGenerator
 {
     /**
      * PSK31 has a symbol rate of 31.25 symbols per second.
      */
     public static final double PSK31_SYMBOLS_PER_SECOND = 31.25;
 
+    /**
+     * PSK63 has a symbol rate of 62.5 symbols per second.
+     */
+    public static final double PSK63_SYMBOLS_PER_SECOND = 62.5;
+
+    /**
+     * PSK125 has a symbol rate of 125 symbols per second.
+     */
+    public static final double PSK125_SYMBOLS_PER_SECOND = 125;
+
+    /**
+     * PSK250 has a symbol rate of 250 symbols per second.
+     */
+    public static final double PSK250_SYMBOLS_PER_SECOND = 250;
+
     /**
      * Default frequency of the audio tone to use.
      */
@@ -51,6 +69,14 @@ public class BpskGenerator
      */
     private long currentSample;
 
+    /**
+     * True if the carrier of the last generated symbol was shifted by pi radians.
+     *
+     * This is kept across calls so that the first symbol of a call is a phase
+     * reversal, or not, relative to the last symbol of the previous call.
+     */
+    private boolean inverted;
+
     /**
      * The number of radians a single audio sampel represents.
      */
@@ -69,19 +95,100 @@ public class BpskGenerator
     private double samplesPerSymbol;
 
     /**
-     * Coefficients that are used to scale the start of a new symbol.
+     * The size of a single sample is currently always 2 bytes.
      */
-    private double[] symbolStartFilter;
+    private static final int sampleSize = 16;
 
     /**
-     * Coefficients that are used to scale the start of a new symbol.
+     * The peak amplitude of the generated carrier.
      */
-    private double[] symbolEndFilter;
+    private static final double AMPLITUDE = Short.MAX_VALUE * 0.8;
 
     /**
-     * The size of a single sample is currently always 2 bytes.
+     * The most distinct carrier phases a symbol may start at for rendered templates to be cached.
      */
-    private static final int sampleSize = 16;
+    private static final int MAX_TEMPLATE_PHASES = 16;
+
+    /**
+     * The most neighbor patterns for which a shaped carrier table is precomputed.
+     */
+    private static final int MAX_SHAPED_PATTERNS = 16;
+
+    /**
+     * The shape of the pulse carrying each symbol.
+     */
+    private PulseShape pulseShape;
+
+    /**
+     * The number of neighboring symbols, on each side, whose pulses overlap a symbol.
+     */
+    private int neighbors;
+
+    /**
+     * The number of distinct combinations of neighbor phases relative to a symbol.
+     *
+     * Bit {@code 2(m-1)} of a pattern is set if the symbol {@code m} places before has the opposite
+     * phase and bit {@code 2(m-1)+1} is set if the symbol {@code m} places after does.
+     */
+    private int patterns;
+
+    /**
+     * The number of audio samples generated for every symbol.
+     */
+    private int symbolSamples;
+
+    /**
+     * The pulse of each overlapping symbol, sampled over the span of one symbol and scaled to the output amplitude.
+     *
+     * Index {@code neighbors + d} holds the pulse of the symbol {@code d} places from the one being generated.
+     */
+    private double[][] pulseSegments;
+
+    /**
+     * The {@code cos} of the carrier over one symbol starting at phase 0.
+     */
+    private double[] carrierCos;
+
+    /**
+     * The {@code sin} of the carrier over one symbol starting at phase 0.
+     */
+    private double[] carrierSin;
+
+    /**
+     * For every neighbor pattern, the shaped {@code cos} of the carrier over one symbol starting at phase 0.
+     *
+     * A symbol starting at phase p is {@code cos(p) * shapedCos[i] - sin(p) * shapedSin[i]}.
+     * This is null if there are more than {@link #MAX_SHAPED_PATTERNS} patterns.
+     */
+    private double[][] shapedCos;
+
+    /**
+     * For every neighbor pattern, the shaped {@code sin} of the carrier over one symbol starting at phase 0.
+     */
+    private double[][] shapedSin;
+
+    /**
+     * The signs of the neighboring pulses of the symbol being rendered when there are no shaped tables.
+     */
+    private double[] pulseSigns;
+
+    /**
+     * One rendered symbol, used when writing to a direct buffer.
+     */
+    private byte[] symbolScratch;
+
+    /**
+     * The number of distinct carrier phases a symbol may start at, or 0 if there are
+     * too many to cache rendered symbols.
+     */
+    private int templatePhases;
+
+    /**
+     * Rendered symbols, as 16 bit, big endian audio, indexed by {@link #templateIndex(int, int, boolean)}.
+     *
+     * These are built lazily as they are needed.
+     */
+    private byte[][] templates;
 
     /**
      * Constructor with sensible defaults.
@@ -113,22 +220,28 @@ public class BpskGenerator
      * @param symbolsPerSecond How many symbols per second. For PSK31 this is {@link BpskGenerator#PSK31_SYMBOLS_PER_SECOND}.
      */
     public BpskGenerator(final double hz, final int sampleRate, double symbolsPerSecond) {
+        this(hz, sampleRate, symbolsPerSecond, PulseShape.PSK31);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param hz Frequency of the detected tone.
+     * @param sampleRate The audio sample rate.
+     * @param symbolsPerSecond How many symbols per second. For PSK31 this is {@link BpskGenerator#PSK31_SYMBOLS_PER_SECOND}.
+     * @param pulseShape The shape of the pulse carrying each symbol. For PSK31 this is {@link PulseShape#PSK31}.
+     */
+    public BpskGenerator(final double hz, final int sampleRate, double symbolsPerSecond, final PulseShape pulseShape) {
         this.hz               = hz;
         this.sampleRate       = sampleRate;
         this.symbolsPerSecond = symbolsPerSecond;
         this.samplesPerSymbol = this.sampleRate / this.symbolsPerSecond;
         this.radiansPerSample = this.hz * 2.0 * Math.PI / (double)sampleRate;
         this.currentSample    = 0;
+        this.inverted         = false;
+        this.pulseShape       = pulseShape;
 
-        /* Two 1/4 wave arrays to hold shaping coeeficients. */
-        symbolStartFilter = new double[(int)(this.sampleRate / this.symbolsPerSecond / 2.0)];
-        symbolEndFilter   = new double[(int)(this.sampleRate / this.symbolsPerSecond / 2.0)];
-
-        /* Cos filter the wave (yes, we use sin to generate the coefficients). */
-        for (int i = 0; i < symbolStartFilter.length; ++i) {
-            symbolStartFilter[i] = Math.sin(i * Math.PI / this.samplesPerSymbol);
-            symbolEndFilter[i]   = Math.cos(i * Math.PI / this.samplesPerSymbol);
-        }
+        buildTables();
     }
 
     /**
@@ -141,77 +254,230 @@ public class BpskGenerator
     }
 
     /**
-     * Generate a single symbol tone into the given buffer.
-     * Writing begins at buf_i and continues to samplesPerSymbol
-     * bytes are written into the array.
-     * @param buffer The buffer to write into.
-     * @param sample Which audio sample are we generating in buffer? This is
-     *        converted into an index into buffer by the expression 2*sample.
-     * @param shift The number of radians to shift the signal by.
-     *        In PSK {@link Math.PI} will shift the signal 180
-     *        degrees, turning the normal {@code 1} into {@code 0}.
+     * Return the shape of the pulse carrying each symbol.
      *
-     * @return A new value for sample.
+     * @return the shape of the pulse carrying each symbol.
      */
-    private int generateSignal(
-        final byte[]  buffer,
-        int           sample,
-        final double  shift
-    )
-    {
-        for (int i = 0; i < (int)samplesPerSymbol; ++i)
-        {
-            final double amplitude = Math.cos((radiansPerSample * currentSample++) + shift);
+    public PulseShape getPulseShape() {
+        return pulseShape;
+    }
+
+    /**
+     * Build the pulse and carrier tables and size the template cache.
+     */
+    private void buildTables() {
+        symbolSamples = (int)samplesPerSymbol;
+        neighbors     = pulseShape.getSpan() / 2;
+        patterns      = 1 << (2 * neighbors);
+        carrierCos    = new double[symbolSamples];
+        carrierSin    = new double[symbolSamples];
+        pulseSegments = new double[2 * neighbors + 1][symbolSamples];
+        pulseSigns    = new double[2 * neighbors + 1];
+        symbolScratch = new byte[2 * symbolSamples];
+
+        for (int i = 0; i < symbolSamples; ++i) {
+            carrierCos[i] = Math.cos(radiansPerSample * i);
+            carrierSin[i] = Math.sin(radiansPerSample * i);
+        }
 
-            short s = (short) (Short.MAX_VALUE * 0.8 * amplitude);
+        /* Sample the pulses, leaving headroom if overlapping pulses could sum to more than 1. */
+        double peak = 1.0;
+        for (int i = 0; i < symbolSamples; ++i) {
+            /* Time, in symbols, relative to the center of this symbol. */
+            final double t = i / samplesPerSymbol - 0.5;
+
+            double sum = 0;
+            for (int d = -neighbors; d <= neighbors; ++d) {
+                pulseSegments[neighbors + d][i] = pulseShape.amplitude(t - d);
+                sum += Math.abs(pulseSegments[neighbors + d][i]);
+            }
+            peak = Math.max(peak, sum);
+        }
+
+        final double gain = AMPLITUDE / peak;
+        for (int j = 0; j < pulseSegments.length; ++j) {
+            for (int i = 0; i < symbolSamples; ++i) {
+                pulseSegments[j][i] *= gain;
+            }
+        }
+
+        /* When there are few enough neighbor patterns, precompute the shaped carrier for each. */
+        if (patterns <= MAX_SHAPED_PATTERNS) {
+            shapedCos = new double[patterns][symbolSamples];
+            shapedSin = new double[patterns][symbolSamples];
+
+            for (int pattern = 0; pattern < patterns; ++pattern) {
+                setPulseSigns(pattern);
+                for (int i = 0; i < symbolSamples; ++i) {
+                    final double shape = baseband(i);
+                    shapedCos[pattern][i] = shape * carrierCos[i];
+                    shapedSin[pattern][i] = shape * carrierSin[i];
+                }
+            }
+        }
+        else {
+            shapedCos = null;
+            shapedSin = null;
+        }
+
+        /* Find how many symbols it takes for the carrier to return to the same phase at a symbol start. */
+        final double cyclesPerSymbol = symbolSamples * hz / sampleRate;
+        templatePhases = 0;
+        if (patterns <= MAX_SHAPED_PATTERNS) {
+            for (int phases = 1; phases <= MAX_TEMPLATE_PHASES; ++phases) {
+                final double cycles = phases * cyclesPerSymbol;
+                if (Math.abs(cycles - Math.rint(cycles)) < 1e-9) {
+                    templatePhases = phases;
+                    break;
+                }
+            }
+        }
+
+        templates = new byte[templatePhases * patterns * 2][];
+    }
+
+    /**
+     * Set {@link #pulseSigns} from a neighbor pattern.
+     */
+    private void setPulseSigns(final int pattern) {
+        pulseSigns[neighbors] = 1.0;
+        for (int m = 1; m <= neighbors; ++m) {
+            pulseSigns[neighbors - m] = ((pattern >>> (2 * (m - 1))) & 1) == 0 ? 1.0 : -1.0;
+            pulseSigns[neighbors + m] = ((pattern >>> (2 * (m - 1) + 1)) & 1) == 0 ? 1.0 : -1.0;
+        }
+    }
 
-            buffer[2*sample] = (byte) ((s >>> 8) & 0xff);
-            buffer[2*sample+1] = (byte) ((s) & 0xff);
-            sample++;
+    /**
+     * The baseband amplitude at a sample of a symbol given the current {@link #pulseSigns}.
+     */
+    private double baseband(final int i) {
+        double sum = 0;
+        for (int j = 0; j < pulseSigns.length; ++j) {
+            sum += pulseSigns[j] * pulseSegments[j][i];
         }
+        return sum;
+    }
 
-        return sample;
+    /**
+     * Compute the index into {@link #templates} of a rendered symbol.
+     */
+    private int templateIndex(final int phase, final int pattern, final boolean inverted) {
+        return ((phase * patterns) + pattern) * 2 + (inverted ? 1 : 0);
     }
 
     /**
-     * Fade a buffer by applying a given filter.
+     * Render a single symbol in one pass over the output.
      *
-     * @param buffer The audio data to apply the filter to.
-     * @param int sample The offset in the buffer to start processing at.
-     * @param filter The filter to apply. Note that the length of the filter
-     *        dictates how many samples will be read and modified.
+     * @param buffer The buffer to write 16 bit, big endian audio into.
+     * @param off The byte offset into buffer to start writing at.
+     * @param startSample The value of {@link #currentSample} at the start of the symbol.
+     * @param inverted True if the carrier is shifted by pi radians.
+     * @param pattern The phases of the neighboring symbols relative to this one.
      */
-    private void fade(final byte[] buffer, int sample, double[] filter) {
-        for (int i = 0; i < filter.length; i++) {
+    private void renderSymbol(
+        final byte[]  buffer,
+        final int     off,
+        final long    startSample,
+        final boolean inverted,
+        final int     pattern
+    )
+    {
+        final double phase = radiansPerSample * startSample + (inverted ? Math.PI : 0);
+        final double c     = Math.cos(phase);
+        final double s     = Math.sin(phase);
 
-            final int buf_i = (sample + i) * 2;
-            short s = (short)(((buffer[buf_i] << 8) & 0xff00) | (buffer[buf_i+1] & 0xff));
+        if (shapedCos != null) {
+            final double[] cos = shapedCos[pattern];
+            final double[] sin = shapedSin[pattern];
 
-            s = (short)((double)s * filter[i]);
+            for (int i = 0, j = off; i < symbolSamples; ++i, j += 2) {
+                final short sample = (short) (c * cos[i] - s * sin[i]);
 
-            buffer[buf_i] = (byte)((s>>>8)&0xff);
-            buffer[buf_i+1] = (byte)((s)&0xff);
+                buffer[j]   = (byte) ((sample >>> 8) & 0xff);
+                buffer[j+1] = (byte) ((sample) & 0xff);
+            }
         }
+        else {
+            setPulseSigns(pattern);
+
+            for (int i = 0, j = off; i < symbolSamples; ++i, j += 2) {
+                final short sample = (short) (baseband(i) * (c * carrierCos[i] - s * carrierSin[i]));
+
+                buffer[j]   = (byte) ((sample >>> 8) & 0xff);
+                buffer[j+1] = (byte) ((sample) & 0xff);
+            }
+        }
+    }
+
+    /**
+     * Return the cached template of the symbol starting at {@link #currentSample}, building it if needed.
+     *
+     * This may only be called if {@link #templatePhases} is not 0.
+     *
+     * @param inverted True if the carrier is shifted by pi radians.
+     * @param pattern The phases of the neighboring symbols relative to this one.
+     *
+     * @return The rendered symbol.
+     */
+    private byte[] template(final boolean inverted, final int pattern) {
+        final int phase = (int)((currentSample / symbolSamples) % templatePhases);
+        final int index = templateIndex(phase, pattern, inverted);
+
+        byte[] template = templates[index];
+        if (template == null) {
+            template = new byte[2 * symbolSamples];
+            renderSymbol(template, 0, (long)phase * symbolSamples, inverted, pattern);
+            templates[index] = template;
+        }
+
+        return template;
     }
 
     /**
-     * Fade in 1/2 a symbol worth of the buffer.
+     * Write a single symbol into the buffer and advance {@link #currentSample}.
+     *
+     * If the carrier phase at the start of every symbol cycles through only a few values,
+     * the symbol is copied from a cached template. Otherwise it is rendered.
      *
-     * @param buffer The buffer to write to.
-     * @param buf_i The offset into buffer to start writing at.
+     * @param buffer The buffer to write 16 bit, big endian audio into.
+     * @param off The byte offset into buffer to start writing at.
+     * @param inverted True if the carrier is shifted by pi radians.
+     * @param pattern The phases of the neighboring symbols relative to this one.
+     *
+     * @return The byte offset after the written symbol.
      */
-    private void fadeIn(final byte[] buffer, int sample) {
-        fade(buffer, sample, symbolStartFilter);
+    private int writeSymbol(final byte[] buffer, final int off, final boolean inverted, final int pattern) {
+        if (templatePhases > 0) {
+            final byte[] template = template(inverted, pattern);
+
+            System.arraycopy(template, 0, buffer, off, template.length);
+        }
+        else {
+            renderSymbol(buffer, off, currentSample, inverted, pattern);
+        }
+
+        currentSample += symbolSamples;
+
+        return off + 2 * symbolSamples;
     }
 
     /**
-     * Fade out 1/2 a symbol worth of the buffer.
+     * Write a single symbol at the position of a buffer and advance {@link #currentSample}.
      *
-     * @param buffer The buffer to write to.
-     * @param buf_i The offset into buffer to start writing at.
+     * @param buffer The buffer to write 16 bit, big endian audio into.
+     * @param inverted True if the carrier is shifted by pi radians.
+     * @param pattern The phases of the neighboring symbols relative to this one.
      */
-    private void fadeOut(final byte[] buffer, int sample) {
-        fade(buffer, sample, symbolEndFilter);
+    private void writeSymbol(final ByteBuffer buffer, final boolean inverted, final int pattern) {
+        if (templatePhases > 0) {
+            buffer.put(template(inverted, pattern));
+        }
+        else {
+            renderSymbol(symbolScratch, 0, currentSample, inverted, pattern);
+            buffer.put(symbolScratch);
+        }
+
+        currentSample += symbolSamples;
     }
 
     /**
@@ -238,49 +504,164 @@ public class BpskGenerator
      */
     public byte[] generateSignal(final byte[] symbols, final int off, final int len) throws IOException {
 
-        if (len == 0 ) {
-            return new byte[0];
+        /* We generate 16 bit audio, so there are 2 bytes per sample. */
+        final byte[] buffer = new byte[getSignalLength(len)];
+
+        generateSignal(symbols, off, len, buffer, 0);
+
+        return buffer;
+    }
+
+    /**
+     * Given an array of 1s or 0s generate a PSK audio signal into a caller owned buffer.
+     *
+     * Pulses longer than two symbols are truncated at the start and end of the signal.
+     * No memory is allocated once the symbol templates have been built.
+     *
+     * @param symbols The array of 1s and 0s. Any other value is an error.
+     * @param off Offset into sybols into which to start processing.
+     * @param len The length (number) of symbols to process.
+     * @param out The buffer to write 16 bit, big endian audio into.
+     *        It must have {@link #getSignalLength(int)} bytes available after {@code outOff}.
+     * @param outOff The offset into out to start writing at.
+     *
+     * @throws IOException if a value in {@code symbols} is not a 1 or 0.
+     * @throws IllegalArgumentException if out is too small.
+     * @return The number of bytes written.
+     */
+    public int generateSignal(
+        final byte[] symbols,
+        final int    off,
+        final int    len,
+        final byte[] out,
+        final int    outOff
+    )
+        throws IOException
+    {
+        final int bytes = getSignalLength(len);
+
+        if (outOff < 0 || out.length - outOff < bytes) {
+            throw new IllegalArgumentException("Output buffer needs "+bytes+" bytes after offset "+outOff+".");
         }
 
-        /* How many audio samples must we generate? */
-        final int    samples = (int)(len * (int)samplesPerSymbol);
+        checkSymbols(symbols, off, len);
 
-        /* We generate 16 bit audio, so there are 2 bytes per sample. */
-        final byte[] buffer  = new byte[2 * samples];
+        int buf_i = outOff;
 
-        /* The previous symbol is always different than the very first symbol we get in symbols[]. */
-        double shift      = 0;
-        int    sample     = 0;
+        for (int sym_i = 0; sym_i < len; ++sym_i) {
+            if (symbols[off+sym_i] == 0) {
+                inverted = !inverted;
+            }
 
-        sample = generateSignal(buffer, sample, shift);
+            buf_i = writeSymbol(out, buf_i, inverted, neighborPattern(symbols, off, len, sym_i));
+        }
 
-        for (int sym_i = 1; sym_i < len; ++sym_i) {
+        return bytes;
+    }
 
-            final byte symbol = symbols[off+sym_i];
-            if (symbol == 0) {
-                shift = (shift == 0) ? Math.PI : 0;
+    /**
+     * Given an array of 1s or 0s generate a PSK audio signal into a caller owned buffer.
+     *
+     * Samples are always big endian, regardless of {@link ByteBuffer#order()}.
+     * Direct buffers are supported. No memory is allocated once the symbol templates have been built.
+     *
+     * @param symbols The array of 1s and 0s. Any other value is an error.
+     * @param off Offset into sybols into which to start processing.
+     * @param len The length (number) of symbols to process.
+     * @param out The buffer to write 16 bit, big endian audio into starting at its position.
+     *        It must have {@link #getSignalLength(int)} bytes remaining. Its position is
+     *        advanced past the written audio.
+     *
+     * @throws IOException if a value in {@code symbols} is not a 1 or 0.
+     * @throws BufferOverflowException if out is too small.
+     * @return The number of bytes written.
+     */
+    public int generateSignal(final byte[] symbols, final int off, final int len, final ByteBuffer out)
+        throws IOException
+    {
+        final int bytes = getSignalLength(len);
+
+        if (out.remaining() < bytes) {
+            throw new BufferOverflowException();
+        }
 
-                fadeOut(buffer, (int)(sample - samplesPerSymbol/2));
+        if (out.hasArray()) {
+            generateSignal(symbols, off, len, out.array(), out.arrayOffset() + out.position());
+            out.position(out.position() + bytes);
+            return bytes;
+        }
 
-                sample = generateSignal(buffer, sample, shift);
+        checkSymbols(symbols, off, len);
 
-                fadeIn(buffer, (int)(sample - samplesPerSymbol));
-            }
-            else if (symbol == 1) {
-                sample = generateSignal(buffer, sample, shift);
+        for (int sym_i = 0; sym_i < len; ++sym_i) {
+            if (symbols[off+sym_i] == 0) {
+                inverted = !inverted;
             }
-            else {
+
+            writeSymbol(out, inverted, neighborPattern(symbols, off, len, sym_i));
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Return the number of bytes of audio that encode the given number of symbols.
+     *
+     * @param symbols The number of symbols.
+     *
+     * @return the number of bytes of audio that encode the given number of symbols.
+     */
+    public int getSignalLength(final int symbols) {
+        return 2 * symbols * symbolSamples;
+    }
+
+    /**
+     * Ensure every symbol is a 1 or 0.
+     *
+     * @throws IOException if a symbol is not a 1 or 0.
+     */
+    private static void checkSymbols(final byte[] symbols, final int off, final int len) throws IOException {
+        for (int sym_i = 0; sym_i < len; ++sym_i) {
+            final byte symbol = symbols[off+sym_i];
+            if (symbol != 0 && symbol != 1) {
                 throw new IOException("Symbol at index "+sym_i+" was not a 1 or 0.");
             }
         }
+    }
 
-        /* Fade in at the start. */
-        fadeIn(buffer, 0);
+    /**
+     * Return true if the symbol at {@code sym_i} reverses the phase of the carrier.
+     *
+     * Outside of the given symbols the carrier is treated as reversing every symbol, like
+     * an idle signal. This fades the signal in at the start and out at the end.
+     */
+    private static boolean reverses(final byte[] symbols, final int off, final int len, final int sym_i) {
+        return sym_i <= 0 || sym_i >= len || symbols[off+sym_i] == 0;
+    }
+
+    /**
+     * Compute the phases of the symbols neighboring {@code sym_i} relative to it.
+     *
+     * @return A neighbor pattern as described by {@link #patterns}.
+     */
+    private int neighborPattern(final byte[] symbols, final int off, final int len, final int sym_i) {
+        int     pattern = 0;
+        boolean before  = false;
+        boolean after   = false;
 
-        /* Fade out at the end. */
-        fadeOut(buffer, samples - symbolEndFilter.length);
+        for (int m = 1; m <= neighbors; ++m) {
+            before ^= reverses(symbols, off, len, sym_i - m + 1);
+            after  ^= reverses(symbols, off, len, sym_i + m);
 
-        return buffer;
+            if (before) {
+                pattern |= 1 << (2 * (m - 1));
+            }
+            if (after) {
+                pattern |= 1 << (2 * (m - 1) + 1);
+            }
+        }
+
+        return pattern;
     }
 
     /**
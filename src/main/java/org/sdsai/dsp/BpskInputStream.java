@@ -4,8 +4,6 @@ import java.io.FilterInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.util.Arrays;
 
 /**
  * BPSK decoder with a varaible carrier frequency and symbol rate.
@@ -17,278 +15,196 @@ import java.util.Arrays;
 public class BpskInputStream extends FilterInputStream {
 
     /**
-     * The fill of {@link #symbolBuffer}.
+     * The buffer of raw audio data to be converted into symbols.
+     * This buffer is never left filled with data that could immediately be
+     * turned into symbols. It is always at a minimum-fill level.
      */
-    private int symbolBufferFill;
+    private byte[] dataBuffer;
 
     /**
-     * The offset into the {@link #symbolBuffer} list.
+     * The number of bytes at the start of {@link #dataBuffer} that are left over
+     * from a read that did not end on a whole audio frame.
      */
-    private int symbolBufferOff;
+    private int dataBufferFill;
 
     /**
-     * The buffer of raw audio data to be converted into symbols.
-     * This buffer is never left filled with data that could immediately be
-     * turned into symbols. It is always at a minimum-fill level.
+     * Buffer holding symbols which will eventually be matched to character in varicode and returned.
+     *
+     * This is a fixed size ring that holds at least the most symbols a single read of
+     * {@link #dataBuffer} can produce. No audio is read while it lacks room for that many.
+     * The {@link #psk} puts symbols directly into it.
      */
-    private byte[] dataBuffer;
+    private final SymbolBuffer symbolBuffer;
 
     /**
-     * Buffer holding symbols which will eventually be matched to character in varicode and returned.
+     * The most symbols that detecting one {@link #dataBuffer} of audio can produce.
+     *
+     * A detector needs at least two samples to decide on a symbol.
      */
-    private byte[] symbolBuffer;
+    private final int maxSymbolsPerRead;
 
     /**
      * The detector to use to decode varicode symbols.
      */
-    private BpskDetector psk;
+    private SymbolDetector psk;
 
     /**
-     * An special output stream that fills {@link #symbolBuffer}.
+     * Turns symbols into characters.
      */
-    private SymbolBufferOutputStream bufferFiller;
-
-    private static final CharsetTree CHARSETTREE = new CharsetTree(-1, 0);
+    private final VaricodeDecoder varicode;
 
     /**
-     * The longest character sequence, not counting the two terminating 00 bytes.
-     * This is computed at class load time when {@link #CHARSETTREE}.
+     * Characters decoded from {@link #symbolBuffer} but not yet returned.
+     *
+     * Every character takes at least three symbols, so this holds every character
+     * that one read of {@link #dataBuffer} can produce.
      */
-    private static final int LONGEST_CHARACTER;
-
-    static {
-        int longestCharacter = 0;
-
-        for (int i = 0; i < BpskOutputStream.CHARSET.length; ++i) {
-            if (BpskOutputStream.CHARSET[i] != null) {
-                CHARSETTREE.addChar(i, BpskOutputStream.CHARSET[i]);
-                if (longestCharacter < BpskOutputStream.CHARSET[i].length) {
-                    longestCharacter = BpskOutputStream.CHARSET[i].length;
-                }
-            }
-        }
-
-        LONGEST_CHARACTER = longestCharacter;
-    }
+    private final byte[] characters;
 
     /**
-     * A tree representing a Varicode dictionary.
-     *
-     * This class is used to lookup potential matches to varicode symbol strings.
+     * The offset of the next character to return from {@link #characters}.
      */
-    private static class CharsetTree {
-
-        /**
-         * The next character in a path is a 0. Go left.
-         */
-        public CharsetTree left;
-
-        /**
-         * The next character in a path is a 1. Go right.
-         */
-        public CharsetTree right;
-
-        /**
-         * The character this is defined as.
-         */
-        public int c;
-
-        /**
-         * Depth in the tree. This starts at 1, so it may also
-         * be viewed as the length of the path required to
-         * match this caracter, or the amount of the path
-         * consumed by a successful match.
-         */
-        public final int depth;
-
-        /**
-         * Constructor.
-         *
-         * @param c The character this node will represent. -1 for no character.
-         * @param depth The legth of the sequence, also the depth in the
-         *        tree that this character resides at.
-         */
-        public CharsetTree(
-            final int c,
-            final int depth
-        )
-        {
-            this.c     = c;
-            this.depth = depth;
-            this.right = null;
-            this.left  = null;
-        }
+    private int charactersOff;
 
-        /**
-         * Add a new character to this tree at the given path.
-         *
-         * @param c The character. Use -1 to indicate no character, such as in the case
-         *        of an intermediate node.
-         * @param path A sequcne of 0s (left) and 1s (right) path selection choices that define
-         *        where this character is placed in the tree. This character's depth is set to
-         *        path.length.
-         * @throws IllegalArgumentException if a path element is not 1 or 0 or
-         *         if the character is already defined.
-         */
-        public void addChar(int c, byte[] path) {
-            CharsetTree ct = this;
-
-            for (int i = 0; i < path.length; ++i) {
-                if (path[i] == 0) {
-                    if (ct.left == null) {
-                        ct.left = new CharsetTree(-1, ct.depth+1);
-                    }
-                    ct = ct.left;
-                }
-                else if (path[i] == 1) {
-                    if (ct.right == null) {
-                        ct.right = new CharsetTree(-1, ct.depth+1);
-                    }
-                    ct = ct.right;
-                }
-                else {
-                    throw new IllegalArgumentException("Expected 1 or 0 and got "+path[i]);
-                }
-            }
+    /**
+     * The fill of {@link #characters}.
+     */
+    private int charactersFill;
 
-            if (ct.c != -1) {
-                throw new IllegalArgumentException("Character "+c+"'s path is already occupided by character "+ct.c);
-            }
-            ct.c = c;
-        }
+    /**
+     * The latency, in samples, of each character in {@link #characters}. See {@link #getLatency()}.
+     */
+    private final int[] latencies;
 
-        /**
-         * Return the CharsetTree value that matches the longest
-         * path in the given argument, path.
-         *
-         * @param path A byte array in which a value of 0 goes down the left
-         *        subtree and a value of 1 goes down the right subtree.
-         *        Any other value results in an IllegalArgumentException being
-         *        thrown.
-         * @param off Offset into path.
-         * @param len The lenth of character to consider in path.
-         *
-         * @throws IllegalArgumentException if an element in path is not 0 or 1.
-         * @return The CharsetTree of the longest match. If no part of the path matched, this
-         *         is returned.
-         */
-        public CharsetTree findChar(final byte[] path, final int off, final int len) {
-            CharsetTree ct        = this;
-            CharsetTree lastValid = ct;
-
-            for (int i = 0; i < len; ++i) {
-                CharsetTree next;
-                if (path[i+off] == 0) {
-                    next = ct.left;
-                }
-                else if (path[i+off] == 1) {
-                    next = ct.right;
-                }
-                else {
-                    throw new IllegalArgumentException("Expected 1 or 0 and got "+path[i]);
-                }
+    /**
+     * The latency, in samples, of the last character returned.
+     */
+    private int latency;
 
-                if (next == null) {
-                    break;
-                }
+    /**
+     * The number of audio samples given to the {@link #psk} so far.
+     */
+    private long samplesDetected;
 
-                ct = next;
-                if (ct.c != -1) {
-                    lastValid = ct;
-                }
-            }
+    /**
+     * The value of {@link #samplesDetected} when the last 1 symbol was decoded.
+     * Every Varicode character ends with a 1, so this marks the end of the character being received.
+     */
+    private long lastOneSample;
 
-            /* If we consume the entire path... well... match! Return ct. */
-            return lastValid;
-        }
-    }
     /**
      * Constructor.
      *
      * @param in {@link InputStream} to read audio data from.
      * @param psk Ths detector to use to detect a signal in {@code in}.
      */
-    public BpskInputStream(final InputStream in, final BpskDetector psk) {
+    public BpskInputStream(final InputStream in, final SymbolDetector psk) {
         super(in);
-        this.symbolBuffer     = new byte[100];
-        this.dataBuffer       = new byte[(int) (
-                (double)psk.getFrameSize() *
+        this.dataBuffer        = new byte[psk.getFrameSize() * (int) (
                 (double)psk.getSampleRate() /
                 psk.getSymbolRate()
             )];
-        this.symbolBufferFill = 0;
-        this.symbolBufferOff  = 0;
-        this.psk              = psk;
-        this.bufferFiller     = new SymbolBufferOutputStream();
+        this.maxSymbolsPerRead = dataBuffer.length / psk.getFrameSize() / 2 + 1;
+        this.symbolBuffer      = new SymbolBuffer(maxSymbolsPerRead);
+        this.dataBufferFill    = 0;
+        this.psk               = psk;
+        this.varicode          = new VaricodeDecoder();
+        this.characters        = new byte[maxSymbolsPerRead / 3 + 1];
+        this.charactersOff     = 0;
+        this.charactersFill    = 0;
+        this.latencies         = new int[characters.length];
+        this.latency           = 0;
+        this.samplesDetected   = 0;
+        this.lastOneSample     = 0;
     }
 
     /**
-     * Remove the given offset from the symbol buf.
+     * Constructor.
+     *
+     * @param in {@link InputStream} to read 16 bit, big endian audio data from.
+     * @param hz Frequency of the carrier.
+     * @param sampleRate The audio sample rate.
+     * @param symbolsPerSecond How many symbols per second, such as {@link BpskGenerator#PSK63_SYMBOLS_PER_SECOND}.
      */
-    private void compactSymbolBuffer() {
-        for (int i = symbolBufferOff; i < symbolBufferFill; ++i) {
-            symbolBuffer[i - symbolBufferOff] = symbolBuffer[i];
-        }
-        symbolBufferFill = symbolBufferFill - symbolBufferOff;
-        symbolBufferOff = 0;
+    public BpskInputStream(
+        final InputStream in,
+        final double hz,
+        final int sampleRate,
+        final double symbolsPerSecond
+    )
+    {
+        this(in, new BpskDetector(hz, sampleRate, symbolsPerSecond));
     }
 
     /**
      * Get a batch of symbols.
-     * An offset into the symbolBuffer is returned if it is necessary.
-     * This method may wipe the entire symbolBuffer and replace it.
+     * The symbols are appended to the {@link #symbolBuffer}.
      *
-     * @return -1 if no symbols can be fetched, the number of symbols fetched otherwise.
+     * @return -1 if no symbols can be fetched, the number of bytes of audio read otherwise.
+     *         This is 0 if the {@link #symbolBuffer} does not have room for another read.
      */
     private int getSymbols() throws IOException {
-        final int symbols = symbolBufferFill;
+        /* Hold off reading more audio until the decoded symbols have been consumed. */
+        if (symbolBuffer.remaining() < maxSymbolsPerRead) {
+            return 0;
+        }
 
-        /* Read into the data buffer. */
-        final int bytesRead = in.read(dataBuffer);
+        /* Read into the data buffer after any partial frame left from the last read. */
+        final int bytesRead = in.read(dataBuffer, dataBufferFill, dataBuffer.length - dataBufferFill);
 
         /* Exit the while loop. It may be that we cannot match anything. */
         if (bytesRead == -1) {
             return -1;
         }
 
+        /* Only whole frames may be detected. Keep any trailing partial frame for the next read. */
+        final int fill   = dataBufferFill + bytesRead;
+        final int frames = fill - (fill % psk.getFrameSize());
+
         /* Fill the symbol buffer. */
-        psk.detectSignal(dataBuffer, 0, bytesRead, bufferFiller);
+        psk.detectSignal(dataBuffer, 0, frames, symbolBuffer);
+        samplesDetected += frames / psk.getFrameSize();
+
+        dataBufferFill = fill - frames;
+        System.arraycopy(dataBuffer, frames, dataBuffer, 0, dataBufferFill);
 
         return bytesRead;
     }
 
     /**
-     * Perform maintenance on the symbol buffer.
-     *
-     * This entails two things.
-     * <ul>
-     * <li>If the buffer cannot hold 10+2 character, compact it by copying all
-     *     characters after the offset to index 0 and adjusting the fill value.</li>
-     * <li>Ensure that, if possible, there are 10 + 2 characters in the buffer,
-     *     the longest Varicode character we will match.</li>
-     * </ul>
+     * Decode every buffered symbol that there is room for into {@link #characters}.
      *
-     * @return If the buffer cannot be filled to > 0.
+     * @return The number of characters waiting in {@link #characters}.
      */
-    private boolean bufferMaintenance() throws IOException {
-        /* Ensure there is LONGEST_CHARACTER + 2 space in the symbolBuffer. */
-        if (symbolBuffer.length - symbolBufferOff < LONGEST_CHARACTER + 2) {
-            compactSymbolBuffer();
+    private int decodeSymbols() {
+        if (charactersOff == charactersFill) {
+            charactersOff  = 0;
+            charactersFill = 0;
         }
 
-        /* Now, if there are not enough symbols in the buffer, fill it. */
-        while (symbolBufferFill - symbolBufferOff < LONGEST_CHARACTER + 2) {
-            if (getSymbols() == -1) {
-                if (symbolBufferFill - symbolBufferOff < 1) {
-                    return false;
+        /* Decode a word of symbols at a time, stopping if there is no room for another character. */
+        while (symbolBuffer.size() > 0 && charactersFill < characters.length) {
+            final int  count   = Math.min(64, symbolBuffer.size());
+            final long symbols = symbolBuffer.peekSymbols(0, count);
+
+            int i = 0;
+            while (i < count && charactersFill < characters.length) {
+                final int symbol = (int) (symbols >>> i++) & 1;
+                final int c      = varicode.decode(symbol);
+
+                if (symbol == 1) {
+                    lastOneSample = samplesDetected;
                 }
-                else {
-                    return true;
+                else if (c != VaricodeDecoder.NO_CHARACTER) {
+                    latencies[charactersFill]    = (int) (samplesDetected - lastOneSample);
+                    characters[charactersFill++] = (byte) c;
                 }
             }
+
+            symbolBuffer.consume(i);
         }
 
-        return true;
+        return charactersFill - charactersOff;
     }
 
     /**
@@ -296,46 +212,16 @@ public class BpskInputStream extends FilterInputStream {
      */
     @Override
     public int read() throws IOException {
-
-        CharsetTree ct = CHARSETTREE;
-        int bytesRead = 0;
-
-        while (true) {
-            /* Optimization - skip any leading zeros. */
-            // while(symbolBufferOff < symbolBufferFill && symbolBuffer[symbolBufferOff] == 0) {
-            //     ++symbolBufferOff;
-            // }
-
-            /* Refill the buffer, compacting it if necessary. */
-            if (!bufferMaintenance()) {
+        /* Decode blocks of audio until a character is ready. */
+        while (decodeSymbols() == 0) {
+            if (getSymbols() == -1) {
                 return -1;
             }
+        }
 
-            /* Search for a matching character. */
-            ct = CHARSETTREE.findChar(symbolBuffer, symbolBufferOff, symbolBufferFill-symbolBufferOff);
+        latency = latencies[charactersOff];
 
-            /* Take action based on the match. */
-            if (ct == CHARSETTREE) {
-                /* An unknown character was recieved. Skip 1 symbol and try again. */
-                symbolBufferOff++;
-            }
-            else if (ct.c == -1) {
-                /* Unknonwn character. Skip body. */
-                symbolBufferOff++;
-            }
-            else if (
-                symbolBufferOff + ct.depth + 2 <= symbolBufferFill &&
-                symbolBuffer[symbolBufferOff + ct.depth] == 0 &&
-                symbolBuffer[symbolBufferOff + ct.depth + 1] == 0
-            )
-            {
-                symbolBufferOff += ct.depth + 2;
-                return ct.c;
-            }
-            else {
-                symbolBufferOff++;
-            }
-        }
+        return characters[charactersOff++] & 0xff;
     }
 
     /**
@@ -347,64 +233,89 @@ public class BpskInputStream extends FilterInputStream {
     }
 
     /**
+     * Read decoded characters.
+     *
+     * This blocks until at least one character is decoded. After that, it only reads
+     * more audio while the underlying stream reports some as {@link InputStream#available()},
+     * and returns as soon as reading would block.
+     *
      * {@inheritDoc}
      */
     @Override
-    public int read(final byte[] b, int off, int len) throws IOException {
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
 
-        for (int i = off; i < off+len; ++i ){
-            int d = read();
-            if (d == -1) {
-                return ((i-off) == 0)? -1: (i-off);
+        int read = 0;
+
+        while (true) {
+            /* Copy out every character that is ready. */
+            while (read < len && decodeSymbols() > 0) {
+                final int count = Math.min(len - read, charactersFill - charactersOff);
+                System.arraycopy(characters, charactersOff, b, off + read, count);
+                charactersOff += count;
+                latency        = latencies[charactersOff - 1];
+                read          += count;
             }
 
-            b[i] = (byte) d;
-        }
+            if (read == len || (read > 0 && in.available() <= 0)) {
+                return read;
+            }
 
-        return len;
+            if (getSymbols() == -1) {
+                return (read == 0)? -1 : read;
+            }
+        }
     }
 
     /**
-     * Private writer to collect symbols generated by {@link BpskDetector}.
+     * Return the number of characters that can be read without blocking.
+     *
+     * This counts characters already decoded from the buffered symbols.
+     * Audio not yet read from the underlying stream is not counted.
+     *
+     * @return the number of characters that can be read without blocking.
      *
-     * Only the {@link OutputStream#write(int)} needs to be implemented
-     * as only that method is called in the implementation of {@link BpskDetector}.
+     * @throws IOException on errors.
      */
-    private class SymbolBufferOutputStream extends OutputStream {
-        @Override
-        public void write(int symbol) throws IOException {
-            assert(symbol == 0 || symbol == 1);
-
-            if ( symbolBufferFill >= symbolBuffer.length) {
-                /* This code should never, in practice, execute. But it's here. */
-                symbolBuffer = Arrays.copyOf(symbolBuffer, 2*symbolBuffer.length);
-            }
-
-            symbolBuffer[symbolBufferFill++] = (byte)symbol;
-        }
+    @Override
+    public int available() throws IOException {
+        return decodeSymbols();
     }
 
     /**
-     * Perform an internal check on the character set tree for consistency.
+     * Perform an internal check on the Varicode lookup table for consistency.
      */
     public void validateTree() {
         for (int i = 0; i < BpskOutputStream.CHARSET.length; ++i) {
             if (BpskOutputStream.CHARSET[i] != null) {
-                CharsetTree ct = CHARSETTREE.findChar(
+                final int c = VaricodeDecoder.lookup(
                         BpskOutputStream.CHARSET[i],
                         0,
                         BpskOutputStream.CHARSET[i].length);
 
-                if (i != (int)ct.c) {
+                if (i != c) {
                     throw new RuntimeException(String.format("Failed to find char %c (%d)", (char)i, i));
                 }
-                if (BpskOutputStream.CHARSET[i].length != ct.depth) {
-                    throw new RuntimeException("Depth mismatch");
-                }
             }
         }
     }
 
+    /**
+     * Return how long after it was sent the last character returned was decoded.
+     *
+     * This is the length of audio between the detection of the character's last code symbol
+     * and the detection of its terminating {@code 00}, when the character was ready to read.
+     * It is at least the two terminating symbols. Any delay inside the detector is not included.
+     * The resolution is one read of {@link #getBufferSize()} bytes, which is one symbol.
+     *
+     * @return the latency, in seconds, of the last character returned by a read.
+     */
+    public double getLatency() {
+        return latency / (double) psk.getSampleRate();
+    }
+
     /**
      * The size of the internal buffer used to collect data.
      *
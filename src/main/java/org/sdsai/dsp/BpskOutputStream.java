@@ -3,7 +3,6 @@ package org.sdsai.dsp;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.FilterOutputStream;
-import java.util.Arrays;
 
 /**
  * BPSK encoder with a varaible carrier frequency and symbol rate.
@@ -273,28 +272,126 @@ public class BpskOutputStream extends FilterOutputStream {
         CHARSET[126] = new byte[]{1,0,1,1,0,1,0,1,1,1};
     }
 
-    private BpskGenerator psk;
-    private static final byte[] CHARACTER_SEPARATOR = {0, 0};
-    public BpskOutputStream(final OutputStream outputStream, final BpskGenerator psk) throws IOException {
+    /**
+     * Each character of {@link #CHARSET} followed by the two 0 symbols that separate characters, packed
+     * as for {@link SymbolBuffer#putSymbols(long, int)}. Undefined characters are sent as NUL.
+     */
+    private static final long[] PACKED_CHARSET = new long[256];
+
+    /**
+     * The number of symbols in each entry of {@link #PACKED_CHARSET}.
+     */
+    private static final int[] PACKED_LENGTH = new int[256];
+
+    static {
+        for (int c = 0; c < PACKED_CHARSET.length; ++c) {
+            final byte[] symbols = (CHARSET[c] == null) ? CHARSET[0] : CHARSET[c];
+
+            long packed = 0;
+            for (int i = 0; i < symbols.length; ++i) {
+                packed |= (long) symbols[i] << i;
+            }
+
+            /* The separator's zeros are already in place. */
+            PACKED_CHARSET[c] = packed;
+            PACKED_LENGTH[c]  = symbols.length + 2;
+        }
+    }
+
+    private SymbolGenerator psk;
+
+    /**
+     * Reusable buffer in which symbols are assembled.
+     *
+     * When it fills, the symbols are modulated and written out between characters.
+     */
+    private final SymbolBuffer symbols;
+
+    /**
+     * Reusable buffer of symbols, one to a byte, to be modulated.
+     */
+    private final byte[] symbolBuffer;
+
+    /**
+     * Reusable buffer of modulated audio.
+     */
+    private byte[] audioBuffer;
+
+    /**
+     * Constructor.
+     *
+     * @param outputStream The stream to write 16 bit, big endian audio to.
+     * @param hz Frequency of the carrier.
+     * @param sampleRate The audio sample rate.
+     * @param symbolsPerSecond How many symbols per second, such as {@link BpskGenerator#PSK63_SYMBOLS_PER_SECOND}.
+     *
+     * @throws IOException on error.
+     */
+    public BpskOutputStream(
+        final OutputStream outputStream,
+        final double hz,
+        final int sampleRate,
+        final double symbolsPerSecond
+    )
+        throws IOException
+    {
+        this(outputStream, new BpskGenerator(hz, sampleRate, symbolsPerSecond));
+    }
+
+    public BpskOutputStream(final OutputStream outputStream, final SymbolGenerator psk) throws IOException {
         super(outputStream);
-        this.psk = psk;
+        this.psk          = psk;
+        this.symbols      = new SymbolBuffer(1024);
+        this.symbolBuffer = new byte[symbols.capacity()];
+        this.audioBuffer  = new byte[psk.getSignalLength(64)];
     }
 
     /**
-     * Get a single character of PSK data.
-     * This must be separated from other data with {0,0}.
+     * Append a single character of PSK data, and the separator that follows it, to {@link #symbols}.
      */
-    private byte[] getPskData(int b) throws IOException {
-        if (b >= CHARSET.length || b < 0) {
-            return CHARSET[0];
+    private void appendCharacter(final int b) throws IOException {
+        final int c = (b >= PACKED_CHARSET.length || b < 0) ? 0 : b;
+
+        if (symbols.remaining() < PACKED_LENGTH[c]) {
+            writeSymbols();
         }
 
-        byte[] i = CHARSET[b];
-        if (i == null) {
-            return CHARSET[0];
+        symbols.putSymbols(PACKED_CHARSET[c], PACKED_LENGTH[c]);
+    }
+
+    /**
+     * Append a run of the same symbol to {@link #symbols}.
+     */
+    private void appendRun(final long symbol, final int length) throws IOException {
+        for (int i = 0; i < length; i += 64) {
+            if (symbols.remaining() < 64) {
+                writeSymbols();
+            }
+
+            symbols.putSymbols(symbol, Math.min(64, length - i));
         }
+    }
+
+    /**
+     * Modulate every symbol in {@link #symbols} and write them out.
+     *
+     * {@link #symbolBuffer} and {@link #audioBuffer} are reused. The audio buffer only grows,
+     * up to the audio of a full {@link #symbols}, so steady state writing does not allocate.
+     */
+    private void writeSymbols() throws IOException {
+        final int len   = symbols.size();
+        final int bytes = psk.getSignalLength(len);
+
+        symbols.copyTo(0, symbolBuffer, 0, len);
+        symbols.clear();
 
-        return i;
+        if (audioBuffer.length < bytes) {
+            audioBuffer = new byte[Math.max(bytes, Math.min(2 * audioBuffer.length, psk.getSignalLength(symbols.capacity())))];
+        }
+
+        psk.generateSignal(symbolBuffer, 0, len, audioBuffer, 0);
+
+        out.write(audioBuffer, 0, bytes);
     }
 
     /**
@@ -302,8 +399,9 @@ public class BpskOutputStream extends FilterOutputStream {
      */
     @Override
     public void write(int b) throws IOException {
-        out.write(psk.generateSignal(getPskData(b)));
-        out.write(psk.generateSignal(CHARACTER_SEPARATOR));
+        appendCharacter(b);
+
+        writeSymbols();
     }
 
     @Override
@@ -316,31 +414,11 @@ public class BpskOutputStream extends FilterOutputStream {
      */
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
-        int size = 0;
-
         for (int i = off; i < off+len; ++i) {
-            size += getPskData(b[i]).length + CHARACTER_SEPARATOR.length;
-        }
-
-        byte[] symbols = new byte[size];
-
-        for (int i = off, sym_i = 0; i < off+len; ++i) {
-            byte[] symbol = getPskData(b[i]);
-
-            /* Append symbol data. */
-            for (int j = 0; j < symbol.length; ++j) {
-                symbols[sym_i++] = symbol[j];
-            }
-
-            /* Append character separator sequence. */
-            for (int j = 0; j < CHARACTER_SEPARATOR.length; j++) {
-                symbols[sym_i++] = CHARACTER_SEPARATOR[j];
-            }
+            appendCharacter(b[i]);
         }
 
-        final byte[] finalData = psk.generateSignal(symbols);
-
-        out.write(finalData, 0, finalData.length);
+        writeSymbols();
     }
 
     /**
@@ -354,9 +432,9 @@ public class BpskOutputStream extends FilterOutputStream {
      * @throws IOException on error.
      */
     public void preamble(final int length) throws IOException {
-        final byte[] signal = new byte[length];
+        appendRun(0L, length);
 
-        out.write(psk.generateSignal(signal));
+        writeSymbols();
     }
 
     /**
@@ -370,10 +448,8 @@ public class BpskOutputStream extends FilterOutputStream {
      * @throws IOException on error.
      */
     public void postamble(final int length) throws IOException {
-        final byte[] signal = new byte[length];
-
-        Arrays.fill(signal, (byte)1);
+        appendRun(-1L, length);
 
-        out.write(psk.generateSignal(signal));
+        writeSymbols();
     }
-}
\ No newline at end of file
+}
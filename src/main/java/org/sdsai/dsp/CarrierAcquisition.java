@@ -0,0 +1,389 @@
+package org.sdsai.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Find the carrier of an idling PSK signal from the spectrum of the audio.
+ *
+ * An idle PSK31 signal is a steady series of phase reversals. Its spectrum is two tones,
+ * half the symbol rate above and below the carrier, with a null on the carrier itself.
+ * This class averages the power spectrum of the audio over a few {@link Fft} frames,
+ * finds the peaks that stand above the noise, places each peak between bins by fitting
+ * a Gaussian to it and its neighbors, and looks for two peaks of similar power one
+ * symbol rate apart with a dip between them. The carrier is halfway between the pair.
+ *
+ * An estimate is made every half second by default. {@link #setTiming(double, double)} may
+ * space them out, and audio between estimates is then not transformed at all.
+ *
+ * Audio is 16 bit, big endian, signed samples. This class is not thread safe.
+ */
+public class CarrierAcquisition {
+
+    /**
+     * The FFT is sized so the two tones of an idle signal are at least this many bins apart.
+     */
+    private static final int BINS_PER_SYMBOL_RATE = 8;
+
+    /**
+     * How far, as a fraction of the symbol rate, the spacing of a pair of tones may be from the symbol rate.
+     */
+    private static final double SPACING_TOLERANCE = 0.2;
+
+    /**
+     * The most the power of the two tones of a pair may differ by.
+     */
+    private static final double TONE_BALANCE = 2.0;
+
+    /**
+     * How much less power the carrier bin must have than the weaker tone of a pair.
+     */
+    private static final double CARRIER_DIP = 3.0;
+
+    private final int sampleRate;
+
+    private final double symbolsPerSecond;
+
+    private final Fft fft;
+
+    /**
+     * A Hann window the size of the FFT.
+     */
+    private final double[] window;
+
+    private final double[] re;
+    private final double[] im;
+
+    /**
+     * The summed power spectrum of the frames of the current estimate.
+     */
+    private final double[] power;
+
+    /**
+     * Scratch space for finding the noise power.
+     */
+    private final double[] sorted;
+
+    /**
+     * The frequency and power of each peak found in {@link #power}.
+     */
+    private final double[] peakHz;
+    private final double[] peakPower;
+
+    /**
+     * The number of samples in {@link #re} of the current frame.
+     */
+    private int frameFill;
+
+    /**
+     * The number of frames summed into {@link #power}.
+     */
+    private int frames;
+
+    /**
+     * The number of frames averaged for each estimate.
+     */
+    private int framesPerEstimate;
+
+    /**
+     * The number of samples to skip before the next estimate starts.
+     */
+    private int skip;
+
+    /**
+     * The number of samples from the start of one estimate to the start of the next.
+     */
+    private int period;
+
+    /**
+     * The lowest and highest carrier searched for.
+     */
+    private double lowHz;
+    private double highHz;
+
+    /**
+     * The lowest and highest bin searched, which include the tones of the lowest and highest carriers.
+     */
+    private int firstBin;
+    private int lastBin;
+
+    /**
+     * How many times the noise power a tone must have.
+     */
+    private double threshold;
+
+    /**
+     * The last carrier found, or NaN.
+     */
+    private double carrier;
+
+    /**
+     * Constructor.
+     *
+     * @param sampleRate The audio sample rate.
+     * @param symbolsPerSecond How many symbols per second, such as {@link BpskGenerator#PSK31_SYMBOLS_PER_SECOND}.
+     */
+    public CarrierAcquisition(final int sampleRate, final double symbolsPerSecond) {
+        int size = 16;
+        while (sampleRate / (double) size > symbolsPerSecond / BINS_PER_SYMBOL_RATE) {
+            size <<= 1;
+        }
+
+        this.sampleRate       = sampleRate;
+        this.symbolsPerSecond = symbolsPerSecond;
+        this.fft              = new Fft(size);
+        this.window           = new double[size];
+        this.re               = new double[size];
+        this.im               = new double[size];
+        this.power            = new double[size / 2 + 1];
+        this.sorted           = new double[size / 2 + 1];
+        this.peakHz           = new double[size / 4 + 1];
+        this.peakPower        = new double[size / 4 + 1];
+        this.frameFill        = 0;
+        this.frames           = 0;
+        this.skip             = 0;
+        this.threshold        = 10;
+        this.carrier          = Double.NaN;
+
+        for (int i = 0; i < size; ++i) {
+            window[i] = 0.5 - 0.5 * Math.cos(2.0 * Math.PI * i / size);
+        }
+
+        setBand(200, Math.min(3500, sampleRate / 2.0 - symbolsPerSecond));
+        setTiming(0.5, 0.5);
+    }
+
+    /**
+     * Limit the search to a band.
+     *
+     * @param lowHz The lowest carrier to find.
+     * @param highHz The highest carrier to find.
+     */
+    public void setBand(final double lowHz, final double highHz) {
+        final double binHz = getBinWidth();
+
+        if (lowHz >= highHz || highHz > sampleRate / 2.0) {
+            throw new IllegalArgumentException("No band between "+lowHz+" and "+highHz+" Hz.");
+        }
+
+        this.lowHz    = lowHz;
+        this.highHz   = highHz;
+        this.firstBin = Math.max(1, (int) Math.floor((lowHz - symbolsPerSecond) / binHz));
+        this.lastBin  = Math.min(power.length - 2, (int) Math.ceil((highHz + symbolsPerSecond) / binHz));
+    }
+
+    /**
+     * Set how much audio each estimate averages and how often estimates are made.
+     *
+     * @param averageSeconds The seconds of audio averaged for each estimate.
+     *        This is rounded up to a whole number of FFT frames.
+     * @param periodSeconds The seconds from the start of one estimate to the start of the next.
+     *        Audio after an estimate is averaged until this much time has passed is skipped.
+     *        The default averages half a second every half second.
+     */
+    public void setTiming(final double averageSeconds, final double periodSeconds) {
+        framesPerEstimate = Math.max(1, (int) Math.ceil(averageSeconds * sampleRate / fft.getSize()));
+        period            = Math.max(framesPerEstimate * fft.getSize(), (int) (periodSeconds * sampleRate));
+    }
+
+    /**
+     * Set how far above the noise each tone of an idle signal must be.
+     *
+     * @param db The threshold in decibels. The default is 10.
+     */
+    public void setThreshold(final double db) {
+        this.threshold = Math.pow(10, db / 10.0);
+    }
+
+    /**
+     * Process audio.
+     *
+     * @param data Raw audio data.
+     * @param off The offset into the buffer to operate on.
+     * @param len The length of data to operate on. A trailing odd byte is ignored.
+     *
+     * @return True if an estimate was completed and found a carrier. See {@link #getCarrier()}.
+     *         Once a carrier is found others are ignored unless they are stronger than it.
+     */
+    public boolean process(final byte[] data, final int off, final int len) {
+        final int end   = off + (len & ~1);
+        boolean   found = false;
+
+        for (int i = off; i < end; ) {
+            if (skip > 0) {
+                final int skipped = Math.min(skip, (end - i) / 2);
+                skip -= skipped;
+                i    += 2 * skipped;
+                continue;
+            }
+
+            final int count = Math.min(re.length - frameFill, (end - i) / 2);
+            for (int j = 0; j < count; ++j, i += 2) {
+                final short sample = (short) (((data[i] << 8) & 0xff00) | (data[i+1] & 0xff));
+
+                re[frameFill + j] = sample * window[frameFill + j];
+            }
+            frameFill += count;
+
+            if (frameFill == re.length) {
+                frameFill = 0;
+                found    |= endFrame();
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Transform a full frame and add it to the average, making an estimate when enough are summed.
+     */
+    private boolean endFrame() {
+        Arrays.fill(im, 0);
+        fft.transform(re, im);
+
+        for (int k = 0; k < power.length; ++k) {
+            power[k] += re[k] * re[k] + im[k] * im[k];
+        }
+
+        if (++frames < framesPerEstimate) {
+            return false;
+        }
+
+        final boolean found = estimate();
+
+        frames = 0;
+        skip   = period - framesPerEstimate * fft.getSize();
+        Arrays.fill(power, 0);
+
+        return found;
+    }
+
+    /**
+     * Search the summed spectrum for an idle signal.
+     */
+    private boolean estimate() {
+        final double binHz = getBinWidth();
+
+        /* The median of the band is the noise. */
+        final int count = lastBin - firstBin + 1;
+        System.arraycopy(power, firstBin, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+        final double floor = sorted[count / 2] * threshold;
+
+        /* Find each peak and place it between bins. */
+        int peaks = 0;
+        for (int k = firstBin; k <= lastBin; ++k) {
+            if (power[k] > floor && power[k] > power[k - 1] && power[k] >= power[k + 1]) {
+                final double a = Math.log(power[k - 1] + Double.MIN_VALUE);
+                final double b = Math.log(power[k]);
+                final double c = Math.log(power[k + 1] + Double.MIN_VALUE);
+                final double d = a - 2 * b + c;
+
+                peakHz[peaks]    = (k + ((d < 0) ? 0.5 * (a - c) / d : 0)) * binHz;
+                peakPower[peaks] = power[k];
+                ++peaks;
+            }
+        }
+
+        /* Text spreads a signal's power so its tones vanish. While the last carrier is sending
+         * text a pair elsewhere must be stronger than it to pull the carrier away. */
+        final double held = Double.isNaN(carrier) ? 0 : nearbyPower();
+
+        /* Find the strongest balanced pair of tones one symbol rate apart with a dip between them. */
+        double best   = 0;
+        double bestHz = Double.NaN;
+        for (int i = 0; i < peaks; ++i) {
+            for (int j = i + 1; j < peaks && peakHz[j] - peakHz[i] < symbolsPerSecond * (1 + SPACING_TOLERANCE); ++j) {
+                if (peakHz[j] - peakHz[i] < symbolsPerSecond * (1 - SPACING_TOLERANCE)) {
+                    continue;
+                }
+
+                final double weaker   = Math.min(peakPower[i], peakPower[j]);
+                final double stronger = Math.max(peakPower[i], peakPower[j]);
+                final double middleHz = (peakHz[i] + peakHz[j]) / 2;
+                final double middle   = power[(int) Math.round(middleHz / binHz)];
+
+                if (stronger < weaker * TONE_BALANCE
+                    && middle * CARRIER_DIP < weaker
+                    && weaker > best
+                    && middleHz >= lowHz
+                    && middleHz <= highHz
+                    && !strongerNearby(peaks, i, j, weaker)
+                    && (weaker > held || Math.abs(middleHz - carrier) < symbolsPerSecond * SPACING_TOLERANCE))
+                {
+                    best   = weaker;
+                    bestHz = middleHz;
+                }
+            }
+        }
+
+        if (Double.isNaN(bestHz)) {
+            return false;
+        }
+
+        carrier = bestHz;
+
+        return true;
+    }
+
+    /**
+     * Return the most power in any bin within a symbol rate of the last carrier.
+     */
+    private double nearbyPower() {
+        final double binHz = getBinWidth();
+        final int    first = Math.max(0, (int) Math.floor((carrier - symbolsPerSecond) / binHz));
+        final int    last  = Math.min(power.length - 1, (int) Math.ceil((carrier + symbolsPerSecond) / binHz));
+        double       max   = 0;
+
+        for (int k = first; k <= last; ++k) {
+            max = Math.max(max, power[k]);
+        }
+
+        return max;
+    }
+
+    /**
+     * Check if a peak other than a pair of tones is near them and stronger than either.
+     *
+     * The sidelobes of a signal sending text can look like a pair of tones, but unlike the
+     * tones of an idle signal they are weaker than the main lobe beside them.
+     */
+    private boolean strongerNearby(final int peaks, final int i, final int j, final double weaker) {
+        final double low  = peakHz[i] - symbolsPerSecond;
+        final double high = peakHz[j] + symbolsPerSecond;
+
+        for (int k = 0; k < peaks && peakHz[k] <= high; ++k) {
+            if (k != i && k != j && peakHz[k] >= low && peakPower[k] > weaker) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Return the last carrier found.
+     *
+     * @return the last carrier found, or NaN if none has been.
+     */
+    public double getCarrier() {
+        return carrier;
+    }
+
+    /**
+     * Return the width of each FFT bin.
+     *
+     * @return the width of each FFT bin.
+     */
+    public double getBinWidth() {
+        return (double) sampleRate / fft.getSize();
+    }
+
+    /**
+     * Return the number of samples in each FFT frame.
+     *
+     * @return the number of samples in each FFT frame.
+     */
+    public int getFftSize() {
+        return fft.getSize();
+    }
+}
@@ -0,0 +1,341 @@
+package org.sdsai.dsp;
+
+/**
+ * Simulate a radio channel by degrading 16 bit, big endian, signed audio.
+ *
+ * The following impairments are applied, in order, to every sample.
+ * <ol>
+ * <li>Multipath. Delayed and scaled copies of the signal are added to it.</li>
+ * <li>Amplitude fading. The signal is scaled by a slowly varying Rayleigh distributed gain.</li>
+ * <li>Frequency offset and drift. The whole signal is shifted in frequency.</li>
+ * <li>Additive white gaussian noise.</li>
+ * </ol>
+ *
+ * All randomness comes from a seeded {@link FastRandom} so the same seed and settings
+ * always produce the same output. Every impairment is disabled by default.
+ */
+public class ChannelSimulator {
+
+    /**
+     * The RMS value of the carrier produced by {@link BpskGenerator}.
+     *
+     * This is the default signal level that {@link #setSignalToNoise(double)} is relative to.
+     */
+    public static final double DEFAULT_SIGNAL_RMS = Short.MAX_VALUE * 0.8 / Math.sqrt(2.0);
+
+    /**
+     * The number of taps in the {@link #HILBERT} filter.
+     */
+    private static final int HILBERT_TAPS = 63;
+
+    /**
+     * Coefficients of a windowed Hilbert transform used to shift frequencies.
+     */
+    private static final double[] HILBERT = new double[HILBERT_TAPS];
+
+    static {
+        final int center = HILBERT_TAPS / 2;
+        for (int i = 0; i < HILBERT_TAPS; ++i) {
+            final int k = i - center;
+            if (k % 2 != 0) {
+                final double window = 0.54 - 0.46 * Math.cos(2.0 * Math.PI * i / (HILBERT_TAPS - 1));
+                HILBERT[i] = 2.0 / (Math.PI * k) * window;
+            }
+        }
+    }
+
+    /**
+     * The audio sample rate.
+     */
+    private final int sampleRate;
+
+    /**
+     * Source of noise and fading.
+     */
+    private final FastRandom random;
+
+    /**
+     * The signal level the signal to noise ratio is computed against.
+     */
+    private double signalRms;
+
+    /**
+     * The signal to noise ratio in decibels.
+     */
+    private double snrDb;
+
+    /**
+     * The standard deviation of the noise added to each sample.
+     */
+    private double noiseSigma;
+
+    /**
+     * Delay, in samples, of each multipath echo.
+     */
+    private int[] pathDelays;
+
+    /**
+     * Gain of each multipath echo.
+     */
+    private double[] pathGains;
+
+    /**
+     * Past input samples used to build multipath echoes. This is a power of two in length.
+     */
+    private double[] pathHistory;
+
+    /**
+     * The next index to write in {@link #pathHistory}.
+     */
+    private int pathPosition;
+
+    /**
+     * The pole of the low pass filter applied to the fading process, or 0 if fading is off.
+     */
+    private double fadePole;
+
+    /**
+     * The gain of the noise fed into the fading filter.
+     */
+    private double fadeInput;
+
+    /**
+     * The in phase component of the fading gain.
+     */
+    private double fadeI;
+
+    /**
+     * The quadrature component of the fading gain.
+     */
+    private double fadeQ;
+
+    /**
+     * The current frequency shift in hertz.
+     */
+    private double offsetHz;
+
+    /**
+     * The change of {@link #offsetHz} every sample.
+     */
+    private double driftPerSample;
+
+    /**
+     * Phase accumulator of the frequency shifting oscillator.
+     */
+    private int shiftPhase;
+
+    /**
+     * Past samples fed to the Hilbert filter. This is a power of two in length.
+     */
+    private final double[] shiftHistory;
+
+    /**
+     * The next index to write in {@link #shiftHistory}.
+     */
+    private int shiftPosition;
+
+    /**
+     * Constructor.
+     *
+     * @param sampleRate The sample rate of the audio that will be processed.
+     * @param seed The seed of the random number generator.
+     */
+    public ChannelSimulator(final int sampleRate, final long seed) {
+        this.sampleRate     = sampleRate;
+        this.random         = new FastRandom(seed);
+        this.signalRms      = DEFAULT_SIGNAL_RMS;
+        this.snrDb          = Double.POSITIVE_INFINITY;
+        this.noiseSigma     = 0;
+        this.pathDelays     = new int[0];
+        this.pathGains      = new double[0];
+        this.pathHistory    = new double[1];
+        this.pathPosition   = 0;
+        this.fadePole       = 0;
+        this.offsetHz       = 0;
+        this.driftPerSample = 0;
+        this.shiftPhase     = 0;
+        this.shiftHistory   = new double[64];
+        this.shiftPosition  = 0;
+    }
+
+    /**
+     * Set the level of the signal that {@link #setSignalToNoise(double)} is measured against.
+     *
+     * @param signalRms The RMS value of the expected signal.
+     */
+    public void setSignalRms(final double signalRms) {
+        this.signalRms  = signalRms;
+        this.noiseSigma = signalRms / Math.pow(10.0, snrDb / 20.0);
+    }
+
+    /**
+     * Add white gaussian noise to the signal.
+     *
+     * Note that the noise occupies the whole bandwidth of the sample rate.
+     *
+     * @param snrDb The ratio of the signal power to the noise power in decibels.
+     *        {@link Double#POSITIVE_INFINITY} disables noise.
+     */
+    public void setSignalToNoise(final double snrDb) {
+        this.snrDb      = snrDb;
+        this.noiseSigma = signalRms / Math.pow(10.0, snrDb / 20.0);
+    }
+
+    /**
+     * Shift the frequency of the signal.
+     *
+     * @param hz The shift, which may be negative.
+     */
+    public void setFrequencyOffset(final double hz) {
+        this.offsetHz = hz;
+    }
+
+    /**
+     * Change the frequency offset over time.
+     *
+     * @param hzPerSecond How quickly the offset changes.
+     */
+    public void setFrequencyDrift(final double hzPerSecond) {
+        this.driftPerSample = hzPerSecond / sampleRate;
+    }
+
+    /**
+     * Add an echo of the signal.
+     *
+     * @param delay How late the echo arrives, in seconds.
+     * @param gain The amplitude of the echo relative to the direct signal.
+     */
+    public void addPath(final double delay, final double gain) {
+        final int delaySamples = (int)Math.round(delay * sampleRate);
+        final int n            = pathDelays.length;
+
+        final int[]    delays = new int[n+1];
+        final double[] gains  = new double[n+1];
+        System.arraycopy(pathDelays, 0, delays, 0, n);
+        System.arraycopy(pathGains, 0, gains, 0, n);
+        delays[n] = delaySamples;
+        gains[n]  = gain;
+
+        pathDelays = delays;
+        pathGains  = gains;
+
+        if (pathHistory.length <= delaySamples) {
+            pathHistory  = new double[Integer.highestOneBit(delaySamples) * 2];
+            pathPosition = 0;
+        }
+    }
+
+    /**
+     * Apply Rayleigh amplitude fading to the signal.
+     *
+     * @param hz The rate at which the fading changes. 0 disables fading.
+     */
+    public void setFading(final double hz) {
+        if (hz <= 0) {
+            fadePole = 0;
+            return;
+        }
+
+        fadePole  = Math.exp(-2.0 * Math.PI * hz / sampleRate);
+
+        /* Scale the input so that the mean power of the fading gain is 1. */
+        fadeInput = Math.sqrt((1 - fadePole * fadePole) / 2.0);
+        fadeI     = Math.sqrt(0.5) * random.nextGaussian();
+        fadeQ     = Math.sqrt(0.5) * random.nextGaussian();
+    }
+
+    /**
+     * Degrade the given audio in place.
+     *
+     * @param data 16 bit, big endian, signed audio.
+     */
+    public void process(final byte[] data) {
+        process(data, 0, data.length);
+    }
+
+    /**
+     * Degrade the given audio in place.
+     *
+     * @param data 16 bit, big endian, signed audio.
+     * @param off The offset into data to start at.
+     * @param len The number of bytes to process.
+     */
+    public void process(final byte[] data, final int off, final int len) {
+        final int     pathMask   = pathHistory.length - 1;
+        final int     shiftMask  = shiftHistory.length - 1;
+        final boolean shift      = offsetHz != 0 || driftPerSample != 0;
+        final double  stepsPerHz = 4294967296.0 / sampleRate;
+
+        for (int i = off; i + 1 < off + len; i += 2) {
+            double s = (short)(((data[i] << 8) & 0xff00) | (data[i+1] & 0xff));
+
+            if (pathDelays.length > 0) {
+                pathHistory[pathPosition] = s;
+                for (int p = 0; p < pathDelays.length; ++p) {
+                    s += pathGains[p] * pathHistory[(pathPosition - pathDelays[p]) & pathMask];
+                }
+                pathPosition = (pathPosition + 1) & pathMask;
+            }
+
+            if (fadePole != 0) {
+                fadeI = fadePole * fadeI + fadeInput * random.nextGaussian();
+                fadeQ = fadePole * fadeQ + fadeInput * random.nextGaussian();
+                s *= Math.sqrt(fadeI * fadeI + fadeQ * fadeQ);
+            }
+
+            if (shift) {
+                shiftHistory[shiftPosition] = s;
+
+                /* Build the analytic signal. The real part is delayed to match the filter. */
+                double imaginary = 0;
+                for (int k = 0; k < HILBERT_TAPS; k += 2) {
+                    imaginary += HILBERT[k] * shiftHistory[(shiftPosition - k) & shiftMask];
+                }
+                final double real = shiftHistory[(shiftPosition - HILBERT_TAPS / 2) & shiftMask];
+                shiftPosition = (shiftPosition + 1) & shiftMask;
+
+                s = real * SineTable.cos(shiftPhase) - imaginary * SineTable.sin(shiftPhase);
+
+                shiftPhase += (int)(long)(offsetHz * stepsPerHz);
+                offsetHz   += driftPerSample;
+            }
+
+            if (noiseSigma != 0) {
+                s += noiseSigma * random.nextGaussian();
+            }
+
+            /* Clip. */
+            final short out;
+            if (s > Short.MAX_VALUE) {
+                out = Short.MAX_VALUE;
+            }
+            else if (s < Short.MIN_VALUE) {
+                out = Short.MIN_VALUE;
+            }
+            else {
+                out = (short) s;
+            }
+
+            data[i]   = (byte) ((out >>> 8) & 0xff);
+            data[i+1] = (byte) ((out) & 0xff);
+        }
+    }
+
+    /**
+     * Return the current frequency offset, including any drift.
+     *
+     * @return the current frequency offset.
+     */
+    public double getFrequencyOffset() {
+        return offsetHz;
+    }
+
+    /**
+     * Return the sample rate.
+     *
+     * @return The sample rate.
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+}
@@ -0,0 +1,76 @@
+package org.sdsai.dsp;
+
+/**
+ * The rate 1/2, constraint length 5, convolutional encoder used by QPSK31.
+ *
+ * Every input bit produces a two bit symbol. The high bit of the symbol is the parity of the
+ * encoder register masked by {@link #POLY1} and the low bit is the parity masked by {@link #POLY2}.
+ * The newest input bit is the least significant bit of the register.
+ */
+public final class ConvolutionalEncoder {
+
+    /**
+     * The constraint length of the code.
+     */
+    public static final int K = 5;
+
+    /**
+     * The number of encoder states.
+     */
+    public static final int STATES = 1 << (K - 1);
+
+    /**
+     * The generator polynomial of the high bit of each symbol.
+     */
+    public static final int POLY1 = 0x19;
+
+    /**
+     * The generator polynomial of the low bit of each symbol.
+     */
+    public static final int POLY2 = 0x17;
+
+    /**
+     * The last {@code K - 1} input bits.
+     */
+    private int state;
+
+    /**
+     * Constructor. The encoder starts with a register of all zeros.
+     */
+    public ConvolutionalEncoder() {
+        this.state = 0;
+    }
+
+    /**
+     * Encode a single bit.
+     *
+     * @param bit The bit to encode, a 1 or 0.
+     *
+     * @return The two bit symbol, 0 through 3.
+     */
+    public int encode(final int bit) {
+        final int register = (state << 1) | (bit & 1);
+
+        state = register & (STATES - 1);
+
+        return symbol(register);
+    }
+
+    /**
+     * Compute the symbol produced by a full encoder register.
+     *
+     * @param register The previous {@code K - 1} bits shifted left once, or'ed with the newest bit.
+     *
+     * @return The two bit symbol, 0 through 3.
+     */
+    public static int symbol(final int register) {
+        return ((Integer.bitCount(register & POLY1) & 1) << 1) | (Integer.bitCount(register & POLY2) & 1);
+    }
+
+    /**
+     * Return the encoder to the all zeros state.
+     */
+    public void reset() {
+        state = 0;
+    }
+}
@@ -0,0 +1,354 @@
+package org.sdsai.dsp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+/**
+ * Build a reproducible corpus of labeled PSK audio for benchmarks and tuning.
+ *
+ * Each item of the corpus is a {@code .wav} file holding random text modulated by
+ * a {@link BpskGenerator} and degraded by a {@link ChannelSimulator}, and a
+ * {@code .txt} label file holding the text and the channel settings used.
+ * The settings of each item are drawn from a {@link FastRandom} seeded from a hash of the
+ * corpus seed and the item number, so items may be built in any order, on any number
+ * of threads, and are always identical. Corpora with different seeds do not share items.
+ */
+public class CorpusBuilder {
+
+    /**
+     * Words used to build the text of each item.
+     */
+    private static final String[] WORDS = {
+        "CQ", "DE", "K", "SK", "RST", "599", "QTH", "NAME", "RIG", "ANT",
+        "the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog",
+        "Thank", "you", "for", "the", "contact,", "73.", "Hello", "world",
+        "weather", "is", "cold", "and", "wet.", "Running", "10W", "into", "a", "dipole."
+    };
+
+    private final File directory;
+    private final long seed;
+    private int sampleRate;
+    private double symbolsPerSecond;
+    private double secondsPerItem;
+    private double minHz;
+    private double maxHz;
+    private double minSnrDb;
+    private double maxSnrDb;
+    private double maxOffsetHz;
+    private double maxDriftHzPerSecond;
+    private double maxFadingHz;
+    private double maxEchoDelay;
+    private int threads;
+
+    /**
+     * Constructor.
+     *
+     * @param directory The directory to write the corpus into. It is created if it does not exist.
+     * @param seed The seed that determines the entire content of the corpus.
+     */
+    public CorpusBuilder(final File directory, final long seed) {
+        this.directory           = directory;
+        this.seed                = seed;
+        this.sampleRate          = 8000;
+        this.symbolsPerSecond    = BpskGenerator.PSK31_SYMBOLS_PER_SECOND;
+        this.secondsPerItem      = 60;
+        this.minHz               = 500;
+        this.maxHz               = 2500;
+        this.minSnrDb            = -5;
+        this.maxSnrDb            = 20;
+        this.maxOffsetHz         = 5;
+        this.maxDriftHzPerSecond = 0.05;
+        this.maxFadingHz         = 0.5;
+        this.maxEchoDelay        = 0.002;
+        this.threads             = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Set the sample rate of the audio. The default is 8000.
+     *
+     * @param sampleRate The sample rate.
+     */
+    public void setSampleRate(final int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Set the symbol rate. The default is {@link BpskGenerator#PSK31_SYMBOLS_PER_SECOND}.
+     *
+     * @param symbolsPerSecond How many symbols per second.
+     */
+    public void setSymbolRate(final double symbolsPerSecond) {
+        this.symbolsPerSecond = symbolsPerSecond;
+    }
+
+    /**
+     * Set the length of each item.
+     *
+     * @param secondsPerItem The length of each item in seconds.
+     */
+    public void setSecondsPerItem(final double secondsPerItem) {
+        this.secondsPerItem = secondsPerItem;
+    }
+
+    /**
+     * Set the range carrier frequencies are chosen from.
+     *
+     * @param minHz The lowest carrier frequency.
+     * @param maxHz The highest carrier frequency.
+     */
+    public void setCarrierRange(final double minHz, final double maxHz) {
+        this.minHz = minHz;
+        this.maxHz = maxHz;
+    }
+
+    /**
+     * Set the range of signal to noise ratios chosen from.
+     *
+     * @param minSnrDb The lowest signal to noise ratio in decibels.
+     * @param maxSnrDb The highest signal to noise ratio in decibels.
+     */
+    public void setSignalToNoiseRange(final double minSnrDb, final double maxSnrDb) {
+        this.minSnrDb = minSnrDb;
+        this.maxSnrDb = maxSnrDb;
+    }
+
+    /**
+     * Set the limits of the other channel impairments. Any may be 0 to disable it.
+     *
+     * @param maxOffsetHz The largest frequency offset.
+     * @param maxDriftHzPerSecond The fastest frequency drift.
+     * @param maxFadingHz The fastest fading rate.
+     * @param maxEchoDelay The longest delay of a multipath echo in seconds.
+     */
+    public void setImpairments(
+        final double maxOffsetHz,
+        final double maxDriftHzPerSecond,
+        final double maxFadingHz,
+        final double maxEchoDelay
+    )
+    {
+        this.maxOffsetHz         = maxOffsetHz;
+        this.maxDriftHzPerSecond = maxDriftHzPerSecond;
+        this.maxFadingHz         = maxFadingHz;
+        this.maxEchoDelay        = maxEchoDelay;
+    }
+
+    /**
+     * Set the number of threads used to build the corpus.
+     *
+     * @param threads The number of threads. The default is the number of processors.
+     */
+    public void setThreads(final int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Build enough items to fill the given number of hours.
+     *
+     * @param hours The total length of audio to build.
+     *
+     * @return The number of items built.
+     *
+     * @throws IOException if any item could not be written.
+     */
+    public int buildHours(final double hours) throws IOException {
+        final int items = (int)Math.ceil(hours * 3600.0 / secondsPerItem);
+        build(items);
+        return items;
+    }
+
+    /**
+     * Build items {@code 0} through {@code items - 1} of the corpus.
+     *
+     * @param items The number of items to build.
+     *
+     * @throws IOException if any item could not be written.
+     */
+    public void build(final int items) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory "+directory);
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>(items);
+
+            for (int i = 0; i < items; ++i) {
+                final int item = i;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        buildItem(item);
+                        return null;
+                    }
+                }));
+            }
+
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while building corpus.", e);
+        }
+        catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to build corpus item.", e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Return the audio file of an item.
+     *
+     * @param item The item number.
+     *
+     * @return the audio file of an item.
+     */
+    public File getAudioFile(final int item) {
+        return new File(directory, String.format("item-%06d.wav", item));
+    }
+
+    /**
+     * Return the label file of an item.
+     *
+     * @param item The item number.
+     *
+     * @return the label file of an item.
+     */
+    public File getLabelFile(final int item) {
+        return new File(directory, String.format("item-%06d.txt", item));
+    }
+
+    /**
+     * Return a value in the range [min, max).
+     */
+    private static double uniform(final FastRandom random, final double min, final double max) {
+        return min + (max - min) * random.nextDouble();
+    }
+
+    /**
+     * Build a single item of the corpus.
+     *
+     * @param item The item number.
+     *
+     * @throws IOException on errors writing the item.
+     */
+    public void buildItem(final int item) throws IOException {
+        /* Hash the seed and item together so no item of one corpus repeats in another. */
+        final FastRandom random = new FastRandom(FastRandom.mix(seed ^ (item * 0x9E3779B97F4A7C15L)));
+
+        final double hz       = uniform(random, minHz, maxHz);
+        final double snrDb    = uniform(random, minSnrDb, maxSnrDb);
+        final double offsetHz = uniform(random, -maxOffsetHz, maxOffsetHz);
+        final double drift    = uniform(random, -maxDriftHzPerSecond, maxDriftHzPerSecond);
+        final double fadingHz = uniform(random, 0, maxFadingHz);
+        final double delay    = uniform(random, 0, maxEchoDelay);
+        final double echoGain = uniform(random, 0, 0.5);
+
+        /* Fill the item with text, leaving room for the preamble and postamble. */
+        final int           symbols = (int)(secondsPerItem * symbolsPerSecond) - 64;
+        final StringBuilder text    = new StringBuilder();
+        for (int used = 0; ; ) {
+            final String word = WORDS[random.nextInt(WORDS.length)];
+            int wordSymbols = 0;
+            for (int i = 0; i < word.length() + 1; ++i) {
+                final char c = (i < word.length()) ? word.charAt(i) : ' ';
+                wordSymbols += BpskOutputStream.CHARSET[c].length + 2;
+            }
+            if (used + wordSymbols > symbols) {
+                break;
+            }
+            used += wordSymbols;
+            text.append(word).append(' ');
+        }
+
+        final BpskGenerator         generator = new BpskGenerator(hz, sampleRate, symbolsPerSecond);
+        final ByteArrayOutputStream audio     = new ByteArrayOutputStream();
+        final BpskOutputStream      os        = new BpskOutputStream(audio, generator);
+        os.preamble(32);
+        os.write(text.toString().getBytes("US-ASCII"));
+        os.postamble(32);
+        os.close();
+
+        final byte[] data = audio.toByteArray();
+
+        final ChannelSimulator channel = new ChannelSimulator(sampleRate, random.nextLong());
+        if (maxEchoDelay > 0) {
+            channel.addPath(delay, echoGain);
+        }
+        channel.setFading(fadingHz);
+        channel.setFrequencyOffset(offsetHz);
+        channel.setFrequencyDrift(drift);
+        channel.setSignalToNoise(snrDb);
+        channel.process(data);
+
+        final AudioFormat format = generator.getAudioFormat();
+        AudioSystem.write(
+            new AudioInputStream(new ByteArrayInputStream(data), format, data.length / format.getFrameSize()),
+            AudioFileFormat.Type.WAVE,
+            getAudioFile(item));
+
+        final Writer label = new OutputStreamWriter(new FileOutputStream(getLabelFile(item)), "US-ASCII");
+        try {
+            label.write("hz="+hz+"\n");
+            label.write("sampleRate="+sampleRate+"\n");
+            label.write("symbolsPerSecond="+symbolsPerSecond+"\n");
+            label.write("snrDb="+snrDb+"\n");
+            label.write("offsetHz="+offsetHz+"\n");
+            label.write("driftHzPerSecond="+drift+"\n");
+            label.write("fadingHz="+fadingHz+"\n");
+            label.write("echoDelay="+delay+"\n");
+            label.write("echoGain="+echoGain+"\n");
+            label.write("text="+text.toString().trim()+"\n");
+        }
+        finally {
+            label.close();
+        }
+    }
+
+    /**
+     * Build a corpus from the command line.
+     *
+     * @param args The output directory, the number of hours of audio, and an optional seed.
+     *
+     * @throws IOException on errors.
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CorpusBuilder <directory> <hours> [seed]");
+            return;
+        }
+
+        final CorpusBuilder builder = new CorpusBuilder(
+            new File(args[0]),
+            (args.length > 2) ? Long.parseLong(args[2]) : 0);
+
+        final int items = builder.buildHours(Double.parseDouble(args[1]));
+
+        System.out.println("Built "+items+" items in "+args[0]);
+    }
+}
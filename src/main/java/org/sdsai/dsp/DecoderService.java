@@ -0,0 +1,377 @@
+package org.sdsai.dsp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decode many PSK streams at once on a small, shared set of threads.
+ *
+ * Each {@link Stream} is a {@link PskDecoder} with a short, bounded queue of audio buffers
+ * taken from a shared {@link AudioBufferPool}. Audio offered to a stream is copied into pooled
+ * buffers and queued. A stream with queued audio is scheduled once on the executor, decodes
+ * what it has queued, passes characters to its {@link PskDecoder.Listener}, and gives the
+ * buffers back to the pool. No thread is ever blocked waiting on a stream, so thousands of
+ * streams may share as many threads as there are processors.
+ *
+ * A stream's own memory is its decoder, about one symbol of audio, and its queue.
+ * All audio in flight lives in the pool, which is sized once for every stream.
+ *
+ * Offering audio never blocks. If the stream's queue is full or the pool has no free buffers
+ * the audio is refused and the caller may retry or drop it, which keeps a stream that
+ * can not keep up in real time from taking memory from the others.
+ *
+ * Java 6 has no virtual threads, so streams are small tasks on an {@link Executor} rather than threads.
+ */
+public class DecoderService {
+
+    private final Executor executor;
+
+    /**
+     * The executor built by this service and shut down by {@link #shutdown(long, TimeUnit)}, or null.
+     */
+    private final ExecutorService ownExecutor;
+
+    private final AudioBufferPool pool;
+
+    /**
+     * The number of buffers each stream may have queued.
+     */
+    private final int queueLength;
+
+    /**
+     * The number of open streams.
+     */
+    private final AtomicInteger streams;
+
+    /**
+     * Constructor that decodes on a fixed pool of threads owned by this service.
+     *
+     * @param threads The number of decoding threads, typically the number of processors.
+     * @param pool The pool of audio buffers shared by every stream.
+     * @param queueLength The number of buffers each stream may have queued.
+     */
+    public DecoderService(final int threads, final AudioBufferPool pool, final int queueLength) {
+        this(Executors.newFixedThreadPool(threads), pool, queueLength, true);
+    }
+
+    /**
+     * Constructor that decodes on a caller's executor.
+     *
+     * @param executor The executor to decode on. It is not shut down by {@link #shutdown(long, TimeUnit)}.
+     * @param pool The pool of audio buffers shared by every stream.
+     * @param queueLength The number of buffers each stream may have queued.
+     */
+    public DecoderService(final Executor executor, final AudioBufferPool pool, final int queueLength) {
+        this(executor, pool, queueLength, false);
+    }
+
+    private DecoderService(final Executor executor, final AudioBufferPool pool, final int queueLength, final boolean own) {
+        if (queueLength < 1) {
+            throw new IllegalArgumentException("Queue length must be positive: "+queueLength);
+        }
+
+        this.executor    = executor;
+        this.ownExecutor = own ? (ExecutorService) executor : null;
+        this.pool        = pool;
+        this.queueLength = queueLength;
+        this.streams     = new AtomicInteger(0);
+    }
+
+    /**
+     * Open a stream decoded by a BPSK detector.
+     *
+     * @param hz Frequency of the carrier.
+     * @param sampleRate The audio sample rate.
+     * @param symbolsPerSecond How many symbols per second, such as {@link BpskGenerator#PSK31_SYMBOLS_PER_SECOND}.
+     * @param listener Receives decoded characters on a decoding thread.
+     *
+     * @return The new stream.
+     */
+    public Stream open(final double hz, final int sampleRate, final double symbolsPerSecond, final PskDecoder.Listener listener) {
+        return open(new BpskDetector(hz, sampleRate, symbolsPerSecond), listener);
+    }
+
+    /**
+     * Open a stream.
+     *
+     * @param detector The detector of the stream's signal. It must not be shared with another stream.
+     * @param listener Receives decoded characters on a decoding thread.
+     *
+     * @return The new stream.
+     */
+    public Stream open(final SymbolDetector detector, final PskDecoder.Listener listener) {
+        final Stream stream = new Stream(new PskDecoder(detector));
+
+        stream.decoder.setListener(listener);
+        streams.incrementAndGet();
+
+        return stream;
+    }
+
+    /**
+     * Return the number of open streams.
+     *
+     * @return the number of open streams.
+     */
+    public int getStreamCount() {
+        return streams.get();
+    }
+
+    /**
+     * Return the pool of audio buffers shared by every stream.
+     *
+     * @return the pool of audio buffers shared by every stream.
+     */
+    public AudioBufferPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Stop decoding once the audio already queued is decoded.
+     *
+     * If this service was given an executor this does nothing. The caller shuts it down.
+     *
+     * Audio offered after this is refused, and closes its stream as described by {@link Stream#offer(byte[], int, int)}.
+     *
+     * @param timeout How long to wait for queued audio to be decoded.
+     * @param unit The unit of {@code timeout}.
+     *
+     * @return False if the timeout passed before decoding stopped.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean shutdown(final long timeout, final TimeUnit unit) throws InterruptedException {
+        if (ownExecutor == null) {
+            return true;
+        }
+
+        ownExecutor.shutdown();
+
+        return ownExecutor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * One decoded audio stream.
+     *
+     * Audio must be offered to a stream by one thread at a time.
+     */
+    public class Stream implements Runnable {
+
+        private final PskDecoder decoder;
+
+        /**
+         * Audio buffers waiting to be decoded.
+         */
+        private final ArrayBlockingQueue<ByteBuffer> queue;
+
+        /**
+         * True while this stream is waiting to run or running on the executor.
+         */
+        private final AtomicBoolean scheduled;
+
+        private final AtomicBoolean closed;
+
+        /**
+         * The first error from the decoder or its listener. The stream is closed when this is set.
+         */
+        private volatile IOException error;
+
+        private Stream(final PskDecoder decoder) {
+            this.decoder   = decoder;
+            this.queue     = new ArrayBlockingQueue<ByteBuffer>(queueLength);
+            this.scheduled = new AtomicBoolean(false);
+            this.closed    = new AtomicBoolean(false);
+            this.error     = null;
+        }
+
+        /**
+         * Queue audio to be decoded.
+         *
+         * The audio is copied into buffers from the pool, so the caller may reuse {@code data}
+         * when this returns. As much audio is queued as there is room for in the stream's queue
+         * and free buffers in the pool. The caller may retry the rest or drop it.
+         *
+         * If the executor refuses to run the stream, because it was shut down or is full,
+         * the stream is closed with a {@link RejectedExecutionException} as the cause of its
+         * error, and its queued audio is dropped and its buffers given back to the pool.
+         *
+         * @param data Raw audio in the format of the stream's detector.
+         * @param off The offset into data to start at.
+         * @param len The number of bytes.
+         *
+         * @return The number of bytes queued. This is 0 if the stream is closed,
+         *         including when it was closed because the executor refused to run it.
+         */
+        public int offer(final byte[] data, final int off, final int len) {
+            int queued = 0;
+
+            while (queued < len && !closed.get() && queue.remainingCapacity() > 0) {
+                final ByteBuffer buffer = pool.take();
+
+                if (buffer == null) {
+                    break;
+                }
+
+                final int count = Math.min(buffer.remaining(), len - queued);
+                buffer.put(data, off + queued, count);
+                buffer.flip();
+
+                /* Only this thread adds to the queue, so there is still room. */
+                queue.add(buffer);
+                queued += count;
+            }
+
+            if (queued > 0) {
+                schedule();
+            }
+
+            return closed.get() ? 0 : queued;
+        }
+
+        /**
+         * Run this stream on the executor unless it is already waiting to run.
+         */
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                }
+                catch (final RejectedExecutionException e) {
+                    /* Nothing will run this stream, so give its buffers back now. */
+                    scheduled.set(false);
+                    fail(new IOException("The executor refused to decode the stream.", e));
+                }
+            }
+        }
+
+        /**
+         * Decode the queued audio. This is called by the executor.
+         */
+        @Override
+        public void run() {
+            try {
+                /* Decode at most one queue's worth before letting other streams run. */
+                for (int i = 0; i < queueLength && !closed.get(); ++i) {
+                    final ByteBuffer buffer = queue.poll();
+
+                    if (buffer == null) {
+                        break;
+                    }
+
+                    try {
+                        decoder.feed(buffer);
+                    }
+                    catch (final IOException e) {
+                        fail(e);
+                    }
+                    catch (final RuntimeException e) {
+                        /* A failing listener or detector must not leave this stream scheduled forever. */
+                        fail(new IOException("Decoding failed.", e));
+                    }
+                    finally {
+                        pool.give(buffer);
+                    }
+                }
+            }
+            finally {
+                scheduled.set(false);
+
+                /* Audio queued after the loop ended but before scheduled was cleared would otherwise wait. */
+                if (!queue.isEmpty()) {
+                    if (closed.get()) {
+                        drain();
+                    }
+                    else {
+                        schedule();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Record the first error and close this stream.
+         */
+        private void fail(final IOException e) {
+            if (error == null) {
+                error = e;
+            }
+
+            close();
+        }
+
+        /**
+         * Return all queued buffers to the pool.
+         */
+        private void drain() {
+            for (ByteBuffer buffer = queue.poll(); buffer != null; buffer = queue.poll()) {
+                pool.give(buffer);
+            }
+        }
+
+        /**
+         * Stop decoding this stream and return its queued audio buffers to the pool.
+         */
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                streams.decrementAndGet();
+            }
+
+            drain();
+        }
+
+        /**
+         * Return true if this stream has no audio queued and is not being decoded.
+         *
+         * @return true if this stream has no audio queued and is not being decoded.
+         */
+        public boolean isIdle() {
+            return !scheduled.get() && queue.isEmpty();
+        }
+
+        /**
+         * Return true if this stream was closed.
+         *
+         * @return true if this stream was closed.
+         */
+        public boolean isClosed() {
+            return closed.get();
+        }
+
+        /**
+         * Return the error that closed this stream.
+         *
+         * An unchecked exception thrown by the detector or the listener is the cause of the returned error.
+         *
+         * @return the error that closed this stream, or null.
+         */
+        public IOException getError() {
+            return error;
+        }
+
+        /**
+         * Return the number of audio buffers waiting to be decoded.
+         *
+         * @return the number of audio buffers waiting to be decoded.
+         */
+        public int queued() {
+            return queue.size();
+        }
+
+        /**
+         * Return the detector of this stream.
+         *
+         * @return the detector of this stream.
+         */
+        public SymbolDetector getDetector() {
+            return decoder.getDetector();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.sdsai.dsp;
+
+/**
+ * A small, fast, seeded pseudo random number generator.
+ *
+ * This is an xorshift64* generator. It is not thread safe and not suitable for
+ * cryptography, but it is much faster than {@link java.util.Random} and produces
+ * the same sequence for the same seed on every platform, which is what simulation
+ * and test corpus generation need.
+ */
+public final class FastRandom {
+
+    /**
+     * The generator state. This is never 0.
+     */
+    private long state;
+
+    /**
+     * A second gaussian value computed by {@link #nextGaussian()}.
+     */
+    private double nextGaussian;
+
+    /**
+     * True if {@link #nextGaussian} holds a value.
+     */
+    private boolean haveNextGaussian;
+
+    /**
+     * Constructor.
+     *
+     * @param seed The seed. Any value, including 0, is acceptable.
+     */
+    public FastRandom(final long seed) {
+        /* Scramble the seed so similar seeds give unrelated sequences. */
+        final long z = mix(seed);
+
+        this.state            = (z == 0) ? 0x9E3779B97F4A7C15L : z;
+        this.haveNextGaussian = false;
+    }
+
+    /**
+     * Scramble a value with one splitmix64 step.
+     *
+     * Values that differ in any bit give unrelated results, so this is also a good hash
+     * for building seeds from several numbers.
+     *
+     * @param value The value to scramble.
+     *
+     * @return the scrambled value.
+     */
+    public static long mix(final long value) {
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Return the next 64 random bits.
+     *
+     * @return the next 64 random bits.
+     */
+    public long nextLong() {
+        long x = state;
+        x ^= x >>> 12;
+        x ^= x << 25;
+        x ^= x >>> 27;
+        state = x;
+        return x * 0x2545F4914F6CDD1DL;
+    }
+
+    /**
+     * Return a random value in the range [0, 1).
+     *
+     * @return a random value in the range [0, 1).
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Return a random integer in the range [0, n).
+     *
+     * @param n The exclusive upper bound. This must be positive.
+     *
+     * @return a random integer in the range [0, n).
+     */
+    public int nextInt(final int n) {
+        return (int)((nextLong() >>> 33) * n >>> 31);
+    }
+
+    /**
+     * Return a normally distributed value with a mean of 0 and standard deviation of 1.
+     *
+     * @return a normally distributed value.
+     */
+    public double nextGaussian() {
+        if (haveNextGaussian) {
+            haveNextGaussian = false;
+            return nextGaussian;
+        }
+
+        /* Marsaglia polar method. */
+        double v1, v2, s;
+        do {
+            v1 = 2 * nextDouble() - 1;
+            v2 = 2 * nextDouble() - 1;
+            s  = v1 * v1 + v2 * v2;
+        } while (s >= 1 || s == 0);
+
+        final double multiplier = Math.sqrt(-2 * Math.log(s) / s);
+
+        nextGaussian     = v2 * multiplier;
+        haveNextGaussian = true;
+
+        return v1 * multiplier;
+    }
+}
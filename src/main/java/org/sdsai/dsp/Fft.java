@@ -0,0 +1,101 @@
+package org.sdsai.dsp;
+
+/**
+ * An in place, radix 2 fast Fourier transform of a fixed size.
+ *
+ * The twiddle factors and bit reversal permutation are computed once when the transform
+ * is built, so each {@link #transform(double[], double[])} allocates nothing and costs
+ * {@code N log2 N / 2} complex multiplications.
+ *
+ * Unlike {@link DspUtils#fft(short[], short[])} this works on doubles and so does not
+ * lose precision between passes.
+ */
+public final class Fft {
+
+    private final int size;
+
+    /**
+     * The cosine of each twiddle factor, {@code cos(2 pi k / size)} for {@code k < size / 2}.
+     */
+    private final double[] cos;
+
+    /**
+     * The sine of each twiddle factor, {@code -sin(2 pi k / size)} for {@code k < size / 2}.
+     */
+    private final double[] sin;
+
+    /**
+     * The bit reversed index of every index.
+     */
+    private final int[] reversed;
+
+    /**
+     * Constructor.
+     *
+     * @param size The number of points. This must be a power of two.
+     */
+    public Fft(final int size) {
+        if (size < 1 || (size & (size - 1)) != 0) {
+            throw new IllegalArgumentException("Size must be a power of two: "+size);
+        }
+
+        this.size     = size;
+        this.cos      = new double[size / 2];
+        this.sin      = new double[size / 2];
+        this.reversed = new int[size];
+
+        for (int k = 0; k < size / 2; ++k) {
+            cos[k] = Math.cos(2.0 * Math.PI * k / size);
+            sin[k] = -Math.sin(2.0 * Math.PI * k / size);
+        }
+
+        final int bits = Integer.numberOfTrailingZeros(size);
+        for (int i = 0; i < size; ++i) {
+            reversed[i] = (bits == 0) ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+    }
+
+    /**
+     * Replace a signal with its discrete Fourier transform.
+     *
+     * Bin {@code k} becomes {@code sum(x[n] e^(-2 pi i k n / size))}.
+     *
+     * @param re The real part of the signal. This must be {@link #getSize()} long.
+     * @param im The imaginary part of the signal. This must be {@link #getSize()} long.
+     */
+    public void transform(final double[] re, final double[] im) {
+        for (int i = 0; i < size; ++i) {
+            final int j = reversed[i];
+            if (i < j) {
+                final double tr = re[i]; re[i] = re[j]; re[j] = tr;
+                final double ti = im[i]; im[i] = im[j]; im[j] = ti;
+            }
+        }
+
+        for (int half = 1, step = size / 2; half < size; half <<= 1, step >>= 1) {
+            for (int start = 0; start < size; start += half << 1) {
+                for (int j = 0, k = 0; j < half; ++j, k += step) {
+                    final int a = start + j;
+                    final int b = a + half;
+
+                    final double tr = re[b] * cos[k] - im[b] * sin[k];
+                    final double ti = re[b] * sin[k] + im[b] * cos[k];
+
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the number of points.
+     *
+     * @return the number of points.
+     */
+    public int getSize() {
+        return size;
+    }
+}
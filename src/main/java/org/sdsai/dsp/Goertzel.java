@@ -7,17 +7,17 @@ package org.sdsai.dsp;
  */
 public final class Goertzel {
 
-    private final int k;
-    private final double omega;
-    private final double cos_omega;
-    private final double sin_omega;
-    private final double coefficient;
+    private int k;
+    private double omega;
+    private double cos_omega;
+    private double sin_omega;
+    private double coefficient;
 
     /**
      * The bin size, or the number of samples to process before
      * a result is returned.
      */
-    private final int N;
+    private int N;
 
     /**
      * Internally track the number of samples processed.
@@ -67,6 +67,43 @@ public final class Goertzel {
         reset();
     }
 
+    /**
+     * Copy another Goertzel, including any partially processed window.
+     *
+     * @param that The Goertzel to copy.
+     */
+    public Goertzel(final Goertzel that) {
+        this.N           = that.N;
+        this.k           = that.k;
+        this.omega       = that.omega;
+        this.cos_omega   = that.cos_omega;
+        this.sin_omega   = that.sin_omega;
+        this.coefficient = that.coefficient;
+        this.n           = that.n;
+        this.q0          = that.q0;
+        this.q1          = that.q1;
+        this.q2          = that.q2;
+    }
+
+    /**
+     * Take the frequency and bin size of another Goertzel and start a new bin.
+     *
+     * Only the settings of {@code that} are used, not any samples it has processed.
+     * Nothing is allocated, so this may be done between bins while decoding.
+     *
+     * @param that The Goertzel whose settings to use.
+     */
+    public void tune(final Goertzel that) {
+        this.N           = that.N;
+        this.k           = that.k;
+        this.omega       = that.omega;
+        this.cos_omega   = that.cos_omega;
+        this.sin_omega   = that.sin_omega;
+        this.coefficient = that.coefficient;
+
+        reset();
+    }
+
     /**
      * Internal routine that does the iteration work of the Goertzel Algorithm.
      *
@@ -172,6 +209,60 @@ public final class Goertzel {
         return n_left;
     }
 
+    /**
+     * Decode, filter and process 16 bit, big endian, signed audio in a single pass.
+     *
+     * This gives the same result as converting the bytes to samples, passing each through
+     * {@code filter} and then calling {@link #process(short[], int, int, Result)}, but it
+     * touches each sample only once. Processing stops at the end of a bin so the caller
+     * may act on each result.
+     *
+     * @param data The raw audio bytes. Any trailing odd byte is ignored.
+     * @param off The offset into {@code data} of the first sample.
+     * @param len The number of bytes available from {@code off}.
+     * @param filter The filter applied to each sample before it is processed.
+     * @param result The result object to populate if a bin is completed.
+     *
+     * @return The number of bytes consumed to yield a result or -1 if all the bytes were
+     *         consumed and more samples are still needed.
+     */
+    public final int processBigEndian(
+        final byte[] data,
+        final int off,
+        final int len,
+        final MovingAverageFilter filter,
+        final Result result
+    )
+    {
+        final int n_left  = N-n;
+        final int samples = len / 2;
+        final int todo    = (n_left > samples)? samples : n_left;
+        final int end     = off + todo * 2;
+
+        double q1 = this.q1;
+        double q2 = this.q2;
+
+        for (int i = off; i < end; i += 2) {
+            final short sample = filter.process((short)(((data[i] << 8) & 0xff00) | (data[i+1] & 0xff)));
+            final double q = coefficient * q1 - q2 + sample;
+            q2 = q1;
+            q1 = q;
+        }
+
+        this.q0 = q1;
+        this.q1 = q1;
+        this.q2 = q2;
+
+        if (todo < n_left) {
+            n += todo;
+            return -1;
+        }
+
+        setResult(result);
+        reset();
+        return todo * 2;
+    }
+
     /**
      * A class that holds the result of the signal computation.
      */
@@ -1,5 +1,7 @@
 package org.sdsai.dsp;
 
+import java.util.Arrays;
+
 /**
  * A filter based on the moving avarge of samples.
  */
@@ -10,6 +12,11 @@ public final class MovingAverageFilter {
      */
     private short samples[];
 
+    /**
+     * The number of {@link #samples} averaged. The array may be longer so the filter can be resized in place.
+     */
+    private int length;
+
     /**
      * The sum of the average before it is finally divided.
      */
@@ -27,6 +34,7 @@ public final class MovingAverageFilter {
      */
     public MovingAverageFilter(final int samples) {
         this.samples = new short[samples];
+        this.length = samples;
         this.partialResult = 0;
         this.current = 0;
     }
@@ -43,7 +51,52 @@ public final class MovingAverageFilter {
      * @param sampleRate The sample rate in samples per second.
      */
     public MovingAverageFilter(final double hz, final int sampleRate) {
-        this.samples = new short[(int)(Math.floor(sampleRate / hz / 2))];
+        this(length(hz, sampleRate));
+    }
+
+    /**
+     * Copy another filter, including the samples it is averaging.
+     *
+     * @param that The filter to copy.
+     */
+    public MovingAverageFilter(final MovingAverageFilter that) {
+        this.samples       = that.samples.clone();
+        this.length        = that.length;
+        this.partialResult = that.partialResult;
+        this.current       = that.current;
+    }
+
+    /**
+     * Return the number of samples a filter targeting a frequency averages.
+     * See {@link #MovingAverageFilter(double, int)}.
+     *
+     * @param hz The target frequncy.
+     * @param sampleRate The sample rate in samples per second.
+     *
+     * @return the number of samples averaged.
+     */
+    public static int length(final double hz, final int sampleRate) {
+        return (int)(Math.floor(sampleRate / hz / 2));
+    }
+
+    /**
+     * Change the number of samples averaged and clear the samples.
+     *
+     * Nothing is allocated unless the filter has never been this long.
+     *
+     * @param samples The number of samples to use for the moving average.
+     */
+    public void resize(final int samples) {
+        if (samples > this.samples.length) {
+            this.samples = new short[samples];
+        }
+        else {
+            Arrays.fill(this.samples, (short) 0);
+        }
+
+        this.length = samples;
+        this.partialResult = 0;
+        this.current = 0;
     }
 
     /**
@@ -60,11 +113,11 @@ public final class MovingAverageFilter {
 
         /* Move current. */
         ++current;
-        if (current >= samples.length) {
+        if (current >= length) {
             current = 0;
         }
 
         /* Return final result. */
-        return (short) (partialResult / (double)samples.length);
+        return (short) (partialResult / (double)length);
     }
 }
@@ -0,0 +1,512 @@
+package org.sdsai.dsp;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Generate several BPSK signals, on different carriers, mixed into a single audio stream.
+ *
+ * Each carrier has its own queue of symbols. When a carrier's queue is empty it sends
+ * idle phase reversals, as a PSK31 transmitter does between characters. All carriers share
+ * a sample rate, symbol rate and {@link PulseShape}, so they share one table of pulse
+ * envelopes, and every output sample is computed in a single pass that accumulates
+ * each carrier's envelope times its own phase accumulator.
+ *
+ * The amplitude of every carrier is scaled so that the mixed signal can not clip,
+ * however many carriers are added.
+ *
+ * This produces 16 bit, big endian, signed audio.
+ */
+public class MultiCarrierBpskGenerator {
+
+    /**
+     * The peak amplitude of the mixed signal.
+     */
+    private static final double AMPLITUDE = Short.MAX_VALUE * 0.8;
+
+    /**
+     * The most neighbor patterns for which envelopes are precomputed.
+     */
+    private static final int MAX_SHAPED_PATTERNS = 16;
+
+    /**
+     * The size of a single sample is currently always 2 bytes.
+     */
+    private static final int sampleSize = 16;
+
+    /**
+     * Symbols sent after every character.
+     */
+    private static final byte[] CHARACTER_SEPARATOR = {0, 0};
+
+    private final int sampleRate;
+    private final double symbolsPerSecond;
+    private final PulseShape pulseShape;
+
+    /**
+     * The number of audio samples generated for every symbol.
+     */
+    private final int symbolSamples;
+
+    /**
+     * The number of neighboring symbols, on each side, whose pulses overlap a symbol.
+     */
+    private final int neighbors;
+
+    /**
+     * The pulse of each overlapping symbol, sampled over the span of one symbol.
+     *
+     * Index {@code neighbors + d} holds the pulse of the symbol {@code d} places from the current one.
+     */
+    private final double[][] pulseSegments;
+
+    /**
+     * The envelope of a symbol for every pattern of neighbor phases, or null if there are too many.
+     *
+     * Bit {@code 2(m-1)} of a pattern is set if the symbol {@code m} places before has the opposite
+     * phase and bit {@code 2(m-1)+1} is set if the symbol {@code m} places after does.
+     */
+    private final double[][] patternEnvelopes;
+
+    /**
+     * The largest sum of overlapping pulses at any sample.
+     */
+    private final double pulsePeak;
+
+    /**
+     * The scale applied to every carrier so the mixed signal can not clip.
+     */
+    private double gain;
+
+    /**
+     * The number of carriers.
+     */
+    private int carriers;
+
+    /**
+     * The phase accumulator of each carrier. See {@link SineTable}.
+     */
+    private int[] phases;
+
+    /**
+     * The phase increment, per sample, of each carrier.
+     */
+    private int[] increments;
+
+    /**
+     * The frequency of each carrier.
+     */
+    private double[] frequencies;
+
+    /**
+     * The phase, +1 or -1, of each symbol overlapping the current one, for every carrier.
+     */
+    private double[][] windows;
+
+    /**
+     * The envelope of the current symbol of each carrier.
+     *
+     * This is an entry of {@link #patternEnvelopes} or, for long pulses, the carrier's own array.
+     */
+    private double[][] envelopes;
+
+    /**
+     * The phase, +1 or -1, of the current symbol of each carrier.
+     */
+    private double[] signs;
+
+    /**
+     * The symbols waiting to be sent on each carrier.
+     */
+    private SymbolQueue[] queues;
+
+    /**
+     * The sample of the current symbol that will be generated next.
+     */
+    private int symbolSample;
+
+    /**
+     * Constructor.
+     *
+     * @param sampleRate The audio sample rate.
+     * @param symbolsPerSecond How many symbols per second. For PSK31 this is {@link BpskGenerator#PSK31_SYMBOLS_PER_SECOND}.
+     */
+    public MultiCarrierBpskGenerator(final int sampleRate, final double symbolsPerSecond) {
+        this(sampleRate, symbolsPerSecond, PulseShape.PSK31);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sampleRate The audio sample rate.
+     * @param symbolsPerSecond How many symbols per second. For PSK31 this is {@link BpskGenerator#PSK31_SYMBOLS_PER_SECOND}.
+     * @param pulseShape The shape of the pulse carrying each symbol.
+     */
+    public MultiCarrierBpskGenerator(final int sampleRate, final double symbolsPerSecond, final PulseShape pulseShape) {
+        this.sampleRate       = sampleRate;
+        this.symbolsPerSecond = symbolsPerSecond;
+        this.pulseShape       = pulseShape;
+        this.symbolSamples    = (int)(sampleRate / symbolsPerSecond);
+        this.neighbors        = pulseShape.getSpan() / 2;
+        this.pulseSegments    = new double[2 * neighbors + 1][symbolSamples];
+        this.carriers         = 0;
+        this.phases           = new int[0];
+        this.increments       = new int[0];
+        this.frequencies      = new double[0];
+        this.windows          = new double[0][];
+        this.envelopes        = new double[0][];
+        this.signs            = new double[0];
+        this.queues           = new SymbolQueue[0];
+        this.symbolSample     = 0;
+
+        double peak = 1.0;
+        for (int i = 0; i < symbolSamples; ++i) {
+            /* Time, in symbols, relative to the center of the current symbol. */
+            final double t = i / (sampleRate / symbolsPerSecond) - 0.5;
+
+            double sum = 0;
+            for (int d = -neighbors; d <= neighbors; ++d) {
+                pulseSegments[neighbors + d][i] = pulseShape.amplitude(t - d);
+                sum += Math.abs(pulseSegments[neighbors + d][i]);
+            }
+            peak = Math.max(peak, sum);
+        }
+        this.pulsePeak = peak;
+
+        final int patterns = 1 << (2 * neighbors);
+        if (patterns <= MAX_SHAPED_PATTERNS) {
+            patternEnvelopes = new double[patterns][symbolSamples];
+
+            final double[] window = new double[2 * neighbors + 1];
+            for (int pattern = 0; pattern < patterns; ++pattern) {
+                window[neighbors] = 1.0;
+                for (int m = 1; m <= neighbors; ++m) {
+                    window[neighbors - m] = ((pattern >>> (2 * (m - 1))) & 1) == 0 ? 1.0 : -1.0;
+                    window[neighbors + m] = ((pattern >>> (2 * (m - 1) + 1)) & 1) == 0 ? 1.0 : -1.0;
+                }
+                sumPulses(window, 1.0, patternEnvelopes[pattern]);
+            }
+        }
+        else {
+            patternEnvelopes = null;
+        }
+    }
+
+    /**
+     * Add a carrier.
+     *
+     * The carrier starts sending idle phase reversals immediately.
+     * Adding a carrier lowers the amplitude of every carrier.
+     *
+     * @param hz The frequency of the carrier.
+     *
+     * @return The number of the new carrier, used to queue symbols on it.
+     */
+    public int addCarrier(final double hz) {
+        final int c = carriers++;
+
+        phases      = Arrays.copyOf(phases, carriers);
+        increments  = Arrays.copyOf(increments, carriers);
+        frequencies = Arrays.copyOf(frequencies, carriers);
+        windows     = Arrays.copyOf(windows, carriers);
+        envelopes   = Arrays.copyOf(envelopes, carriers);
+        signs       = Arrays.copyOf(signs, carriers);
+        queues      = Arrays.copyOf(queues, carriers);
+
+        increments[c]  = SineTable.phaseIncrement(hz, sampleRate);
+        frequencies[c] = hz;
+        queues[c]      = new SymbolQueue();
+
+        /* Start as if the carrier had always been idle. */
+        windows[c] = new double[2 * neighbors + 1];
+        for (int j = 0; j < windows[c].length; ++j) {
+            windows[c][j] = (j % 2 == 0) ? 1.0 : -1.0;
+        }
+        if (patternEnvelopes == null) {
+            envelopes[c] = new double[symbolSamples];
+        }
+        updateEnvelope(c);
+
+        gain = AMPLITUDE / (pulsePeak * carriers);
+
+        return c;
+    }
+
+    /**
+     * Queue symbols to be sent on a carrier.
+     *
+     * @param carrier The carrier number returned by {@link #addCarrier(double)}.
+     * @param symbols An array of 1s and 0s.
+     * @param off The offset into symbols to start at.
+     * @param len The number of symbols to queue.
+     *
+     * @throws IOException if any symbol is not a 1 or 0.
+     */
+    public void queueSymbols(final int carrier, final byte[] symbols, final int off, final int len) throws IOException {
+        for (int sym_i = 0; sym_i < len; ++sym_i) {
+            if (symbols[off+sym_i] != 0 && symbols[off+sym_i] != 1) {
+                throw new IOException("Symbol at index "+sym_i+" was not a 1 or 0.");
+            }
+        }
+
+        queues[carrier].add(symbols, off, len);
+    }
+
+    /**
+     * Queue characters, encoded with {@link BpskOutputStream#CHARSET}, to be sent on a carrier.
+     *
+     * @param carrier The carrier number returned by {@link #addCarrier(double)}.
+     * @param data The characters to send.
+     * @param off The offset into data to start at.
+     * @param len The number of characters to queue.
+     */
+    public void queueCharacters(final int carrier, final byte[] data, final int off, final int len) {
+        final SymbolQueue queue = queues[carrier];
+
+        for (int i = off; i < off + len; ++i) {
+            byte[] code = BpskOutputStream.CHARSET[data[i] & 0xff];
+            if (code == null) {
+                code = BpskOutputStream.CHARSET[0];
+            }
+
+            queue.add(code, 0, code.length);
+            queue.add(CHARACTER_SEPARATOR, 0, CHARACTER_SEPARATOR.length);
+        }
+    }
+
+    /**
+     * Return the number of symbols queued on a carrier that have not yet been sent.
+     *
+     * Symbols become part of the signal up to half a pulse span before they are centered,
+     * so they leave the queue slightly before they are heard.
+     *
+     * @param carrier The carrier number returned by {@link #addCarrier(double)}.
+     *
+     * @return the number of symbols queued on a carrier.
+     */
+    public int getQueuedSymbols(final int carrier) {
+        return queues[carrier].size();
+    }
+
+    /**
+     * Generate mixed audio into a caller owned buffer.
+     *
+     * @param out The buffer to write 16 bit, big endian audio into.
+     * @param off The offset into out to start writing at.
+     * @param len The number of bytes to write. A trailing odd byte is not written.
+     *
+     * @return The number of bytes written.
+     */
+    public int generate(final byte[] out, final int off, final int len) {
+        final int end = off + (len & ~1);
+
+        for (int i = off; i < end; i += 2) {
+            final short sample = nextSample();
+
+            out[i]   = (byte) ((sample >>> 8) & 0xff);
+            out[i+1] = (byte) ((sample) & 0xff);
+        }
+
+        return end - off;
+    }
+
+    /**
+     * Generate mixed audio into a caller owned buffer.
+     *
+     * @param out The buffer to write 16 bit, big endian audio into, starting at its position.
+     * @param len The number of bytes to write. A trailing odd byte is not written.
+     *
+     * @return The number of bytes written.
+     *
+     * @throws BufferOverflowException if out has fewer than {@code len} bytes remaining.
+     */
+    public int generate(final ByteBuffer out, final int len) {
+        if (out.remaining() < len) {
+            throw new BufferOverflowException();
+        }
+
+        final int samples = len / 2;
+        for (int i = 0; i < samples; ++i) {
+            final short sample = nextSample();
+
+            out.put((byte) ((sample >>> 8) & 0xff));
+            out.put((byte) ((sample) & 0xff));
+        }
+
+        return samples * 2;
+    }
+
+    /**
+     * Compute the next mixed sample and advance every carrier.
+     */
+    private short nextSample() {
+        final int i = symbolSample;
+
+        double sum = 0;
+        for (int c = 0; c < carriers; ++c) {
+            sum += signs[c] * envelopes[c][i] * SineTable.sin(phases[c]);
+            phases[c] += increments[c];
+        }
+
+        if (++symbolSample == symbolSamples) {
+            symbolSample = 0;
+            for (int c = 0; c < carriers; ++c) {
+                nextSymbol(c);
+            }
+        }
+
+        return (short) (gain * sum);
+    }
+
+    /**
+     * Move a carrier to its next symbol, taking a symbol from its queue or sending an idle reversal.
+     */
+    private void nextSymbol(final int c) {
+        final double[] window = windows[c];
+        final int      last   = window.length - 1;
+
+        System.arraycopy(window, 1, window, 0, last);
+
+        final int symbol = queues[c].isEmpty() ? 0 : queues[c].remove();
+        window[last] = (symbol == 0) ? -window[last - 1] : window[last - 1];
+
+        updateEnvelope(c);
+    }
+
+    /**
+     * Set the envelope and sign of the current symbol of a carrier from its window of phases.
+     */
+    private void updateEnvelope(final int c) {
+        final double[] window = windows[c];
+        final double   center = window[neighbors];
+
+        signs[c] = center;
+
+        if (patternEnvelopes != null) {
+            int pattern = 0;
+            for (int m = 1; m <= neighbors; ++m) {
+                if (window[neighbors - m] != center) {
+                    pattern |= 1 << (2 * (m - 1));
+                }
+                if (window[neighbors + m] != center) {
+                    pattern |= 1 << (2 * (m - 1) + 1);
+                }
+            }
+            envelopes[c] = patternEnvelopes[pattern];
+        }
+        else {
+            sumPulses(window, center, envelopes[c]);
+        }
+    }
+
+    /**
+     * Sum the pulses of a window of symbol phases, relative to {@code center}, into an envelope.
+     */
+    private void sumPulses(final double[] window, final double center, final double[] envelope) {
+        for (int i = 0; i < symbolSamples; ++i) {
+            double sum = 0;
+            for (int j = 0; j < window.length; ++j) {
+                sum += window[j] * center * pulseSegments[j][i];
+            }
+            envelope[i] = sum;
+        }
+    }
+
+    /**
+     * Return the number of carriers.
+     *
+     * @return the number of carriers.
+     */
+    public int getCarriers() {
+        return carriers;
+    }
+
+    /**
+     * Return the frequency of a carrier.
+     *
+     * @param carrier The carrier number returned by {@link #addCarrier(double)}.
+     *
+     * @return the frequency of a carrier.
+     */
+    public double getFrequency(final int carrier) {
+        return frequencies[carrier];
+    }
+
+    /**
+     * Return the number of PSK symbols per second.
+     *
+     * @return the number of PSK symbols per second.
+     */
+    public double getSymbolRate() {
+        return symbolsPerSecond;
+    }
+
+    /**
+     * Return the shape of the pulse carrying each symbol.
+     *
+     * @return the shape of the pulse carrying each symbol.
+     */
+    public PulseShape getPulseShape() {
+        return pulseShape;
+    }
+
+    /**
+     * Return the sample rate.
+     *
+     * @return The sample rate.
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Return the audio format this class generates.
+     *
+     * @return the audio format this class generates.
+     */
+    public AudioFormat getAudioFormat() {
+        return new AudioFormat(sampleRate, sampleSize, 1, true, true);
+    }
+
+    /**
+     * A growable first in, first out queue of symbols.
+     */
+    private static final class SymbolQueue {
+        private byte[] symbols = new byte[64];
+        private int head = 0;
+        private int tail = 0;
+
+        void add(final byte[] b, final int off, final int len) {
+            if (tail + len > symbols.length) {
+                final int size = tail - head;
+                if (size + len > symbols.length) {
+                    symbols = Arrays.copyOfRange(symbols, head, head + Math.max(2 * symbols.length, size + len));
+                }
+                else {
+                    System.arraycopy(symbols, head, symbols, 0, size);
+                }
+                head = 0;
+                tail = size;
+            }
+
+            System.arraycopy(b, off, symbols, tail, len);
+            tail += len;
+        }
+
+        byte remove() {
+            return symbols[head++];
+        }
+
+        boolean isEmpty() {
+            return head == tail;
+        }
+
+        int size() {
+            return tail - head;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package org.sdsai.dsp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Decode a long recording on many threads at once.
+ *
+ * The audio is cut into chunks that are decoded independently. Each chunk's detector is
+ * restored from a {@link BpskDetector.Snapshot} of a prototype, so every chunk starts with the
+ * same tuning and settings, and its {@link VaricodeDecoder} from the prototype's state.
+ * A chunk starts decoding an overlap before its own audio, so its detector and Varicode have
+ * found the signal by the time its audio begins, and continues an overlap past its end.
+ *
+ * Where two chunks overlap both decode the same characters. The output is cut at the end of
+ * the first character the earlier chunk completes in the overlap. The earlier chunk gives the
+ * characters up to and including it and the later chunk those after it.
+ *
+ * Chunks are decoded on an {@link ExecutorService}, such as a {@code ForkJoinPool} on Java 7 and later.
+ */
+public class ParallelFileDecoder {
+
+    /**
+     * How far apart, in symbols, the two chunks' copies of the same character may be found.
+     * Every Varicode character, with its {@code 00}, is at least three symbols long,
+     * so this is less than the distance to the next character.
+     */
+    private static final double SAME_CHARACTER_SYMBOLS = 2;
+
+    private final ExecutorService executor;
+
+    private final BpskDetector.Snapshot detector;
+
+    private final int varicode;
+
+    private final int sampleRate;
+
+    private final double symbolsPerSecond;
+
+    /**
+     * The number of samples of audio that belong to each chunk.
+     */
+    private int chunkSamples;
+
+    /**
+     * The number of samples decoded before and after each chunk.
+     */
+    private int overlapSamples;
+
+    /**
+     * The number of samples given to a detector at a time. This is how precisely the
+     * position of each character is known.
+     */
+    private final int pieceSamples;
+
+    /**
+     * Constructor.
+     *
+     * @param executor The executor that chunks are decoded on. This is not shut down by this class.
+     * @param prototype The detector each chunk starts as. It is not used to decode.
+     * @param varicode The state each chunk's Varicode decoder starts in, from {@link VaricodeDecoder#snapshot()}.
+     */
+    public ParallelFileDecoder(final ExecutorService executor, final BpskDetector prototype, final int varicode) {
+        this.executor         = executor;
+        this.detector         = prototype.snapshot();
+        this.varicode         = varicode;
+        this.sampleRate       = prototype.getSampleRate();
+        this.symbolsPerSecond = prototype.getSymbolRate();
+        this.pieceSamples     = Math.max(1, (int) (sampleRate / symbolsPerSecond / 2));
+
+        /* Check the state now rather than in every chunk. */
+        new VaricodeDecoder().restore(varicode);
+
+        setChunking(60, 2);
+    }
+
+    /**
+     * Constructor that starts every chunk with a new Varicode decoder.
+     *
+     * @param executor The executor that chunks are decoded on. This is not shut down by this class.
+     * @param prototype The detector each chunk starts as. It is not used to decode.
+     */
+    public ParallelFileDecoder(final ExecutorService executor, final BpskDetector prototype) {
+        this(executor, prototype, new VaricodeDecoder().snapshot());
+    }
+
+    /**
+     * Set how the audio is cut into chunks.
+     *
+     * @param chunkSeconds The seconds of audio in each chunk. The default is 60.
+     * @param overlapSeconds The seconds decoded before and after each chunk. The default is 2.
+     *        This must be long enough for a detector to find the signal and a character to complete.
+     */
+    public void setChunking(final double chunkSeconds, final double overlapSeconds) {
+        final int chunk   = (int) (chunkSeconds * sampleRate);
+        final int overlap = (int) (overlapSeconds * sampleRate);
+
+        if (overlap < 4 * sampleRate / symbolsPerSecond || chunk <= overlap) {
+            throw new IllegalArgumentException(
+                "Chunks of "+chunkSeconds+" s must be longer than an overlap of "+overlapSeconds+
+                " s, which must be at least four symbols.");
+        }
+
+        this.chunkSamples   = chunk;
+        this.overlapSamples = overlap;
+    }
+
+    /**
+     * The characters one chunk decoded and the sample at which each was completed.
+     */
+    private static final class Chunk implements SymbolSink {
+        private final VaricodeDecoder decoder = new VaricodeDecoder();
+        private final StringBuilder characters = new StringBuilder();
+        private long[] positions = new long[64];
+
+        /**
+         * The sample at the end of the audio given to the detector so far.
+         */
+        private long position;
+
+        @Override
+        public void putSymbol(final int symbol) throws IOException {
+            if (symbol != 0 && symbol != 1) {
+                throw new IOException("Symbol "+symbol+" was not a 1 or 0.");
+            }
+
+            final int c = decoder.decode(symbol);
+            if (c != VaricodeDecoder.NO_CHARACTER) {
+                if (characters.length() == positions.length) {
+                    positions = Arrays.copyOf(positions, 2 * positions.length);
+                }
+
+                positions[characters.length()] = position;
+                characters.append((char) c);
+            }
+        }
+
+        @Override
+        public void putSymbols(final long symbols, final int count) throws IOException {
+            for (int i = 0; i < count; ++i) {
+                putSymbol((int) (symbols >>> i) & 1);
+            }
+        }
+    }
+
+    /**
+     * Decode one chunk of audio.
+     */
+    private Chunk decodeChunk(final byte[] audio, final long firstSample, final long endSample) throws IOException {
+        final BpskDetector psk = new BpskDetector(detector.getFrequency(), sampleRate, symbolsPerSecond);
+        psk.restore(detector);
+
+        final Chunk chunk = new Chunk();
+        chunk.decoder.restore(varicode);
+
+        for (long sample = firstSample; sample < endSample; sample += pieceSamples) {
+            final int count = (int) Math.min(pieceSamples, endSample - sample);
+
+            chunk.position = sample + count;
+            psk.detectSignal(audio, (int) (2 * sample), 2 * count, chunk);
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Decode audio.
+     *
+     * @param audio 16 bit, big endian, signed audio at the prototype's sample rate.
+     *
+     * @return The decoded text.
+     *
+     * @throws IOException on errors decoding or if interrupted.
+     */
+    public String decode(final byte[] audio) throws IOException {
+        final long samples = audio.length / 2;
+        final int chunks   = (int) Math.max(1, (samples + chunkSamples - 1) / chunkSamples);
+
+        final List<Future<Chunk>> futures = new ArrayList<Future<Chunk>>(chunks);
+        final List<Chunk> decoded = new ArrayList<Chunk>(chunks);
+
+        try {
+            for (int i = 0; i < chunks; ++i) {
+                final long first = Math.max(0, (long) i * chunkSamples - overlapSamples);
+                final long end   = Math.min(samples, (long) (i + 1) * chunkSamples + overlapSamples);
+
+                futures.add(executor.submit(new Callable<Chunk>() {
+                    @Override
+                    public Chunk call() throws IOException {
+                        return decodeChunk(audio, first, end);
+                    }
+                }));
+            }
+
+            for (final Future<Chunk> future : futures) {
+                decoded.add(future.get());
+            }
+        }
+        catch (final InterruptedException e) {
+            for (final Future<Chunk> future : futures) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decoding.", e);
+        }
+        catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to decode chunk.", e.getCause());
+        }
+
+        return stitch(decoded);
+    }
+
+    /**
+     * Join the characters of each chunk, cutting each overlap at a character boundary.
+     */
+    private String stitch(final List<Chunk> decoded) {
+        final StringBuilder text   = new StringBuilder();
+        final long          same   = (long) (SAME_CHARACTER_SYMBOLS * sampleRate / symbolsPerSecond);
+        long                after  = -1;
+
+        for (int i = 0; i < decoded.size(); ++i) {
+            final Chunk chunk = decoded.get(i);
+            final long  start = (long) (i + 1) * chunkSamples;
+
+            /* Find the first character this chunk completes in the overlap with the next. */
+            long cut  = Long.MAX_VALUE;
+            long next = Long.MAX_VALUE;
+            if (i + 1 < decoded.size()) {
+                cut  = start + overlapSamples;
+                next = cut;
+                for (int c = 0; c < chunk.characters.length(); ++c) {
+                    if (chunk.positions[c] >= start && chunk.positions[c] < start + overlapSamples) {
+                        cut  = chunk.positions[c];
+                        next = cut + same;
+                        break;
+                    }
+                }
+            }
+
+            for (int c = 0; c < chunk.characters.length(); ++c) {
+                if (chunk.positions[c] > after && chunk.positions[c] <= cut) {
+                    text.append(chunk.characters.charAt(c));
+                }
+            }
+
+            after = next;
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * Decode an audio file.
+     *
+     * The whole file is read into memory, converted to the prototype's sample rate if needed.
+     *
+     * @param file The file to decode.
+     *
+     * @return The decoded text.
+     *
+     * @throws IOException on errors reading or decoding.
+     * @throws UnsupportedAudioFileException if the file is not audio that can be read.
+     */
+    public String decode(final File file) throws IOException, UnsupportedAudioFileException {
+        final AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(
+            new AudioFormat(sampleRate, 16, 1, true, true),
+            AudioSystem.getAudioInputStream(file));
+
+        try {
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[64 * 1024];
+
+            for (int read = audioInputStream.read(buffer); read != -1; read = audioInputStream.read(buffer)) {
+                bos.write(buffer, 0, read);
+            }
+
+            return decode(bos.toByteArray());
+        }
+        finally {
+            audioInputStream.close();
+        }
+    }
+
+    /**
+     * Decode a file from the command line and print the text.
+     *
+     * @param args The file, the carrier frequency, and optionally the sample rate and number of threads.
+     *
+     * @throws Exception on errors.
+     */
+    public static void main(final String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: ParallelFileDecoder <file> <hz> [sampleRate] [threads]");
+            return;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(
+            (args.length > 3) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors());
+
+        try {
+            final ParallelFileDecoder decoder = new ParallelFileDecoder(
+                executor,
+                new BpskDetector(
+                    Double.parseDouble(args[1]),
+                    (args.length > 2) ? Integer.parseInt(args[2]) : BpskGenerator.DEFAULT_SAMPLE_RATE,
+                    BpskGenerator.PSK31_SYMBOLS_PER_SECOND));
+
+            System.out.println(decoder.decode(new File(args[0])));
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,465 @@
+package org.sdsai.dsp;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Find and decode every PSK signal in a band of audio at once.
+ *
+ * A polyphase filter bank splits the audio into {@code channels} equally spaced channels
+ * with a single {@link Fft} every {@code channels / 4} samples. Each channel is a complex,
+ * baseband signal at four times the channel spacing. The cost per sample is a short filter
+ * per branch and one FFT, so it grows with {@code N log N} in the number of channels instead
+ * of with one full rate {@link BpskDetector} per carrier.
+ *
+ * The power of every channel in the band is tracked. A channel whose power stands above the
+ * noise, taken as the lower quartile of the band, and above its neighbors, is given a {@link BasebandBpskDemodulator} and
+ * its characters are passed to the {@link Listener}. When the signal fades the channel is released.
+ * Channels overlap, so a signal between two channels is decoded once, on the stronger one.
+ *
+ * At 8000 samples per second 128 channels are 62.5 Hz apart and give each demodulator
+ * 8 samples per PSK31 symbol.
+ *
+ * Audio is 16 bit, big endian, signed samples. This class is not thread safe.
+ */
+public class PskChannelizer {
+
+    /**
+     * Receives characters from every active channel.
+     */
+    public interface Listener {
+
+        /**
+         * Called with every decoded character.
+         *
+         * @param channelizer The channelizer that decoded the character.
+         * @param channel The channel the character was decoded on.
+         * @param c The character, from 0 to 255.
+         */
+        void character(PskChannelizer channelizer, int channel, int c);
+    }
+
+    /**
+     * The number of filter taps in each polyphase branch.
+     */
+    private static final int TAPS_PER_BRANCH = 6;
+
+    /**
+     * The cutoff of the prototype filter as a fraction of the channel spacing.
+     *
+     * Channels overlap so a signal between two channel centers is not lost.
+     */
+    private static final double CUTOFF = 1.25;
+
+    /**
+     * The number of channel samples between scans for new and lost signals.
+     */
+    private static final int SCAN_INTERVAL = 32;
+
+    /**
+     * One channel of the filter bank.
+     */
+    private class Channel implements SymbolSink {
+
+        private final int number;
+
+        private final BasebandBpskDemodulator demodulator;
+
+        private final VaricodeDecoder varicode;
+
+        /**
+         * The running average power of the channel.
+         */
+        private double power;
+
+        private boolean active;
+
+        private Channel(final int number) {
+            this.number      = number;
+            this.demodulator = new BasebandBpskDemodulator(channelRate, symbolsPerSecond);
+            this.varicode    = new VaricodeDecoder();
+            this.power       = 0;
+            this.active      = false;
+        }
+
+        @Override
+        public void putSymbol(final int symbol) throws IOException {
+            final int c = varicode.decode(symbol);
+
+            if (c != VaricodeDecoder.NO_CHARACTER && listener != null) {
+                listener.character(PskChannelizer.this, number, c);
+            }
+        }
+
+        @Override
+        public void putSymbols(final long symbols, final int count) throws IOException {
+            for (int i = 0; i < count; ++i) {
+                putSymbol((int) (symbols >>> i) & 1);
+            }
+        }
+    }
+
+    private final int sampleRate;
+
+    private final double symbolsPerSecond;
+
+    /**
+     * The number of channels, and the size of the FFT.
+     */
+    private final int channels;
+
+    /**
+     * The number of audio samples per channel sample.
+     */
+    private final int decimation;
+
+    /**
+     * The sample rate of every channel.
+     */
+    private final double channelRate;
+
+    /**
+     * The prototype low pass filter, {@link #TAPS_PER_BRANCH} times {@link #channels} long.
+     */
+    private final double[] filter;
+
+    /**
+     * The last {@code filter.length} audio samples, stored twice so they can be read without wrapping.
+     */
+    private final double[] history;
+
+    /**
+     * Where in {@link #history} the next sample goes.
+     */
+    private int historyPosition;
+
+    /**
+     * The number of audio samples since the last channel sample.
+     */
+    private int sinceOutput;
+
+    /**
+     * The number of channel samples produced, modulo 4.
+     */
+    private int outputs;
+
+    private final Fft fft;
+    private final double[] fftRe;
+    private final double[] fftIm;
+
+    /**
+     * Channels 0 through {@code channels / 2}. The others mirror these for real audio.
+     */
+    private final Channel[] bank;
+
+    /**
+     * Scratch space for finding the noise power of the band.
+     */
+    private final double[] sortedPower;
+
+    /**
+     * The first and last channels searched for signals.
+     */
+    private int firstChannel;
+    private int lastChannel;
+
+    /**
+     * How many times the noise power a channel must have to be decoded.
+     */
+    private double threshold;
+
+    /**
+     * The weight of a new sample in the average power of each channel.
+     */
+    private final double powerWeight;
+
+    /**
+     * The number of channel samples until the next scan for signals.
+     */
+    private int untilScan;
+
+    private Listener listener;
+
+    /**
+     * Constructor for PSK31 in 62.5 Hz channels at 8000 samples per second.
+     */
+    public PskChannelizer() {
+        this(8000, BpskGenerator.PSK31_SYMBOLS_PER_SECOND, 128);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sampleRate The audio sample rate.
+     * @param symbolsPerSecond How many symbols per second, such as {@link BpskGenerator#PSK31_SYMBOLS_PER_SECOND}.
+     * @param channels The number of channels across the whole spectrum, from 0 Hz to the sample rate.
+     *        This must be a power of two, and {@code 4 * sampleRate / channels} must be at least
+     *        four times the symbol rate.
+     */
+    public PskChannelizer(final int sampleRate, final double symbolsPerSecond, final int channels) {
+        if (channels < 8 || (channels & (channels - 1)) != 0) {
+            throw new IllegalArgumentException("Channels must be a power of two, at least 8: "+channels);
+        }
+
+        this.sampleRate       = sampleRate;
+        this.symbolsPerSecond = symbolsPerSecond;
+        this.channels         = channels;
+        this.decimation       = channels / 4;
+        this.channelRate      = (double) sampleRate / decimation;
+        this.filter           = new double[TAPS_PER_BRANCH * channels];
+        this.history          = new double[2 * filter.length];
+        this.historyPosition  = 0;
+        this.sinceOutput      = 0;
+        this.outputs          = 0;
+        this.fft              = new Fft(channels);
+        this.fftRe            = new double[channels];
+        this.fftIm            = new double[channels];
+        this.bank             = new Channel[channels / 2 + 1];
+        this.sortedPower      = new double[bank.length];
+        this.threshold        = Math.pow(10, 6 / 10.0);
+        this.powerWeight      = 4.0 / channelRate;
+        this.untilScan        = SCAN_INTERVAL;
+        this.listener         = null;
+
+        /* A windowed sinc with its cutoff at CUTOFF times the channel spacing. */
+        final double cutoff = CUTOFF / channels;
+        final double middle = (filter.length - 1) / 2.0;
+        for (int j = 0; j < filter.length; ++j) {
+            final double t      = j - middle;
+            final double sinc   = (t == 0) ? 2.0 * cutoff : Math.sin(2.0 * Math.PI * cutoff * t) / (Math.PI * t);
+            final double window = 0.42
+                - 0.5  * Math.cos(2.0 * Math.PI * j / (filter.length - 1))
+                + 0.08 * Math.cos(4.0 * Math.PI * j / (filter.length - 1));
+
+            filter[j] = sinc * window;
+        }
+
+        for (int k = 0; k < bank.length; ++k) {
+            bank[k] = new Channel(k);
+        }
+
+        setBand(getChannelSpacing(), sampleRate / 2.0 - getChannelSpacing());
+    }
+
+    /**
+     * Set the listener that receives decoded characters.
+     *
+     * @param listener The listener.
+     */
+    public void setListener(final Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Limit the search for signals to a band. Channels outside it are released.
+     *
+     * @param lowHz The lowest frequency to search.
+     * @param highHz The highest frequency to search.
+     */
+    public void setBand(final double lowHz, final double highHz) {
+        firstChannel = Math.max(1, (int) Math.ceil(lowHz / getChannelSpacing()));
+        lastChannel  = Math.min(bank.length - 2, (int) Math.floor(highHz / getChannelSpacing()));
+
+        if (firstChannel > lastChannel) {
+            throw new IllegalArgumentException("No channels between "+lowHz+" and "+highHz+" Hz.");
+        }
+
+        for (int k = 0; k < bank.length; ++k) {
+            if (k < firstChannel || k > lastChannel) {
+                bank[k].active = false;
+            }
+        }
+    }
+
+    /**
+     * Set how far above the noise power of the band a channel must be to be decoded.
+     *
+     * @param db The threshold in decibels. The default is 6.
+     */
+    public void setThreshold(final double db) {
+        this.threshold = Math.pow(10, db / 10.0);
+    }
+
+    /**
+     * Split audio into channels and decode every active channel.
+     *
+     * @param data Raw audio data.
+     * @param off The offset into the buffer to operate on.
+     * @param len The length of data to operate on. A trailing odd byte is ignored.
+     *
+     * @throws IOException on errors from the listener.
+     */
+    public void detectSignal(final byte[] data, final int off, final int len) throws IOException {
+        final int end   = off + (len & ~1);
+        final int taps  = filter.length;
+
+        for (int i = off; i < end; i += 2) {
+            final double sample = (short) (((data[i] << 8) & 0xff00) | (data[i+1] & 0xff));
+
+            history[historyPosition]        = sample;
+            history[historyPosition + taps] = sample;
+
+            if (++sinceOutput == decimation) {
+                sinceOutput = 0;
+                channelize();
+            }
+
+            if (++historyPosition == taps) {
+                historyPosition = 0;
+            }
+        }
+    }
+
+    /**
+     * Compute one sample of every channel and pass the active ones to their demodulators.
+     */
+    private void channelize() throws IOException {
+        final int taps   = filter.length;
+        final int newest = historyPosition + taps;
+
+        /* Sum each polyphase branch. Branch r holds the taps r, r + channels, r + 2 channels, ... */
+        for (int r = 0; r < channels; ++r) {
+            double sum = 0;
+            for (int j = r; j < taps; j += channels) {
+                sum += filter[j] * history[newest - j];
+            }
+            fftRe[r] = sum;
+            fftIm[r] = 0;
+        }
+
+        fft.transform(fftRe, fftIm);
+
+        /* Channel k is the conjugate of bin k, turned by -90 degrees k times per channel sample. */
+        for (int k = firstChannel; k <= lastChannel; ++k) {
+            final double a = fftRe[k];
+            final double b = fftIm[k];
+
+            final double i;
+            final double q;
+            switch ((k * outputs) & 3) {
+                case 0:  i =  a; q = -b; break;
+                case 1:  i = -b; q = -a; break;
+                case 2:  i = -a; q =  b; break;
+                default: i =  b; q =  a; break;
+            }
+
+            final Channel channel = bank[k];
+
+            channel.power += powerWeight * ((i * i + q * q) - channel.power);
+
+            if (channel.active) {
+                channel.demodulator.process(i, q, channel);
+            }
+        }
+
+        outputs = (outputs + 1) & 3;
+
+        if (--untilScan == 0) {
+            untilScan = SCAN_INTERVAL;
+            scan();
+        }
+    }
+
+    /**
+     * Activate channels where signals have appeared and release those where they have gone.
+     */
+    private void scan() {
+        final int count = lastChannel - firstChannel + 1;
+        for (int k = firstChannel; k <= lastChannel; ++k) {
+            sortedPower[k - firstChannel] = bank[k].power;
+        }
+        Arrays.sort(sortedPower, 0, count);
+
+        /* The lower quartile is noise even when signals fill half the band. */
+        final double noise = sortedPower[count / 4];
+        final double on    = noise * threshold;
+        final double off   = on / 2;
+
+        for (int k = firstChannel; k <= lastChannel; ++k) {
+            final Channel channel = bank[k];
+            final double  below   = bank[k - 1].power;
+            final double  above   = bank[k + 1].power;
+
+            if (channel.active) {
+                /* Release a faded signal, or one that has drifted to a neighbor. */
+                if (channel.power < off || below > 2 * channel.power || above > 2 * channel.power) {
+                    channel.active = false;
+                }
+            }
+            else if (channel.power > on
+                && channel.power >= below
+                && channel.power > above
+                && !bank[k - 1].active
+                && !bank[k + 1].active)
+            {
+                /* Guess where in the channel the carrier is from the power of the neighbors. */
+                final double curve  = 2 * channel.power - below - above;
+                final double offset = (curve > 0) ? 0.5 * (above - below) / curve : 0;
+
+                channel.demodulator.reset(Math.max(-0.5, Math.min(0.5, offset)) * getChannelSpacing());
+                channel.varicode.reset();
+                channel.active = true;
+            }
+        }
+    }
+
+    /**
+     * Return true if a channel is being decoded.
+     *
+     * @param channel The channel.
+     *
+     * @return true if a channel is being decoded.
+     */
+    public boolean isActive(final int channel) {
+        return bank[channel].active;
+    }
+
+    /**
+     * Return the center frequency of a channel.
+     *
+     * @param channel The channel.
+     *
+     * @return the center frequency of a channel.
+     */
+    public double getChannelFrequency(final int channel) {
+        return channel * getChannelSpacing();
+    }
+
+    /**
+     * Return the carrier frequency of the signal on a channel, as tracked by its demodulator.
+     *
+     * @param channel The channel.
+     *
+     * @return the carrier frequency of the signal on a channel.
+     */
+    public double getCarrierFrequency(final int channel) {
+        return getChannelFrequency(channel) + bank[channel].demodulator.getFrequencyOffset();
+    }
+
+    /**
+     * Return the frequency between the centers of neighboring channels.
+     *
+     * @return the frequency between the centers of neighboring channels.
+     */
+    public double getChannelSpacing() {
+        return (double) sampleRate / channels;
+    }
+
+    /**
+     * Return the number of channels from 0 Hz to half the sample rate, inclusive.
+     *
+     * @return the number of channels from 0 Hz to half the sample rate.
+     */
+    public int getChannels() {
+        return bank.length;
+    }
+
+    /**
+     * Return the sample rate.
+     *
+     * @return The sample rate.
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+}
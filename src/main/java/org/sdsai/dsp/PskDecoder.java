@@ -0,0 +1,250 @@
+package org.sdsai.dsp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A push style PSK decoder.
+ *
+ * Where {@link BpskInputStream} pulls audio from a stream and blocks until characters
+ * are decoded, this class is handed audio as it arrives, such as from a NIO channel or
+ * a radio's callback, and never blocks. Decoded characters are either passed to a
+ * {@link Listener} or copied into a caller's buffer. One thread may drive any number
+ * of decoders.
+ *
+ * Audio is 16 bit, big endian, signed samples, as for the {@link SymbolDetector} given.
+ * A buffer need not end on a whole frame. A trailing partial frame is kept for the next call.
+ *
+ * This class is not thread safe. Each decoder must be fed by one thread at a time.
+ */
+public class PskDecoder {
+
+    /**
+     * Receives characters from {@link PskDecoder#feed(ByteBuffer)}.
+     */
+    public interface Listener {
+
+        /**
+         * Called with every decoded character.
+         *
+         * @param decoder The decoder that decoded the character.
+         * @param c The character, from 0 to 255.
+         */
+        void character(PskDecoder decoder, int c);
+    }
+
+    /**
+     * The detector that turns audio into symbols.
+     */
+    private final SymbolDetector psk;
+
+    /**
+     * One block of audio, a whole number of frames, copied out of the buffers fed in.
+     */
+    private final byte[] dataBuffer;
+
+    /**
+     * The number of bytes in {@link #dataBuffer} not yet detected.
+     */
+    private int dataBufferFill;
+
+    /**
+     * Symbols from the last block of audio.
+     */
+    private final SymbolBuffer symbols;
+
+    /**
+     * Turns symbols into characters.
+     */
+    private final VaricodeDecoder varicode;
+
+    /**
+     * Characters decoded but not yet returned by {@link #decode(ByteBuffer, ByteBuffer)}.
+     *
+     * Every character takes at least three symbols, so this holds every character one block can produce.
+     */
+    private final byte[] characters;
+
+    /**
+     * The offset of the next character to return from {@link #characters}.
+     */
+    private int charactersOff;
+
+    /**
+     * The fill of {@link #characters}.
+     */
+    private int charactersFill;
+
+    /**
+     * Receives characters from {@link #feed(ByteBuffer)}.
+     */
+    private Listener listener;
+
+    /**
+     * Constructor.
+     *
+     * @param psk The detector to decode audio with.
+     */
+    public PskDecoder(final SymbolDetector psk) {
+        final int samplesPerBlock = (int) (psk.getSampleRate() / psk.getSymbolRate());
+
+        this.psk            = psk;
+        this.dataBuffer     = new byte[psk.getFrameSize() * samplesPerBlock];
+        this.dataBufferFill = 0;
+        this.symbols        = new SymbolBuffer(samplesPerBlock / 2 + 1);
+        this.varicode       = new VaricodeDecoder();
+        this.characters     = new byte[symbols.capacity() / 3 + 1];
+        this.charactersOff  = 0;
+        this.charactersFill = 0;
+        this.listener       = null;
+    }
+
+    /**
+     * Constructor for a BPSK signal.
+     *
+     * @param hz Frequency of the carrier.
+     * @param sampleRate The audio sample rate.
+     * @param symbolsPerSecond How many symbols per second, such as {@link BpskGenerator#PSK31_SYMBOLS_PER_SECOND}.
+     */
+    public PskDecoder(final double hz, final int sampleRate, final double symbolsPerSecond) {
+        this(new BpskDetector(hz, sampleRate, symbolsPerSecond));
+    }
+
+    /**
+     * Set the listener that {@link #feed(ByteBuffer)} passes characters to.
+     *
+     * @param listener The listener.
+     */
+    public void setListener(final Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Return the detector this decodes audio with.
+     *
+     * @return the detector this decodes audio with.
+     */
+    public SymbolDetector getDetector() {
+        return psk;
+    }
+
+    /**
+     * Decode all of the given audio, passing each character to the {@link Listener}.
+     *
+     * @param audio The audio. On return it has no bytes remaining.
+     *
+     * @return The number of characters decoded.
+     *
+     * @throws IllegalStateException if there is no listener.
+     * @throws IOException on errors from the detector.
+     */
+    public int feed(final ByteBuffer audio) throws IOException {
+        if (listener == null) {
+            throw new IllegalStateException("No listener is set.");
+        }
+
+        int decoded = 0;
+
+        do {
+            while (charactersOff < charactersFill) {
+                listener.character(this, characters[charactersOff++] & 0xff);
+                ++decoded;
+            }
+        } while (decodeBlock(audio));
+
+        return decoded;
+    }
+
+    /**
+     * Decode audio into a buffer of characters.
+     *
+     * Audio is consumed only while there is room in {@code out}, so a caller that cannot keep
+     * up is left holding the audio rather than this class buffering it.
+     *
+     * @param audio The audio. On return the audio not yet decoded remains.
+     * @param out The buffer to put decoded characters, one to a byte, into.
+     *
+     * @return The number of characters put into {@code out}.
+     *
+     * @throws IOException on errors from the detector.
+     */
+    public int decode(final ByteBuffer audio, final ByteBuffer out) throws IOException {
+        int decoded = 0;
+
+        do {
+            final int count = Math.min(out.remaining(), charactersFill - charactersOff);
+            out.put(characters, charactersOff, count);
+            charactersOff += count;
+            decoded       += count;
+        } while (out.hasRemaining() && decodeBlock(audio));
+
+        return decoded;
+    }
+
+    /**
+     * Return the number of characters decoded but not yet put into a buffer by {@link #decode(ByteBuffer, ByteBuffer)}.
+     *
+     * @return the number of characters waiting.
+     */
+    public int pending() {
+        return charactersFill - charactersOff;
+    }
+
+    /**
+     * Detect one block of audio and decode its symbols into {@link #characters}.
+     *
+     * This must only be called when {@link #characters} is empty.
+     *
+     * @return False if {@code audio} had no more bytes.
+     */
+    private boolean decodeBlock(final ByteBuffer audio) throws IOException {
+        if (!audio.hasRemaining()) {
+            return false;
+        }
+
+        /* Copy in up to one block, after any partial frame left from the last call. */
+        final int count = Math.min(audio.remaining(), dataBuffer.length - dataBufferFill);
+        audio.get(dataBuffer, dataBufferFill, count);
+
+        final int fill   = dataBufferFill + count;
+        final int frames = fill - (fill % psk.getFrameSize());
+
+        psk.detectSignal(dataBuffer, 0, frames, symbols);
+
+        dataBufferFill = fill - frames;
+        System.arraycopy(dataBuffer, frames, dataBuffer, 0, dataBufferFill);
+
+        charactersOff  = 0;
+        charactersFill = 0;
+
+        while (symbols.size() > 0) {
+            final int  n    = Math.min(64, symbols.size());
+            final long bits = symbols.peekSymbols(0, n);
+
+            for (int i = 0; i < n; ++i) {
+                final int c = varicode.decode((int) (bits >>> i));
+
+                if (c != VaricodeDecoder.NO_CHARACTER) {
+                    characters[charactersFill++] = (byte) c;
+                }
+            }
+
+            symbols.consume(n);
+        }
+
+        return true;
+    }
+
+    /**
+     * Discard any buffered audio, symbols and characters.
+     *
+     * The detector itself is not reset.
+     */
+    public void reset() {
+        dataBufferFill = 0;
+        charactersOff  = 0;
+        charactersFill = 0;
+        symbols.clear();
+        varicode.reset();
+    }
+}
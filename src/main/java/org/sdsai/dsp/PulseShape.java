@@ -0,0 +1,165 @@
+package org.sdsai.dsp;
+
+/**
+ * The shape of the pulse that carries each symbol in a {@link BpskGenerator}.
+ *
+ * A BPSK baseband signal is the sum of one pulse per symbol, each centered on its symbol
+ * and multiplied by +1 or -1. The pulse chosen trades occupied bandwidth for the length of
+ * the pulse, and so for how many neighboring symbols must be summed for every audio sample.
+ */
+public abstract class PulseShape {
+
+    /**
+     * The standard PSK31 shape.
+     *
+     * This is a raised cosine window two symbols long. It gives a full amplitude carrier
+     * between symbols of the same phase and a cosine shaped envelope across a phase reversal.
+     */
+    public static final PulseShape PSK31 = new PulseShape(2) {
+        @Override
+        public double amplitude(final double t) {
+            if (t <= -1 || t >= 1) {
+                return 0;
+            }
+            final double c = Math.cos(Math.PI * t / 2.0);
+            return c * c;
+        }
+    };
+
+    /**
+     * How many symbols long the pulse is.
+     */
+    private final int span;
+
+    /**
+     * Constructor.
+     *
+     * @param span How many symbols long the pulse is. This must be positive and even.
+     */
+    protected PulseShape(final int span) {
+        if (span < 2 || span % 2 != 0) {
+            throw new IllegalArgumentException("Pulse span must be a positive, even number of symbols: "+span);
+        }
+        this.span = span;
+    }
+
+    /**
+     * Return the amplitude of the pulse.
+     *
+     * @param t Time relative to the center of the pulse, measured in symbols.
+     *
+     * @return The amplitude of the pulse. This must be 0 when {@code |t| >= getSpan() / 2}.
+     */
+    public abstract double amplitude(double t);
+
+    /**
+     * Return how many symbols long the pulse is.
+     *
+     * @return how many symbols long the pulse is.
+     */
+    public int getSpan() {
+        return span;
+    }
+
+    /**
+     * A raised cosine pulse, truncated to {@code span} symbols.
+     *
+     * The raised cosine pulse has no inter-symbol interference at symbol centers.
+     *
+     * @param rollOff The excess bandwidth, from 0 to 1. Smaller values use less bandwidth
+     *        but need a longer span to be accurate.
+     * @param span How many symbols long the pulse is. This must be positive and even.
+     *
+     * @return A raised cosine pulse.
+     */
+    public static PulseShape raisedCosine(final double rollOff, final int span) {
+        checkRollOff(rollOff);
+
+        return new PulseShape(span) {
+            @Override
+            public double amplitude(final double t) {
+                if (Math.abs(t) >= span / 2.0) {
+                    return 0;
+                }
+
+                final double x = 2.0 * rollOff * t;
+
+                /* At the singularity use the limit of the expression. */
+                if (Math.abs(Math.abs(x) - 1.0) < 1e-9) {
+                    return Math.PI / 4.0 * sinc(1.0 / (2.0 * rollOff));
+                }
+
+                return sinc(t) * Math.cos(Math.PI * rollOff * t) / (1.0 - x * x);
+            }
+        };
+    }
+
+    /**
+     * A root raised cosine pulse, truncated to {@code span} symbols.
+     *
+     * Used at both the transmitter and a matched receive filter this gives a raised cosine response.
+     * The pulse is scaled so that a run of symbols of the same phase has an amplitude of about 1.
+     *
+     * @param rollOff The excess bandwidth, from 0 to 1.
+     * @param span How many symbols long the pulse is. This must be positive and even.
+     *
+     * @return A root raised cosine pulse.
+     */
+    public static PulseShape rootRaisedCosine(final double rollOff, final int span) {
+        checkRollOff(rollOff);
+
+        /* The sum of the pulse at every symbol center. */
+        double sum = 0;
+        for (int k = -span / 2 + 1; k < span / 2; ++k) {
+            sum += rootRaisedCosineResponse(rollOff, k);
+        }
+        final double scale = 1.0 / sum;
+
+        return new PulseShape(span) {
+            @Override
+            public double amplitude(final double t) {
+                if (Math.abs(t) >= span / 2.0) {
+                    return 0;
+                }
+
+                return scale * rootRaisedCosineResponse(rollOff, t);
+            }
+        };
+    }
+
+    /**
+     * The unscaled root raised cosine impulse response.
+     */
+    private static double rootRaisedCosineResponse(final double rollOff, final double t) {
+        if (t == 0) {
+            return 1.0 - rollOff + 4.0 * rollOff / Math.PI;
+        }
+
+        final double x = 4.0 * rollOff * t;
+
+        /* At the singularity use the limit of the expression. */
+        if (Math.abs(Math.abs(x) - 1.0) < 1e-9) {
+            return rollOff / Math.sqrt(2.0) * (
+                (1.0 + 2.0 / Math.PI) * Math.sin(Math.PI / (4.0 * rollOff)) +
+                (1.0 - 2.0 / Math.PI) * Math.cos(Math.PI / (4.0 * rollOff)));
+        }
+
+        return (
+            Math.sin(Math.PI * t * (1.0 - rollOff)) +
+            4.0 * rollOff * t * Math.cos(Math.PI * t * (1.0 + rollOff))
+        ) / (Math.PI * t * (1.0 - x * x));
+    }
+
+    private static double sinc(final double x) {
+        if (x == 0) {
+            return 1.0;
+        }
+        return Math.sin(Math.PI * x) / (Math.PI * x);
+    }
+
+    private static void checkRollOff(final double rollOff) {
+        if (rollOff <= 0 || rollOff > 1) {
+            throw new IllegalArgumentException("Roll off must be greater than 0 and at most 1: "+rollOff);
+        }
+    }
+}
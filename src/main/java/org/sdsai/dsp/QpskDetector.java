@@ -0,0 +1,364 @@
+package org.sdsai.dsp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Detect and decode QPSK31 signals produced by {@link QpskGenerator}.
+ *
+ * The audio is mixed to baseband with a phase accumulator and summed into
+ * {@link #SLOTS} slots per symbol. The average energy of each slot position locates
+ * the symbol boundaries, where the shaped signal dips, and the slots in the middle half of
+ * each symbol are summed to give one complex value per symbol. The change in phase between
+ * symbols gives two soft bits which a {@link ViterbiDecoder} turns into the decoded bits.
+ *
+ * Decoded bits are delayed by {@link ViterbiDecoder#DELAY} symbols, so a transmission
+ * should be followed by at least that many bits of postamble.
+ */
+public class QpskDetector implements SymbolDetector {
+
+    /**
+     * The number of slots each symbol is divided into.
+     */
+    private static final int SLOTS = 16;
+
+    /**
+     * The weight of a new slot energy in the running average of its position.
+     */
+    private static final double ENERGY_WEIGHT = 1.0 / 8.0;
+
+    /**
+     * The number of symbol periods during which the boundary may jump to any slot.
+     * After this it moves at most one slot per symbol period.
+     */
+    private static final int ACQUIRE_PERIODS = 16;
+
+    /**
+     * The scale of the soft values given to the {@link ViterbiDecoder}.
+     */
+    private static final double SOFT_SCALE = 64.0;
+
+    /**
+     * The size of a single sample is currently always 2 bytes.
+     */
+    private static final int sampleSize = 16;
+
+    private double hz;
+    private int sampleRate;
+    private double symbolsPerSecond;
+
+    /**
+     * How many audio samples are in each PSK symbol.
+     */
+    private int samplesPerSymbol;
+
+    /**
+     * The sample, counted from the start of a symbol period, at which each slot ends.
+     */
+    private int[] slotEnds;
+
+    /**
+     * The phase accumulator of the mixing oscillator. See {@link SineTable}.
+     */
+    private int mixPhase;
+
+    /**
+     * How far {@link #mixPhase} advances every sample.
+     */
+    private int mixIncrement;
+
+    /**
+     * The sample of the current symbol period.
+     */
+    private int periodSample;
+
+    /**
+     * The slot of the current symbol period.
+     */
+    private int slot;
+
+    /**
+     * The in phase sum of the current slot.
+     */
+    private double slotI;
+
+    /**
+     * The quadrature sum of the current slot.
+     */
+    private double slotQ;
+
+    /**
+     * The in phase sum of each of the last {@link #SLOTS} slots, indexed by slot position.
+     */
+    private final double[] slotsI;
+
+    /**
+     * The quadrature sum of each of the last {@link #SLOTS} slots, indexed by slot position.
+     */
+    private final double[] slotsQ;
+
+    /**
+     * The running average energy of each slot position.
+     */
+    private final double[] slotEnergy;
+
+    /**
+     * The slot position with the least energy, which holds the symbol boundary.
+     */
+    private int boundary;
+
+    /**
+     * The number of symbol periods seen, up to {@link #ACQUIRE_PERIODS}.
+     */
+    private int periods;
+
+    /**
+     * The number of slots since the last symbol decision.
+     */
+    private int slotsSinceDecision;
+
+    /**
+     * The in phase value of the previous symbol.
+     */
+    private double lastI;
+
+    /**
+     * The quadrature value of the previous symbol.
+     */
+    private double lastQ;
+
+    private final ViterbiDecoder viterbi;
+
+    /**
+     * Collects symbols for {@link #detectSignal(byte[], int, int, OutputStream)}.
+     */
+    private final SymbolBuffer symbols;
+
+    /**
+     * Constructor with sensible defaults.
+     * <ul>
+     * <li>{@link BpskGenerator#DEFAULT_FREQUENCY}</li>
+     * <li>{@link BpskGenerator#DEFAULT_SAMPLE_RATE}</li>
+     * <li>{@link BpskGenerator#PSK31_SYMBOLS_PER_SECOND}</li>
+     * </ul>
+     */
+    public QpskDetector() {
+        this(BpskGenerator.DEFAULT_FREQUENCY, BpskGenerator.DEFAULT_SAMPLE_RATE, BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param hz Frequency of the detected tone.
+     * @param sampleRate The audio sample rate.
+     */
+    public QpskDetector(final double hz, final int sampleRate) {
+        this(hz, sampleRate, BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param hz Frequency of the detected tone.
+     * @param sampleRate The audio sample rate.
+     * @param symbolsPerSecond How many symbols per second. For QPSK31 this is {@link BpskGenerator#PSK31_SYMBOLS_PER_SECOND}.
+     */
+    public QpskDetector(final double hz, final int sampleRate, final double symbolsPerSecond) {
+        this.sampleRate         = sampleRate;
+        this.symbolsPerSecond   = symbolsPerSecond;
+        this.samplesPerSymbol   = (int)(sampleRate / symbolsPerSecond);
+        this.slotEnds           = new int[SLOTS];
+        this.slotsI             = new double[SLOTS];
+        this.slotsQ             = new double[SLOTS];
+        this.slotEnergy         = new double[SLOTS];
+        this.viterbi            = new ViterbiDecoder();
+        this.symbols            = new SymbolBuffer(64);
+        this.periodSample       = 0;
+        this.slot               = 0;
+        this.boundary           = 0;
+        this.periods            = 0;
+        this.slotsSinceDecision = 0;
+        this.lastI              = 0;
+        this.lastQ              = 0;
+
+        for (int i = 0; i < SLOTS; ++i) {
+            slotEnds[i] = (i + 1) * samplesPerSymbol / SLOTS;
+        }
+
+        tune(hz);
+    }
+
+    /**
+     * Set the target frequency.
+     *
+     * @param hz The new target frequency.
+     */
+    public void tune(final double hz) {
+        this.hz           = hz;
+        this.mixIncrement = SineTable.phaseIncrement(hz, sampleRate);
+    }
+
+    /**
+     * Given a signal encoded as specified by {@link #getAudioFormat()} demodulate it.
+     *
+     * @param data Raw audio data.
+     * @param off The offset into the buffer to operate on.
+     * @param len The length of data to operate on.
+     * @param sink The sink that decoded bits, 1 or 0, are put into.
+     *
+     * @throws IOException on errors from {@code sink}.
+     */
+    public void detectSignal(final byte[] data, final int off, final int len, final SymbolSink sink)
+        throws IOException
+    {
+        for (int i = off; i + 1 < off + len; i += 2) {
+            final short sample = (short)(((data[i] << 8) & 0xff00) | (data[i+1] & 0xff));
+
+            slotI += sample * SineTable.cos(mixPhase);
+            slotQ -= sample * SineTable.sin(mixPhase);
+            mixPhase += mixIncrement;
+
+            if (++periodSample == slotEnds[slot]) {
+                endSlot(sink);
+            }
+        }
+    }
+
+    /**
+     * Given a signal encoded as specified by {@link #getAudioFormat()} demodulate it.
+     *
+     * @param data Raw audio data.
+     * @param off The offset into the buffer to operate on.
+     * @param len The length of data to operate on.
+     * @param os Output stream that decoded bits, 1 or 0, are written to.
+     *
+     * @throws IOException on errors writing to {@code os}.
+     */
+    public void detectSignal(final byte[] data, final int off, final int len, final OutputStream os)
+        throws IOException
+    {
+        /* Every symbol takes at least two samples, so each piece fits in the buffer. */
+        final int piece = 2 * getFrameSize() * (symbols.capacity() - 1);
+
+        for (int i = 0; i < len; i += piece) {
+            detectSignal(data, off + i, Math.min(piece, len - i), symbols);
+
+            symbols.writeTo(os);
+        }
+    }
+
+    /**
+     * Record a finished slot, update the symbol timing and, in the middle of a symbol, make a decision.
+     */
+    private void endSlot(final SymbolSink sink) throws IOException {
+        slotsI[slot] = slotI;
+        slotsQ[slot] = slotQ;
+        slotEnergy[slot] += ENERGY_WEIGHT * ((slotI * slotI + slotQ * slotQ) - slotEnergy[slot]);
+        slotI = 0;
+        slotQ = 0;
+
+        ++slotsSinceDecision;
+
+        /* The middle half of the symbol after the boundary has just ended. */
+        if (slot == ((boundary + 3 * SLOTS / 4) & (SLOTS - 1)) && slotsSinceDecision > SLOTS / 2) {
+            decide(sink);
+        }
+
+        if (++slot == SLOTS) {
+            slot         = 0;
+            periodSample = 0;
+
+            /* Find the boundary once per symbol period. */
+            int min = 0;
+            for (int s = 1; s < SLOTS; ++s) {
+                if (slotEnergy[s] < slotEnergy[min]) {
+                    min = s;
+                }
+            }
+
+            if (periods < ACQUIRE_PERIODS) {
+                ++periods;
+                boundary = min;
+            }
+            else {
+                /* Track slowly so noise can not make the timing slip. */
+                final int step = ((min - boundary + SLOTS + SLOTS / 2) & (SLOTS - 1)) - SLOTS / 2;
+                boundary = (boundary + Integer.signum(step) + SLOTS) & (SLOTS - 1);
+            }
+        }
+    }
+
+    /**
+     * Sum the middle half of the symbol and decode the change of phase from the previous symbol.
+     */
+    private void decide(final SymbolSink sink) throws IOException {
+        double symbolI = 0;
+        double symbolQ = 0;
+        for (int s = SLOTS / 4; s < 3 * SLOTS / 4; ++s) {
+            final int position = (boundary + 1 + s) & (SLOTS - 1);
+            symbolI += slotsI[position];
+            symbolQ += slotsQ[position];
+        }
+
+        /* The change of phase is the symbol times the conjugate of the previous symbol. */
+        final double x = symbolI * lastI + symbolQ * lastQ;
+        final double y = symbolQ * lastI - symbolI * lastQ;
+        final double norm = Math.sqrt(
+            (symbolI * symbolI + symbolQ * symbolQ) * (lastI * lastI + lastQ * lastQ)) + 1e-9;
+
+        lastI              = symbolI;
+        lastQ              = symbolQ;
+        slotsSinceDecision = 0;
+
+        /* A change of 0 degrees is 11, -90 is 10, 180 is 00 and +90 is 01. */
+        final int soft1 = (int)(SOFT_SCALE * (x - y) / norm);
+        final int soft0 = (int)(SOFT_SCALE * (x + y) / norm);
+
+        final int bit = viterbi.decode(soft1, soft0);
+        if (bit != -1) {
+            sink.putSymbol(bit);
+        }
+    }
+
+    /**
+     * Return the audio format this class decodes.
+     *
+     * @return the audio format this class decodes.
+     */
+    public AudioFormat getAudioFormat() {
+        return new AudioFormat(sampleRate, sampleSize, 1, true, true);
+    }
+
+    /**
+     * Return the number of PSK symbols per second.
+     *
+     * @return the number of PSK symbols per second.
+     */
+    public double getSymbolRate() {
+        return symbolsPerSecond;
+    }
+
+    /**
+     * Return the carrier frequency.
+     *
+     * @return the carrier frequency.
+     */
+    public double getFrequency() {
+        return hz;
+    }
+
+    /**
+     * Return the size of a single audio frame.
+     *
+     * @return the size of a single audio frame.
+     */
+    public int getFrameSize(){ return sampleSize/8; }
+
+    /**
+     * Return the sample rate.
+     * @return The sample rate.
+     */
+    public int getSampleRate() { return sampleRate; }
+}
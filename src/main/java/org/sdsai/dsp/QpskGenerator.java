@@ -0,0 +1,298 @@
+package org.sdsai.dsp;
+
+import java.io.IOException;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Generate a QPSK31 signal.
+ *
+ * Every input bit is passed through a {@link ConvolutionalEncoder} and the resulting
+ * two bit symbol selects a change of carrier phase.
+ * <ul>
+ * <li>{@code 00} shifts the phase by 180 degrees. An idle stream of 0 bits is a series of reversals.</li>
+ * <li>{@code 01} shifts the phase by +90 degrees.</li>
+ * <li>{@code 10} shifts the phase by -90 degrees.</li>
+ * <li>{@code 11} leaves the phase unchanged.</li>
+ * </ul>
+ * Symbols are shaped with {@link PulseShape#PSK31}, as in {@link BpskGenerator}.
+ *
+ * This produces 16 bit, big endian, signed audio.
+ */
+public class QpskGenerator implements SymbolGenerator {
+
+    /**
+     * The peak amplitude of the generated carrier.
+     */
+    private static final double AMPLITUDE = Short.MAX_VALUE * 0.8;
+
+    /**
+     * The size of a single sample is currently always 2 bytes.
+     */
+    private static final int sampleSize = 16;
+
+    /**
+     * The change of phase, in quarter turns, selected by each encoded symbol.
+     */
+    private static final int[] PHASE_CHANGE = { 2, 1, 3, 0 };
+
+    /**
+     * The in phase component of a carrier at each quarter turn.
+     */
+    private static final double[] QUARTER_COS = { 1, 0, -1, 0 };
+
+    /**
+     * The quadrature component of a carrier at each quarter turn.
+     */
+    private static final double[] QUARTER_SIN = { 0, 1, 0, -1 };
+
+    private double hz;
+    private int sampleRate;
+    private double symbolsPerSecond;
+
+    /**
+     * The number of audio samples generated for every symbol.
+     */
+    private int symbolSamples;
+
+    /**
+     * The pulse of the current symbol over the span of one symbol.
+     */
+    private double[] pulseCenter;
+
+    /**
+     * The tail of the previous symbol's pulse over the span of one symbol.
+     */
+    private double[] pulseBefore;
+
+    /**
+     * The start of the next symbol's pulse over the span of one symbol.
+     */
+    private double[] pulseAfter;
+
+    /**
+     * The phase accumulator of the carrier. See {@link SineTable}.
+     */
+    private int carrierPhase;
+
+    /**
+     * How far {@link #carrierPhase} advances every sample.
+     */
+    private int carrierIncrement;
+
+    /**
+     * The phase, in quarter turns, of the last generated symbol.
+     */
+    private int quarter;
+
+    private final ConvolutionalEncoder encoder;
+
+    /**
+     * Constructor with sensible defaults.
+     * <ul>
+     * <li>{@link BpskGenerator#DEFAULT_FREQUENCY}</li>
+     * <li>{@link BpskGenerator#DEFAULT_SAMPLE_RATE}</li>
+     * <li>{@link BpskGenerator#PSK31_SYMBOLS_PER_SECOND}</li>
+     * </ul>
+     */
+    public QpskGenerator() {
+        this(BpskGenerator.DEFAULT_FREQUENCY, BpskGenerator.DEFAULT_SAMPLE_RATE, BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param hz Frequency of carrier.
+     * @param sampleRate The audio sample rate.
+     */
+    public QpskGenerator(final double hz, final int sampleRate) {
+        this(hz, sampleRate, BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param hz Frequency of carrier.
+     * @param sampleRate The audio sample rate.
+     * @param symbolsPerSecond How many symbols per second. For QPSK31 this is {@link BpskGenerator#PSK31_SYMBOLS_PER_SECOND}.
+     */
+    public QpskGenerator(final double hz, final int sampleRate, final double symbolsPerSecond) {
+        this.hz               = hz;
+        this.sampleRate       = sampleRate;
+        this.symbolsPerSecond = symbolsPerSecond;
+        this.symbolSamples    = (int)(sampleRate / symbolsPerSecond);
+        this.carrierPhase     = 0;
+        this.carrierIncrement = SineTable.phaseIncrement(hz, sampleRate);
+        this.quarter          = 0;
+        this.encoder          = new ConvolutionalEncoder();
+        this.pulseCenter      = new double[symbolSamples];
+        this.pulseBefore      = new double[symbolSamples];
+        this.pulseAfter       = new double[symbolSamples];
+
+        for (int i = 0; i < symbolSamples; ++i) {
+            /* Time, in symbols, relative to the center of this symbol. */
+            final double t = i * symbolsPerSecond / sampleRate - 0.5;
+
+            pulseCenter[i] = AMPLITUDE * PulseShape.PSK31.amplitude(t);
+            pulseBefore[i] = AMPLITUDE * PulseShape.PSK31.amplitude(t + 1);
+            pulseAfter[i]  = AMPLITUDE * PulseShape.PSK31.amplitude(t - 1);
+        }
+    }
+
+    /**
+     * Encode a bit and return the phase, in quarter turns, of the symbol it produces.
+     */
+    private int nextQuarter(final int quarter, final byte bit) {
+        return (quarter + PHASE_CHANGE[encoder.encode(bit)]) & 3;
+    }
+
+    /**
+     * Given an array of 1s or 0s generate a QPSK audio signal.
+     *
+     * @param bits The array of 1s and 0s. Any other value is an error.
+     *
+     * @throws IOException if a value in {@code bits} is not a 1 or 0.
+     * @return Audio data.
+     */
+    public byte[] generateSignal(final byte[] bits) throws IOException {
+        return generateSignal(bits, 0, bits.length);
+    }
+
+    /**
+     * Given an array of 1s or 0s generate a QPSK audio signal.
+     *
+     * @param bits The array of 1s and 0s. Any other value is an error.
+     * @param off Offset into bits at which to start.
+     * @param len The number of bits to generate.
+     *
+     * @throws IOException if a value in {@code bits} is not a 1 or 0.
+     * @return Audio data.
+     */
+    public byte[] generateSignal(final byte[] bits, final int off, final int len) throws IOException {
+        final byte[] buffer = new byte[getSignalLength(len)];
+
+        generateSignal(bits, off, len, buffer, 0);
+
+        return buffer;
+    }
+
+    /**
+     * Given an array of 1s or 0s generate a QPSK audio signal into a caller owned buffer.
+     *
+     * The carrier phase and encoder state continue from the previous call, but the signal
+     * fades out at the end of each call and in at the start of the next.
+     *
+     * @param bits The array of 1s and 0s. Any other value is an error.
+     * @param off Offset into bits at which to start.
+     * @param len The number of bits to generate.
+     * @param out The buffer to write 16 bit, big endian audio into.
+     *        It must have {@link #getSignalLength(int)} bytes available after {@code outOff}.
+     * @param outOff The offset into out to start writing at.
+     *
+     * @throws IOException if a value in {@code bits} is not a 1 or 0.
+     * @throws IllegalArgumentException if out is too small.
+     * @return The number of bytes written.
+     */
+    public int generateSignal(final byte[] bits, final int off, final int len, final byte[] out, final int outOff)
+        throws IOException
+    {
+        final int bytes = getSignalLength(len);
+
+        if (outOff < 0 || out.length - outOff < bytes) {
+            throw new IllegalArgumentException("Output buffer needs "+bytes+" bytes after offset "+outOff+".");
+        }
+
+        for (int bit_i = 0; bit_i < len; ++bit_i) {
+            if (bits[off+bit_i] != 0 && bits[off+bit_i] != 1) {
+                throw new IOException("Symbol at index "+bit_i+" was not a 1 or 0.");
+            }
+        }
+
+        if (len == 0) {
+            return 0;
+        }
+
+        int current  = nextQuarter(quarter, bits[off]);
+        int previous = (current + 2) & 3;
+        int buf_i    = outOff;
+
+        for (int bit_i = 0; bit_i < len; ++bit_i) {
+            /* Past the end of the call the signal fades out, as if the phase reversed. */
+            final int next = (bit_i + 1 < len) ? nextQuarter(current, bits[off+bit_i+1]) : (current + 2) & 3;
+
+            final double cr = QUARTER_COS[current],  ci = QUARTER_SIN[current];
+            final double pr = QUARTER_COS[previous], pi = QUARTER_SIN[previous];
+            final double nr = QUARTER_COS[next],     ni = QUARTER_SIN[next];
+
+            for (int i = 0; i < symbolSamples; ++i, buf_i += 2) {
+                final double re = cr * pulseCenter[i] + pr * pulseBefore[i] + nr * pulseAfter[i];
+                final double im = ci * pulseCenter[i] + pi * pulseBefore[i] + ni * pulseAfter[i];
+
+                final short sample = (short) (re * SineTable.cos(carrierPhase) - im * SineTable.sin(carrierPhase));
+                carrierPhase += carrierIncrement;
+
+                out[buf_i]   = (byte) ((sample >>> 8) & 0xff);
+                out[buf_i+1] = (byte) ((sample) & 0xff);
+            }
+
+            previous = current;
+            current  = next;
+        }
+
+        /* The last computed "next" phase was the fade out, not a symbol. */
+        quarter = previous;
+
+        return bytes;
+    }
+
+    /**
+     * Return the number of bytes of audio that encode the given number of bits.
+     *
+     * @param bits The number of bits.
+     *
+     * @return the number of bytes of audio that encode the given number of bits.
+     */
+    public int getSignalLength(final int bits) {
+        return 2 * bits * symbolSamples;
+    }
+
+    /**
+     * Return the audio format this class generates.
+     *
+     * @return the audio format this class generates.
+     */
+    public AudioFormat getAudioFormat() {
+        return new AudioFormat(sampleRate, sampleSize, 1, true, true);
+    }
+
+    /**
+     * Return the number of PSK symbols per second.
+     *
+     * @return the number of PSK symbols per second.
+     */
+    public double getSymbolRate() {
+        return symbolsPerSecond;
+    }
+
+    /**
+     * Return the carrier frequency.
+     *
+     * @return the carrier frequency.
+     */
+    public double getFrequency() {
+        return hz;
+    }
+
+    /**
+     * Return the size of a single audio frame.
+     *
+     * @return the size of a single audio frame.
+     */
+    public int getFrameSize(){ return sampleSize/8; }
+
+    /**
+     * Return the sample rate.
+     * @return The sample rate.
+     */
+    public int getSampleRate() { return sampleRate; }
+}
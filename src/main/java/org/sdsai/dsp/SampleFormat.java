@@ -0,0 +1,108 @@
+package org.sdsai.dsp;
+
+import java.nio.ByteOrder;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Single channel, raw audio sample encodings that classes in this package can produce.
+ *
+ * {@link #PCM_16_BIG_ENDIAN} is what {@link BpskGenerator} produces and
+ * {@link BpskDetector} consumes.
+ */
+public enum SampleFormat {
+    /**
+     * 16 bit, signed, big endian samples.
+     */
+    PCM_16_BIG_ENDIAN(2, false, ByteOrder.BIG_ENDIAN),
+
+    /**
+     * 16 bit, signed, little endian samples.
+     */
+    PCM_16_LITTLE_ENDIAN(2, false, ByteOrder.LITTLE_ENDIAN),
+
+    /**
+     * 32 bit, IEEE 754, big endian samples in the range [-1, 1].
+     */
+    FLOAT_BIG_ENDIAN(4, true, ByteOrder.BIG_ENDIAN),
+
+    /**
+     * 32 bit, IEEE 754, little endian samples in the range [-1, 1].
+     */
+    FLOAT_LITTLE_ENDIAN(4, true, ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * The number of bytes in a single sample.
+     */
+    private final int frameSize;
+
+    /**
+     * True if samples are floating point values.
+     */
+    private final boolean floating;
+
+    /**
+     * The byte order of a single sample.
+     */
+    private final ByteOrder order;
+
+    private SampleFormat(final int frameSize, final boolean floating, final ByteOrder order) {
+        this.frameSize = frameSize;
+        this.floating  = floating;
+        this.order     = order;
+    }
+
+    /**
+     * Return the number of bytes in a single sample.
+     *
+     * @return the number of bytes in a single sample.
+     */
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    /**
+     * Return true if the samples are floating point values.
+     *
+     * @return true if the samples are floating point values.
+     */
+    public boolean isFloating() {
+        return floating;
+    }
+
+    /**
+     * Return the byte order of samples.
+     *
+     * @return the byte order of samples.
+     */
+    public ByteOrder getByteOrder() {
+        return order;
+    }
+
+    /**
+     * Return true if the samples are big endian.
+     *
+     * @return true if the samples are big endian.
+     */
+    public boolean isBigEndian() {
+        return order == ByteOrder.BIG_ENDIAN;
+    }
+
+    /**
+     * Build a Java Sound {@link AudioFormat} describing this format.
+     *
+     * @param sampleRate The sample rate.
+     *
+     * @return A single channel audio format.
+     */
+    public AudioFormat getAudioFormat(final float sampleRate) {
+        return new AudioFormat(
+            floating ? AudioFormat.Encoding.PCM_FLOAT : AudioFormat.Encoding.PCM_SIGNED,
+            sampleRate,
+            frameSize * 8,
+            1,
+            frameSize,
+            sampleRate,
+            isBigEndian());
+    }
+}
@@ -2,9 +2,15 @@ package org.sdsai.dsp;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 /**
  * A Signal Generator that generates a 16 bit, big endian, signed signal.
+ *
+ * Two modes of generation are available. The default computes {@link Math#sin(double)}
+ * for every sample. The NCO (numerically controlled oscillator) mode advances a
+ * 32 bit phase accumulator and reads the wave out of a {@link SineTable}. The NCO
+ * mode is much faster and its precision does not degrade as more samples are generated.
  */
 public class SignalGenerator {
 
@@ -14,6 +20,28 @@ public class SignalGenerator {
     private double w;
     private short amplitude;
 
+    /**
+     * Use a phase accumulator and {@link SineTable} instead of {@link Math#sin(double)}.
+     */
+    private final boolean nco;
+
+    /**
+     * The phase, in radians, that {@link #sample} 0 starts at.
+     *
+     * This lets {@link #tune(double)} change frequency without a discontinuity in the wave.
+     */
+    private double phaseOffset;
+
+    /**
+     * The phase accumulator used in NCO mode.
+     */
+    private int phase;
+
+    /**
+     * How much {@link #phase} is advanced every sample.
+     */
+    private int phaseIncrement;
+
     /**
      * Constructor.
      *
@@ -32,19 +60,85 @@ public class SignalGenerator {
      * @param amplitude What should the maximum amplitude be.
      */
     public SignalGenerator(final double hz, final int sampleRate, final short amplitude) {
-        this.sampleRate = sampleRate;
-        this.amplitude = amplitude;
+        this(hz, sampleRate, amplitude, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param hz The frequency of the signal to generate.
+     * @param sampleRate The sample rate.
+     * @param amplitude What should the maximum amplitude be.
+     * @param nco If true, generate the signal with a phase accumulator and a lookup table.
+     */
+    public SignalGenerator(final double hz, final int sampleRate, final short amplitude, final boolean nco) {
+        this.sampleRate  = sampleRate;
+        this.amplitude   = amplitude;
+        this.nco         = nco;
+        this.phaseOffset = 0;
+        this.phase       = 0;
+        this.w           = 0;
         tune(hz);
     }
 
+    /**
+     * Change the frequency of the generated signal.
+     *
+     * The phase of the signal is preserved so there is no discontinuity in the wave.
+     *
+     * @param hz The new frequency.
+     */
     public void tune(final double hz) {
-        this.hz = hz;
-        this.sample = 0;
-        this.w = 2.0 * Math.PI * hz / sampleRate;
+        this.phaseOffset    = (phaseOffset + w * sample) % (2.0 * Math.PI);
+        this.hz             = hz;
+        this.sample         = 0;
+        this.w              = 2.0 * Math.PI * hz / sampleRate;
+        this.phaseIncrement = SineTable.phaseIncrement(hz, sampleRate);
+    }
+
+    /**
+     * Return the frequency this is generating.
+     *
+     * @return the frequency this is generating.
+     */
+    public double getFrequency() {
+        return hz;
+    }
+
+    /**
+     * Return the sample rate.
+     *
+     * @return The sample rate.
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Return true if this generates samples with a phase accumulator.
+     *
+     * @return true if this generates samples with a phase accumulator.
+     */
+    public boolean isNco() {
+        return nco;
+    }
+
+    /**
+     * Return the next sample, normalized to the range [-1, 1].
+     */
+    private double next() {
+        if (nco) {
+            final double s = SineTable.sin(phase);
+            phase += phaseIncrement;
+            return s;
+        }
+        else {
+            return Math.sin(phaseOffset + w * sample++);
+        }
     }
 
     public final short read() {
-        return (short) (amplitude * Math.sin(w * sample++));
+        return (short) (amplitude * next());
     }
 
     public int read(final short[] data) {
@@ -52,9 +146,151 @@ public class SignalGenerator {
     }
 
     public int read(final short[] data, final int off, final int len) {
-        for (int i = off; i < off+len; ++i) {
-            data[i] = read();
+        if (nco) {
+            /* Keep the accumulator in a local for the duration of the loop. */
+            int p = phase;
+            for (int i = off; i < off+len; ++i) {
+                data[i] = (short) (amplitude * SineTable.sin(p));
+                p += phaseIncrement;
+            }
+            phase = p;
+        }
+        else {
+            for (int i = off; i < off+len; ++i) {
+                data[i] = read();
+            }
+        }
+        return len;
+    }
+
+    /**
+     * Fill {@code data} with samples scaled so that {@link Short#MAX_VALUE} is 1.0.
+     *
+     * @param data The buffer to fill.
+     *
+     * @return The number of samples written.
+     */
+    public int read(final float[] data) {
+        return read(data, 0, data.length);
+    }
+
+    /**
+     * Fill {@code data} with samples scaled so that {@link Short#MAX_VALUE} is 1.0.
+     *
+     * @param data The buffer to fill.
+     * @param off The offset into data to start writing at.
+     * @param len The number of samples to write.
+     *
+     * @return The number of samples written.
+     */
+    public int read(final float[] data, final int off, final int len) {
+        final double scale = (double)amplitude / (double)Short.MAX_VALUE;
+
+        if (nco) {
+            int p = phase;
+            for (int i = off; i < off+len; ++i) {
+                data[i] = (float) (scale * SineTable.sin(p));
+                p += phaseIncrement;
+            }
+            phase = p;
+        }
+        else {
+            for (int i = off; i < off+len; ++i) {
+                data[i] = (float) (scale * next());
+            }
         }
         return len;
     }
-}
\ No newline at end of file
+
+    /**
+     * Encode samples directly into {@code data}.
+     *
+     * Only whole samples are written, so {@code len / format.getFrameSize()}
+     * samples are generated.
+     *
+     * @param data The buffer to fill.
+     * @param off The offset into data to start writing at.
+     * @param len The number of bytes available in data.
+     * @param format How each sample is encoded.
+     *
+     * @return The number of bytes written.
+     */
+    public int read(final byte[] data, final int off, final int len, final SampleFormat format) {
+        final int samples = len / format.getFrameSize();
+        final int end     = off + samples * format.getFrameSize();
+
+        if (format.isFloating()) {
+            final double scale = (double)amplitude / (double)Short.MAX_VALUE;
+
+            if (format.isBigEndian()) {
+                for (int i = off; i < end; i += 4) {
+                    final int f = Float.floatToRawIntBits((float)(scale * next()));
+                    data[i]   = (byte) ((f >>> 24) & 0xff);
+                    data[i+1] = (byte) ((f >>> 16) & 0xff);
+                    data[i+2] = (byte) ((f >>> 8) & 0xff);
+                    data[i+3] = (byte) ((f) & 0xff);
+                }
+            }
+            else {
+                for (int i = off; i < end; i += 4) {
+                    final int f = Float.floatToRawIntBits((float)(scale * next()));
+                    data[i]   = (byte) ((f) & 0xff);
+                    data[i+1] = (byte) ((f >>> 8) & 0xff);
+                    data[i+2] = (byte) ((f >>> 16) & 0xff);
+                    data[i+3] = (byte) ((f >>> 24) & 0xff);
+                }
+            }
+        }
+        else {
+            if (format.isBigEndian()) {
+                for (int i = off; i < end; i += 2) {
+                    final short s = read();
+                    data[i]   = (byte) ((s >>> 8) & 0xff);
+                    data[i+1] = (byte) ((s) & 0xff);
+                }
+            }
+            else {
+                for (int i = off; i < end; i += 2) {
+                    final short s = read();
+                    data[i]   = (byte) ((s) & 0xff);
+                    data[i+1] = (byte) ((s >>> 8) & 0xff);
+                }
+            }
+        }
+
+        return end - off;
+    }
+
+    /**
+     * Encode samples directly into the remaining space of {@code buffer}.
+     *
+     * Only whole samples are written. The byte order of the samples is dictated
+     * by {@code format}, not by {@link ByteBuffer#order()}. Direct buffers are supported.
+     *
+     * @param buffer The buffer to fill. Its position is advanced past the written samples.
+     * @param format How each sample is encoded.
+     *
+     * @return The number of bytes written.
+     */
+    public int read(final ByteBuffer buffer, final SampleFormat format) {
+        final int     samples = buffer.remaining() / format.getFrameSize();
+        final boolean swap    = buffer.order() != format.getByteOrder();
+
+        if (format.isFloating()) {
+            final double scale = (double)amplitude / (double)Short.MAX_VALUE;
+
+            for (int i = 0; i < samples; ++i) {
+                final int f = Float.floatToRawIntBits((float)(scale * next()));
+                buffer.putInt(swap ? Integer.reverseBytes(f) : f);
+            }
+        }
+        else {
+            for (int i = 0; i < samples; ++i) {
+                final short s = read();
+                buffer.putShort(swap ? Short.reverseBytes(s) : s);
+            }
+        }
+
+        return samples * format.getFrameSize();
+    }
+}
@@ -0,0 +1,152 @@
+package org.sdsai.dsp;
+
+import java.io.InputStream;
+import java.io.IOException;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * An {@link InputStream} of raw audio produced by a {@link SignalGenerator}.
+ *
+ * Samples are encoded straight into the caller's buffer in the requested
+ * {@link SampleFormat}. This makes it easy to feed generated tones into
+ * {@link BpskInputStream} or a Java Sound {@link javax.sound.sampled.AudioInputStream}.
+ */
+public class SignalInputStream extends InputStream {
+
+    /**
+     * The source of samples.
+     */
+    private final SignalGenerator generator;
+
+    /**
+     * How samples are encoded.
+     */
+    private final SampleFormat format;
+
+    /**
+     * A single sample used to satisfy reads that are smaller than a sample.
+     */
+    private final byte[] frame;
+
+    /**
+     * The offset of the next unread byte in {@link #frame}.
+     */
+    private int frameOff;
+
+    /**
+     * The number of samples left to produce or -1 if this stream does not end.
+     */
+    private long samplesLeft;
+
+    /**
+     * Construct a stream that never ends.
+     *
+     * @param generator The source of samples.
+     * @param format How samples are encoded.
+     */
+    public SignalInputStream(final SignalGenerator generator, final SampleFormat format) {
+        this(generator, format, -1);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param generator The source of samples.
+     * @param format How samples are encoded.
+     * @param samples The number of samples to produce before the stream ends. Use -1 for no end.
+     */
+    public SignalInputStream(final SignalGenerator generator, final SampleFormat format, final long samples) {
+        this.generator   = generator;
+        this.format      = format;
+        this.frame       = new byte[format.getFrameSize()];
+        this.frameOff    = frame.length;
+        this.samplesLeft = samples;
+    }
+
+    /**
+     * Take up to {@code samples} samples from {@link #samplesLeft}.
+     *
+     * @return The number of samples that may be produced.
+     */
+    private int takeSamples(final int samples) {
+        if (samplesLeft < 0) {
+            return samples;
+        }
+
+        final int taken = (int)Math.min(samples, samplesLeft);
+        samplesLeft -= taken;
+        return taken;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException {
+        if (frameOff >= frame.length) {
+            if (takeSamples(1) == 0) {
+                return -1;
+            }
+            generator.read(frame, 0, frame.length, format);
+            frameOff = 0;
+        }
+
+        return frame[frameOff++] & 0xff;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        int read = 0;
+
+        /* Drain any sample left over from a previous short read. */
+        while (frameOff < frame.length && read < len) {
+            b[off + read++] = frame[frameOff++];
+        }
+
+        final int samples = takeSamples((len - read) / frame.length);
+        read += generator.read(b, off + read, samples * frame.length, format);
+
+        /* The caller asked for less than a whole sample. */
+        if (read == 0) {
+            final int d = read();
+            if (d == -1) {
+                return -1;
+            }
+            b[off] = (byte) d;
+            read = 1;
+        }
+
+        return read;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int available() {
+        final long pending = frame.length - frameOff;
+
+        if (samplesLeft < 0) {
+            return Integer.MAX_VALUE;
+        }
+
+        return (int)Math.min(Integer.MAX_VALUE, samplesLeft * frame.length + pending);
+    }
+
+    /**
+     * Return the audio format of this stream.
+     *
+     * @return the audio format of this stream.
+     */
+    public AudioFormat getAudioFormat() {
+        return format.getAudioFormat(generator.getSampleRate());
+    }
+}
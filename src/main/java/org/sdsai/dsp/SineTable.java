@@ -0,0 +1,128 @@
+package org.sdsai.dsp;
+
+/**
+ * A sine lookup table addressed by a 32 bit phase accumulator.
+ *
+ * A full turn of the unit circle is mapped onto the entire range of an {@code int}
+ * so that a phase accumulator may be advanced with plain integer addition and
+ * will wrap around at 2 pi for free. Because the phase is never larger than 32 bits
+ * the precision of the generated wave is the same after a second as after a week.
+ *
+ * Values between table entries are linearly interpolated.
+ */
+public final class SineTable {
+
+    /**
+     * Log base 2 of the number of entries in {@link #TABLE}.
+     */
+    private static final int TABLE_BITS = 10;
+
+    /**
+     * The number of entries in a single turn of {@link #TABLE}.
+     */
+    private static final int TABLE_SIZE = 1 << TABLE_BITS;
+
+    /**
+     * The number of low order phase bits that are used for interpolation.
+     */
+    private static final int FRACTION_BITS = 32 - TABLE_BITS;
+
+    /**
+     * Mask selecting the {@link #FRACTION_BITS} of a phase.
+     */
+    private static final int FRACTION_MASK = (1 << FRACTION_BITS) - 1;
+
+    /**
+     * Scale the {@link #FRACTION_BITS} of a phase into the range [0, 1).
+     */
+    private static final double FRACTION_SCALE = 1.0 / (double)(1 << FRACTION_BITS);
+
+    /**
+     * One turn of a sine wave plus a guard entry so interpolation never has to wrap.
+     */
+    private static final double[] TABLE = new double[TABLE_SIZE + 1];
+
+    /**
+     * The value of a phase accumulator that represents pi / 2 radians.
+     */
+    public static final int QUARTER_TURN = 1 << 30;
+
+    /**
+     * The value of a phase accumulator that represents pi radians.
+     */
+    public static final int HALF_TURN = 1 << 31;
+
+    /**
+     * The number of phase accumulator steps in a single turn of the circle.
+     */
+    private static final double PHASE_STEPS = 4294967296.0;
+
+    static {
+        for (int i = 0; i <= TABLE_SIZE; ++i) {
+            TABLE[i] = Math.sin(2.0 * Math.PI * i / TABLE_SIZE);
+        }
+    }
+
+    private SineTable() {
+    }
+
+    /**
+     * Return the sine of the given phase.
+     *
+     * @param phase A phase where the full range of an {@code int} is one turn of the circle.
+     *
+     * @return The sine of the phase, in the range [-1, 1].
+     */
+    public static final double sin(final int phase) {
+        final int    i    = phase >>> FRACTION_BITS;
+        final double frac = (phase & FRACTION_MASK) * FRACTION_SCALE;
+        final double y0   = TABLE[i];
+
+        return y0 + (TABLE[i+1] - y0) * frac;
+    }
+
+    /**
+     * Return the cosine of the given phase.
+     *
+     * @param phase A phase where the full range of an {@code int} is one turn of the circle.
+     *
+     * @return The cosine of the phase, in the range [-1, 1].
+     */
+    public static final double cos(final int phase) {
+        return sin(phase + QUARTER_TURN);
+    }
+
+    /**
+     * Compute how far a phase accumulator must advance each sample to produce a frequency.
+     *
+     * @param hz The frequency to generate.
+     * @param sampleRate The sample rate.
+     *
+     * @return The phase increment to add to an accumulator for every sample.
+     */
+    public static final int phaseIncrement(final double hz, final int sampleRate) {
+        return (int)Math.round(hz / sampleRate * PHASE_STEPS);
+    }
+
+    /**
+     * Convert radians to a phase accumulator value.
+     *
+     * @param radians The angle to convert.
+     *
+     * @return The angle as a phase accumulator value.
+     */
+    public static final int toPhase(final double radians) {
+        return (int)Math.round(radians / (2.0 * Math.PI) * PHASE_STEPS);
+    }
+
+    /**
+     * Convert a phase accumulator value to radians.
+     *
+     * @param phase The phase to convert.
+     *
+     * @return The phase in radians in the range [0, 2 pi).
+     */
+    public static final double toRadians(final int phase) {
+        return (phase & 0xffffffffL) / PHASE_STEPS * 2.0 * Math.PI;
+    }
+}
@@ -0,0 +1,412 @@
+package org.sdsai.dsp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Only pass audio to a {@link SymbolDetector} while there is a signal on its carrier.
+ *
+ * The audio is measured in blocks of one symbol. For each block the power in the two bins half
+ * a symbol rate either side of the carrier, from two Goertzel recursions, is compared with the
+ * block's total power. The tones of an idle signal are in these bins and text falls well within
+ * them. The carrier's own bin is not used because an idle signal has a null there.
+ * For noise the ratio is about 1 whatever the level, and a signal raises it to as much as
+ * half the block length. This costs three multiplications and a few additions per sample,
+ * far less than detection.
+ *
+ * The squelch opens after {@link #OPEN_BLOCKS} blocks in a row are above the open threshold, and
+ * closes after {@link #HANG_BLOCKS} blocks in a row are below the lower close threshold. The last
+ * {@link #ATTACK_BLOCKS} blocks of audio are kept while the squelch is closed and are passed to the
+ * detector when it opens, so the first symbols of a transmission are not lost.
+ *
+ * The squelch listens on the frequency given to {@link #tune(double)}. Built around a
+ * {@link BpskDetector} or an {@link AcquiringDetector} it instead follows that detector's
+ * frequency, checked at the end of every block. An acquiring detector only sees audio while
+ * the squelch is open, so it must start close enough to the signal to open it.
+ *
+ * Audio is 16 bit, big endian, signed samples. This class is not thread safe.
+ */
+public class SquelchedDetector implements SymbolDetector {
+
+    /**
+     * The number of blocks in a row above the open threshold that open the squelch.
+     */
+    private static final int OPEN_BLOCKS = 2;
+
+    /**
+     * The number of blocks in a row below the close threshold that close the squelch.
+     */
+    private static final int HANG_BLOCKS = 16;
+
+    /**
+     * The number of blocks of audio kept to be passed to the detector when the squelch opens.
+     */
+    private static final int ATTACK_BLOCKS = 8;
+
+    private final SymbolDetector detector;
+
+    /**
+     * The detector whose frequency is followed, or null.
+     */
+    private final BpskDetector tuned;
+
+    /**
+     * The carrier frequency the squelch listens on.
+     */
+    private double hz;
+
+    /**
+     * The number of samples in each block.
+     */
+    private final int blockSize;
+
+    /**
+     * {@code 2 cos(w)} where {@code w} is the frequency of the lower and upper bin in radians per sample.
+     */
+    private double lowCoefficient;
+    private double highCoefficient;
+
+    /**
+     * The last {@link #ATTACK_BLOCKS} blocks of audio, as bytes, oldest first from {@link #attackStart}.
+     */
+    private final byte[] attack;
+
+    /**
+     * Where the oldest byte of {@link #attack} is.
+     */
+    private int attackStart;
+
+    /**
+     * The number of bytes in {@link #attack}.
+     */
+    private int attackFill;
+
+    /**
+     * The state of the Goertzel recursions over the current block.
+     */
+    private double low1;
+    private double low2;
+    private double high1;
+    private double high2;
+
+    /**
+     * The total power of the current block.
+     */
+    private double energy;
+
+    /**
+     * The number of samples in the current block.
+     */
+    private int blockFill;
+
+    /**
+     * The ratio of carrier to total power that opens the squelch.
+     */
+    private double openRatio;
+
+    /**
+     * The ratio of carrier to total power below which the squelch starts to close.
+     */
+    private double closeRatio;
+
+    /**
+     * The number of blocks in a row that have been above the open threshold while closed,
+     * or below the close threshold while open.
+     */
+    private int blocks;
+
+    private boolean open;
+
+    /**
+     * The number of samples given to this detector.
+     */
+    private long samples;
+
+    /**
+     * The number of samples that were not passed to the detector.
+     */
+    private long skippedSamples;
+
+    /**
+     * Constructor.
+     *
+     * @param detector The detector to pass audio to.
+     * @param hz The carrier frequency the detector is tuned to.
+     */
+    public SquelchedDetector(final SymbolDetector detector, final double hz) {
+        this(detector, hz, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param detector The detector to pass audio to, following its frequency.
+     */
+    public SquelchedDetector(final BpskDetector detector) {
+        this(detector, detector.getFrequency(), detector);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param detector The detector to pass audio to, following the frequency it acquires.
+     */
+    public SquelchedDetector(final AcquiringDetector detector) {
+        this(detector, detector.getFrequency(), detector.getDetector());
+    }
+
+    private SquelchedDetector(final SymbolDetector detector, final double hz, final BpskDetector tuned) {
+        this.detector    = detector;
+        this.tuned       = tuned;
+        this.blockSize   = Math.max(1, (int) Math.round(detector.getSampleRate() / detector.getSymbolRate()));
+        this.attack      = new byte[ATTACK_BLOCKS * blockSize * detector.getFrameSize()];
+        this.open        = false;
+
+        tune(hz);
+        setThresholds(9, 5);
+    }
+
+    /**
+     * Set the carrier frequency the squelch listens on.
+     *
+     * Call this when the detector is retuned. A squelch that follows a detector's frequency
+     * retunes itself. The block being measured is finished with the old frequency.
+     *
+     * @param hz The carrier frequency.
+     */
+    public void tune(final double hz) {
+        final double offset = detector.getSymbolRate() / 2.0;
+
+        this.hz              = hz;
+        this.lowCoefficient  = 2.0 * Math.cos(2.0 * Math.PI * (hz - offset) / detector.getSampleRate());
+        this.highCoefficient = 2.0 * Math.cos(2.0 * Math.PI * (hz + offset) / detector.getSampleRate());
+    }
+
+    /**
+     * Set the thresholds of the squelch.
+     *
+     * Each is the power in the bins beside the carrier over one symbol compared with the average
+     * of that power for noise. The defaults are 9 and 5 dB.
+     *
+     * @param openDb The level above which the squelch opens.
+     * @param closeDb The level below which the squelch closes. This must not be above {@code openDb}.
+     */
+    public void setThresholds(final double openDb, final double closeDb) {
+        if (closeDb > openDb) {
+            throw new IllegalArgumentException("The close threshold "+closeDb+" is above the open threshold "+openDb+".");
+        }
+
+        this.openRatio  = Math.pow(10, openDb / 10.0);
+        this.closeRatio = Math.pow(10, closeDb / 10.0);
+    }
+
+    @Override
+    public void detectSignal(final byte[] data, final int off, final int len, final SymbolSink sink)
+        throws IOException
+    {
+        process(data, off, len, sink, null);
+    }
+
+    @Override
+    public void detectSignal(final byte[] data, final int off, final int len, final OutputStream os)
+        throws IOException
+    {
+        process(data, off, len, null, os);
+    }
+
+    /**
+     * Measure audio block by block and pass it on while the squelch is open.
+     * Exactly one of {@code sink} and {@code os} is given.
+     */
+    private void process(final byte[] data, final int off, final int len, final SymbolSink sink, final OutputStream os)
+        throws IOException
+    {
+        final int end = off + (len & ~1);
+
+        for (int i = off; i < end; ) {
+            final int count = Math.min(blockSize - blockFill, (end - i) / 2);
+
+            measure(data, i, count);
+
+            if (open) {
+                pass(data, i, 2 * count, sink, os);
+            }
+            else {
+                keep(data, i, 2 * count);
+                skippedSamples += count;
+            }
+
+            samples   += count;
+            blockFill += count;
+            i         += 2 * count;
+
+            if (blockFill == blockSize) {
+                endBlock(sink, os);
+            }
+        }
+    }
+
+    /**
+     * Run the Goertzel recursions and sum the power over samples of the current block.
+     */
+    private void measure(final byte[] data, final int off, final int count) {
+        for (int i = off, n = 0; n < count; ++n, i += 2) {
+            final double sample = (short) (((data[i] << 8) & 0xff00) | (data[i+1] & 0xff));
+            final double low0   = sample + lowCoefficient * low1 - low2;
+            final double high0  = sample + highCoefficient * high1 - high2;
+
+            low2    = low1;
+            low1    = low0;
+            high2   = high1;
+            high1   = high0;
+            energy += sample * sample;
+        }
+    }
+
+    /**
+     * Append audio to {@link #attack}, dropping the oldest.
+     */
+    private void keep(final byte[] data, final int off, final int len) {
+        for (int i = 0; i < len; ) {
+            final int at    = (attackStart + attackFill) % attack.length;
+            final int count = Math.min(len - i, attack.length - at);
+
+            System.arraycopy(data, off + i, attack, at, count);
+            i += count;
+
+            if (attackFill + count <= attack.length) {
+                attackFill += count;
+            }
+            else {
+                attackStart = (attackStart + attackFill + count - attack.length) % attack.length;
+                attackFill  = attack.length;
+            }
+        }
+    }
+
+    /**
+     * Decide if the squelch opens or closes at the end of a block.
+     */
+    private void endBlock(final SymbolSink sink, final OutputStream os) throws IOException {
+        /* For noise the power of each bin averages the block's total power. */
+        final double low   = low1 * low1 + low2 * low2 - lowCoefficient * low1 * low2;
+        final double high  = high1 * high1 + high2 * high2 - highCoefficient * high1 * high2;
+        final double ratio = (energy > 0) ? (low + high) / (2.0 * energy) : 0;
+
+        low1      = 0;
+        low2      = 0;
+        high1     = 0;
+        high2     = 0;
+        energy    = 0;
+        blockFill = 0;
+
+        if (tuned != null && tuned.getFrequency() != hz) {
+            tune(tuned.getFrequency());
+        }
+
+        if (!open) {
+            blocks = (ratio > openRatio) ? blocks + 1 : 0;
+
+            if (blocks >= OPEN_BLOCKS) {
+                open   = true;
+                blocks = 0;
+
+                /* Catch the detector up on the audio that opened the squelch. */
+                skippedSamples -= attackFill / 2;
+                final int first = Math.min(attackFill, attack.length - attackStart);
+                pass(attack, attackStart, first, sink, os);
+                pass(attack, 0, attackFill - first, sink, os);
+            }
+        }
+        else {
+            blocks = (ratio < closeRatio) ? blocks + 1 : 0;
+
+            if (blocks >= HANG_BLOCKS) {
+                open   = false;
+                blocks = 0;
+
+                /* Audio already passed must not be passed again when the squelch next opens. */
+                attackStart = 0;
+                attackFill  = 0;
+            }
+        }
+    }
+
+    /**
+     * Pass audio to the detector.
+     */
+    private void pass(final byte[] data, final int off, final int len, final SymbolSink sink, final OutputStream os)
+        throws IOException
+    {
+        if (len == 0) {
+            return;
+        }
+
+        if (sink != null) {
+            detector.detectSignal(data, off, len, sink);
+        }
+        else {
+            detector.detectSignal(data, off, len, os);
+        }
+    }
+
+    /**
+     * Check if audio is being passed to the detector.
+     *
+     * @return true if audio is being passed to the detector.
+     */
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Return the number of samples given to this detector.
+     *
+     * @return the number of samples given to this detector.
+     */
+    public long getSamples() {
+        return samples;
+    }
+
+    /**
+     * Return the number of samples that were not passed to the detector.
+     *
+     * @return the number of samples that were not passed to the detector.
+     */
+    public long getSkippedSamples() {
+        return skippedSamples;
+    }
+
+    /**
+     * Return the carrier frequency the squelch listens on.
+     *
+     * @return the carrier frequency the squelch listens on.
+     */
+    public double getFrequency() {
+        return hz;
+    }
+
+    /**
+     * Return the detector audio is passed to.
+     *
+     * @return the detector audio is passed to.
+     */
+    public SymbolDetector getDetector() {
+        return detector;
+    }
+
+    @Override
+    public int getFrameSize() {
+        return detector.getFrameSize();
+    }
+
+    @Override
+    public int getSampleRate() {
+        return detector.getSampleRate();
+    }
+
+    @Override
+    public double getSymbolRate() {
+        return detector.getSymbolRate();
+    }
+}
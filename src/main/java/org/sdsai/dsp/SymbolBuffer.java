@@ -0,0 +1,291 @@
+package org.sdsai.dsp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A first in, first out ring buffer of 1 and 0 symbols packed 64 to a {@code long}.
+ *
+ * Symbols are appended at the tail and peeked at or consumed from the head. The buffer holds
+ * a power of two number of words and positions are free running counters, so symbol
+ * {@code p} is bit {@code p % 64} of word {@code (p / 64) & mask}. Runs of symbols are appended
+ * and peeked at a word at a time and nothing is ever copied to make room.
+ *
+ * The capacity is fixed when the buffer is built. A producer must check {@link #remaining()}
+ * before adding symbols and hold off, rather than grow the buffer, when the consumer falls behind.
+ * Adding symbols to a full buffer is an error.
+ */
+public final class SymbolBuffer implements SymbolSink {
+
+    /**
+     * The packed symbols.
+     */
+    private final long[] words;
+
+    /**
+     * {@code words.length - 1}, used to wrap word indexes.
+     */
+    private final int wordMask;
+
+    /**
+     * The position of the first symbol in the buffer.
+     */
+    private int head;
+
+    /**
+     * The position after the last symbol in the buffer.
+     */
+    private int tail;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity The number of symbols the buffer must hold. This is rounded up to
+     *        a power of two, and at least 64.
+     */
+    public SymbolBuffer(final int capacity) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity must be from 1 to 2^30: "+capacity);
+        }
+
+        int words = 1;
+        while (words * 64 < capacity) {
+            words <<= 1;
+        }
+
+        this.words    = new long[words];
+        this.wordMask = words - 1;
+        this.head     = 0;
+        this.tail     = 0;
+    }
+
+    /**
+     * Return the number of symbols in the buffer.
+     *
+     * @return the number of symbols in the buffer.
+     */
+    public int size() {
+        return tail - head;
+    }
+
+    /**
+     * Return the number of symbols the buffer can hold.
+     *
+     * @return the number of symbols the buffer can hold.
+     */
+    public int capacity() {
+        return words.length << 6;
+    }
+
+    /**
+     * Return the number of symbols that may be added before the buffer is full.
+     *
+     * @return the number of symbols that may be added before the buffer is full.
+     */
+    public int remaining() {
+        return capacity() - size();
+    }
+
+    /**
+     * Throw an exception if {@code count} more symbols do not fit.
+     */
+    private void checkRoom(final int count) throws IOException {
+        if (count > remaining()) {
+            throw new IOException("Symbol buffer of "+capacity()+" symbols has no room for "+count+" more.");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IOException if the symbol is not a 1 or 0 or if the buffer is full.
+     */
+    @Override
+    public void putSymbol(final int symbol) throws IOException {
+        if ((symbol & ~1) != 0) {
+            throw new IOException("Symbol "+symbol+" was not a 1 or 0.");
+        }
+
+        checkRoom(1);
+
+        final int  word = (tail >>> 6) & wordMask;
+        final long bit  = 1L << tail;
+
+        words[word] = (symbol == 0) ? words[word] & ~bit : words[word] | bit;
+        ++tail;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IOException if there is not room for {@code count} symbols.
+     */
+    @Override
+    public void putSymbols(final long symbols, final int count) throws IOException {
+        if (count < 0 || count > 64) {
+            throw new IllegalArgumentException("Count must be from 0 to 64: "+count);
+        }
+        if (count == 0) {
+            return;
+        }
+
+        checkRoom(count);
+
+        final long mask  = (count == 64) ? -1L : (1L << count) - 1;
+        final long bits  = symbols & mask;
+        final int  word  = (tail >>> 6) & wordMask;
+        final int  shift = tail & 63;
+
+        words[word] = (words[word] & ~(mask << shift)) | (bits << shift);
+        if (shift + count > 64) {
+            final int next = (word + 1) & wordMask;
+            words[next] = (words[next] & ~(mask >>> (64 - shift))) | (bits >>> (64 - shift));
+        }
+
+        tail += count;
+    }
+
+    /**
+     * Append symbols stored one to a byte.
+     *
+     * @param symbols The array of 1s and 0s. Any other value is an error.
+     * @param off Offset into symbols at which to start.
+     * @param len The number of symbols to append.
+     *
+     * @throws IOException if a value in {@code symbols} is not a 1 or 0 or if there is not room
+     *         for {@code len} symbols. No symbols are appended.
+     */
+    public void append(final byte[] symbols, final int off, final int len) throws IOException {
+        for (int i = 0; i < len; ++i) {
+            if ((symbols[off+i] & ~1) != 0) {
+                throw new IOException("Symbol at index "+i+" was not a 1 or 0.");
+            }
+        }
+
+        checkRoom(len);
+
+        for (int i = 0; i < len; ) {
+            final int count = Math.min(64, len - i);
+            long bits = 0;
+            for (int j = 0; j < count; ++j) {
+                bits |= (long) symbols[off+i+j] << j;
+            }
+            putSymbols(bits, count);
+            i += count;
+        }
+    }
+
+    /**
+     * Return a single symbol.
+     *
+     * @param index The index of the symbol, counted from the head of the buffer.
+     *
+     * @return The symbol, a 1 or 0.
+     *
+     * @throws IndexOutOfBoundsException if there is no such symbol.
+     */
+    public int peek(final int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index "+index+" of "+size()+" symbols.");
+        }
+
+        final int position = head + index;
+
+        return (int) (words[(position >>> 6) & wordMask] >>> position) & 1;
+    }
+
+    /**
+     * Return several symbols at once.
+     *
+     * @param index The index of the first symbol, counted from the head of the buffer.
+     * @param count The number of symbols, from 0 to 64.
+     *
+     * @return The symbols, the first in the lowest bit. Higher bits are 0.
+     *
+     * @throws IndexOutOfBoundsException if there are not {@code count} symbols from {@code index}.
+     */
+    public long peekSymbols(final int index, final int count) {
+        if (index < 0 || count < 0 || count > 64 || index + count > size()) {
+            throw new IndexOutOfBoundsException(count+" symbols at index "+index+" of "+size()+" symbols.");
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        final int position = head + index;
+        final int word     = (position >>> 6) & wordMask;
+        final int shift    = position & 63;
+
+        long bits = words[word] >>> shift;
+        if (shift + count > 64) {
+            bits |= words[(word + 1) & wordMask] << (64 - shift);
+        }
+
+        return (count == 64) ? bits : bits & ((1L << count) - 1);
+    }
+
+    /**
+     * Copy symbols out one to a byte.
+     *
+     * @param index The index of the first symbol, counted from the head of the buffer.
+     * @param dst The array to copy 1s and 0s into.
+     * @param off The offset into {@code dst} to start at.
+     * @param len The number of symbols to copy.
+     *
+     * @throws IndexOutOfBoundsException if there are not {@code len} symbols from {@code index}.
+     */
+    public void copyTo(final int index, final byte[] dst, final int off, final int len) {
+        for (int i = 0; i < len; ) {
+            final int count = Math.min(64, len - i);
+            final long bits = peekSymbols(index + i, count);
+            for (int j = 0; j < count; ++j) {
+                dst[off+i+j] = (byte) ((bits >>> j) & 1);
+            }
+            i += count;
+        }
+    }
+
+    /**
+     * Write every symbol to an {@link OutputStream}, one to a byte, and remove them.
+     *
+     * This adapts the buffer to code that expects symbols from {@link OutputStream#write(int)}.
+     *
+     * @param os The stream to write 1s and 0s to.
+     *
+     * @throws IOException on errors writing to {@code os}.
+     */
+    public void writeTo(final OutputStream os) throws IOException {
+        for (int i = 0; i < size(); ) {
+            final int count = Math.min(64, size() - i);
+            final long bits = peekSymbols(i, count);
+            for (int j = 0; j < count; ++j) {
+                os.write((int) (bits >>> j) & 1);
+            }
+            i += count;
+        }
+
+        clear();
+    }
+
+    /**
+     * Remove symbols from the head of the buffer.
+     *
+     * @param count The number of symbols to remove.
+     *
+     * @throws IndexOutOfBoundsException if there are fewer than {@code count} symbols.
+     */
+    public void consume(final int count) {
+        if (count < 0 || count > size()) {
+            throw new IndexOutOfBoundsException("Cannot consume "+count+" of "+size()+" symbols.");
+        }
+
+        head += count;
+    }
+
+    /**
+     * Remove all symbols.
+     */
+    public void clear() {
+        head = tail;
+    }
+}
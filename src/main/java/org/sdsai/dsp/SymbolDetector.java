@@ -0,0 +1,59 @@
+package org.sdsai.dsp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Something that turns 16 bit, big endian, signed audio into a stream of 1 and 0 symbols.
+ *
+ * This is what {@link BpskInputStream} needs to decode Varicode from audio.
+ */
+public interface SymbolDetector {
+
+    /**
+     * Demodulate audio, passing each detected symbol, a 1 or 0, to {@code sink}.
+     *
+     * @param data Raw audio data.
+     * @param off The offset into the buffer to operate on.
+     * @param len The length of data to operate on. This is a whole number of frames.
+     * @param sink The sink that symbols are put into as they are detected.
+     *
+     * @throws IOException on errors from {@code sink}.
+     */
+    void detectSignal(byte[] data, int off, int len, SymbolSink sink) throws IOException;
+
+    /**
+     * Demodulate audio, writing each detected symbol, a 1 or 0, to {@code os}.
+     *
+     * This adapts {@link #detectSignal(byte[], int, int, SymbolSink)} to an {@link OutputStream}.
+     *
+     * @param data Raw audio data.
+     * @param off The offset into the buffer to operate on.
+     * @param len The length of data to operate on. This is a whole number of frames.
+     * @param os Output stream that symbols are written to as they are detected.
+     *
+     * @throws IOException on errors writing to {@code os}.
+     */
+    void detectSignal(byte[] data, int off, int len, OutputStream os) throws IOException;
+
+    /**
+     * Return the size of a single audio frame in bytes.
+     *
+     * @return the size of a single audio frame in bytes.
+     */
+    int getFrameSize();
+
+    /**
+     * Return the sample rate.
+     *
+     * @return The sample rate.
+     */
+    int getSampleRate();
+
+    /**
+     * Return the number of symbols per second.
+     *
+     * @return the number of symbols per second.
+     */
+    double getSymbolRate();
+}
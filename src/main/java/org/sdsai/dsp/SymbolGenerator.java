@@ -0,0 +1,42 @@
+package org.sdsai.dsp;
+
+import java.io.IOException;
+
+/**
+ * Something that turns a stream of 1 and 0 symbols into 16 bit, big endian, signed audio.
+ *
+ * This is what {@link BpskOutputStream} needs to send Varicode as audio.
+ */
+public interface SymbolGenerator {
+
+    /**
+     * Given an array of 1s or 0s generate audio into a caller owned buffer.
+     *
+     * @param symbols The array of 1s and 0s. Any other value is an error.
+     * @param off Offset into symbols at which to start.
+     * @param len The number of symbols to generate.
+     * @param out The buffer to write audio into.
+     *        It must have {@link #getSignalLength(int)} bytes available after {@code outOff}.
+     * @param outOff The offset into out to start writing at.
+     *
+     * @throws IOException if a value in {@code symbols} is not a 1 or 0.
+     * @return The number of bytes written.
+     */
+    int generateSignal(byte[] symbols, int off, int len, byte[] out, int outOff) throws IOException;
+
+    /**
+     * Return the number of bytes of audio that encode the given number of symbols.
+     *
+     * @param symbols The number of symbols.
+     *
+     * @return the number of bytes of audio that encode the given number of symbols.
+     */
+    int getSignalLength(int symbols);
+
+    /**
+     * Return the sample rate.
+     *
+     * @return The sample rate.
+     */
+    int getSampleRate();
+}
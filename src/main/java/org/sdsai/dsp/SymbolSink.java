@@ -0,0 +1,31 @@
+package org.sdsai.dsp;
+
+import java.io.IOException;
+
+/**
+ * Something that accepts the 1 and 0 symbols produced by a {@link SymbolDetector}.
+ *
+ * This replaces writing each symbol to an {@link java.io.OutputStream} as a whole byte.
+ * See {@link SymbolBuffer}.
+ */
+public interface SymbolSink {
+
+    /**
+     * Accept a single symbol.
+     *
+     * @param symbol The symbol, a 1 or 0.
+     *
+     * @throws IOException if the symbol is not a 1 or 0 or cannot be stored.
+     */
+    void putSymbol(int symbol) throws IOException;
+
+    /**
+     * Accept several symbols at once.
+     *
+     * @param symbols The symbols, the first in the lowest bit.
+     * @param count The number of symbols, from 0 to 64. Bits of {@code symbols} above this are ignored.
+     *
+     * @throws IOException if the symbols cannot be stored.
+     */
+    void putSymbols(long symbols, int count) throws IOException;
+}
@@ -0,0 +1,166 @@
+package org.sdsai.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Decode a stream of Varicode symbols into characters, one symbol at a time.
+ *
+ * Every Varicode character starts and ends with a 1 and never contains two 0s in a row,
+ * so characters are delimited by {@code 00}. Symbols are shifted into an integer register.
+ * When two 0s arrive in a row the symbols before them are the code word of a character,
+ * and because every code word starts with a 1 its value alone gives both its length and
+ * its index into a direct lookup table. Each symbol costs a shift, a test and, at the end
+ * of a character, one array read.
+ */
+public final class VaricodeDecoder {
+
+    /**
+     * Returned by {@link #decode(int)} when no character was completed.
+     */
+    public static final int NO_CHARACTER = -1;
+
+    /**
+     * The longest code word in {@link BpskOutputStream#CHARSET}, not counting the terminating {@code 00}.
+     */
+    public static final int LONGEST_CODE;
+
+    /**
+     * The character of each code word, indexed by the code word read as a binary number,
+     * first symbol highest. Entries that are not a character hold {@link #NO_CHARACTER}.
+     */
+    private static final int[] CHARACTERS;
+
+    /**
+     * A register value larger than any code word and its terminator. The register saturates here
+     * so a long run of symbols without a {@code 00} can not overflow it.
+     */
+    private static final int SATURATED;
+
+    static {
+        int longest = 0;
+        for (int c = 0; c < BpskOutputStream.CHARSET.length; ++c) {
+            if (BpskOutputStream.CHARSET[c] != null && longest < BpskOutputStream.CHARSET[c].length) {
+                longest = BpskOutputStream.CHARSET[c].length;
+            }
+        }
+
+        LONGEST_CODE = longest;
+        SATURATED    = 1 << (longest + 2);
+        CHARACTERS   = new int[1 << longest];
+
+        Arrays.fill(CHARACTERS, NO_CHARACTER);
+
+        for (int c = 0; c < BpskOutputStream.CHARSET.length; ++c) {
+            if (BpskOutputStream.CHARSET[c] != null) {
+                final int word = codeWord(BpskOutputStream.CHARSET[c], 0, BpskOutputStream.CHARSET[c].length);
+
+                if (CHARACTERS[word] != NO_CHARACTER) {
+                    throw new IllegalStateException("Character "+c+"'s code is already used by character "+CHARACTERS[word]);
+                }
+
+                CHARACTERS[word] = c;
+            }
+        }
+    }
+
+    /**
+     * The symbols received since the last {@code 00}, the most recent in the lowest bit.
+     */
+    private int register;
+
+    /**
+     * Constructor.
+     */
+    public VaricodeDecoder() {
+        this.register = 0;
+    }
+
+    /**
+     * Read symbols as a code word, the first symbol highest.
+     *
+     * @param symbols The array of 1s and 0s.
+     * @param off Offset into symbols at which to start.
+     * @param len The number of symbols.
+     *
+     * @return The code word.
+     */
+    private static int codeWord(final byte[] symbols, final int off, final int len) {
+        int word = 0;
+        for (int i = off; i < off + len; ++i) {
+            word = (word << 1) | (symbols[i] & 1);
+        }
+        return word;
+    }
+
+    /**
+     * Return the character a code word, not including its terminating {@code 00}, stands for.
+     *
+     * @param symbols The array of 1s and 0s.
+     * @param off Offset into symbols at which to start.
+     * @param len The number of symbols.
+     *
+     * @return The character or {@link #NO_CHARACTER} if the symbols are not a character.
+     */
+    public static int lookup(final byte[] symbols, final int off, final int len) {
+        if (len < 1 || len > LONGEST_CODE) {
+            return NO_CHARACTER;
+        }
+
+        return CHARACTERS[codeWord(symbols, off, len)];
+    }
+
+    /**
+     * Decode the next symbol.
+     *
+     * @param symbol The symbol, a 1 or 0. Only the lowest bit is used.
+     *
+     * @return The character completed by this symbol or {@link #NO_CHARACTER}.
+     *         Symbols between two {@code 00} delimiters that are not a character are dropped.
+     */
+    public int decode(final int symbol) {
+        final int r = (register << 1) | (symbol & 1);
+
+        /* Two 0s in a row end a character. */
+        if ((r & 3) == 0) {
+            register = 0;
+
+            final int word = r >>> 2;
+
+            return (word < CHARACTERS.length) ? CHARACTERS[word] : NO_CHARACTER;
+        }
+
+        /* Too long to be a character. Keep only the last symbol to find the next 00. */
+        register = (r < SATURATED) ? r : SATURATED | (r & 1);
+
+        return NO_CHARACTER;
+    }
+
+    /**
+     * Return the state of this decoder, which is the symbols of any partially received character.
+     *
+     * @return the state of this decoder, to be given to {@link #restore(int)}.
+     */
+    public int snapshot() {
+        return register;
+    }
+
+    /**
+     * Return this decoder to a state returned by {@link #snapshot()}.
+     *
+     * @param state The state to return to.
+     */
+    public void restore(final int state) {
+        if (state < 0 || state > (SATURATED | 1)) {
+            throw new IllegalArgumentException("Not a Varicode decoder state: "+state);
+        }
+
+        register = state;
+    }
+
+    /**
+     * Discard any partially received character.
+     */
+    public void reset() {
+        register = 0;
+    }
+}
@@ -0,0 +1,147 @@
+package org.sdsai.dsp;
+
+import java.util.Arrays;
+
+/**
+ * A soft decision Viterbi decoder for the {@link ConvolutionalEncoder} code.
+ *
+ * Each call to {@link #decode(int, int)} takes the soft values of one two bit symbol
+ * and returns the bit decided {@link #DELAY} symbols earlier. The add-compare-select
+ * step works on {@code int} path metrics in primitive arrays without branches, and no
+ * memory is allocated after construction, so many decoders may run side by side cheaply.
+ */
+public final class ViterbiDecoder {
+
+    /**
+     * The number of symbols of history traced back to decide a bit.
+     */
+    public static final int DELAY = 24;
+
+    /**
+     * The number of steps of decisions kept. This is a power of two larger than {@link #DELAY}.
+     */
+    private static final int HISTORY = 32;
+
+    private static final int STATES = ConvolutionalEncoder.STATES;
+
+    /**
+     * The symbol produced by every encoder register.
+     */
+    private static final int[] SYMBOLS = new int[2 * STATES];
+
+    static {
+        for (int register = 0; register < SYMBOLS.length; ++register) {
+            SYMBOLS[register] = ConvolutionalEncoder.symbol(register);
+        }
+    }
+
+    /**
+     * The path metric of every state. Larger is better.
+     */
+    private int[] metrics;
+
+    /**
+     * The path metrics being computed by the current step.
+     */
+    private int[] nextMetrics;
+
+    /**
+     * The branch metric of each of the four symbols for the current step.
+     */
+    private final int[] branchMetrics;
+
+    /**
+     * For every step, bit {@code s} is set if state {@code s} was entered from the predecessor
+     * whose oldest bit is 1.
+     */
+    private final int[] decisions;
+
+    /**
+     * The number of steps decoded.
+     */
+    private long steps;
+
+    /**
+     * Constructor.
+     */
+    public ViterbiDecoder() {
+        this.metrics       = new int[STATES];
+        this.nextMetrics   = new int[STATES];
+        this.branchMetrics = new int[4];
+        this.decisions     = new int[HISTORY];
+        this.steps         = 0;
+    }
+
+    /**
+     * Decode one symbol.
+     *
+     * @param soft1 The soft value of the high bit of the symbol. Positive values favor a 1.
+     *        Values should be no larger than about {@code 2^20} in magnitude.
+     * @param soft0 The soft value of the low bit of the symbol.
+     *
+     * @return The decoded bit from {@link #DELAY} symbols before this one, or -1 if no more
+     *         than {@link #DELAY} symbols have been decoded.
+     */
+    public int decode(final int soft1, final int soft0) {
+        final int[] bm = branchMetrics;
+        bm[0] = -soft1 - soft0;
+        bm[1] = -soft1 + soft0;
+        bm[2] =  soft1 - soft0;
+        bm[3] =  soft1 + soft0;
+
+        final int[] m    = metrics;
+        final int[] next = nextMetrics;
+        int decision     = 0;
+
+        /* Add, compare and select. State ns is entered from (ns >> 1) or ((ns >> 1) | 8). */
+        for (int ns = 0; ns < STATES; ++ns) {
+            final int m0   = m[ns >> 1] + bm[SYMBOLS[ns]];
+            final int m1   = m[(ns >> 1) | (STATES >> 1)] + bm[SYMBOLS[ns | STATES]];
+            final int diff = m0 - m1;
+            final int d    = diff >>> 31;
+
+            next[ns]  = m0 - (diff & -d);
+            decision |= d << ns;
+        }
+
+        /* Keep metrics bounded and find the best state. */
+        final int base      = next[0];
+        int       best      = 0;
+        int       bestValue = 0;
+        for (int s = 0; s < STATES; ++s) {
+            final int value  = next[s] - base;
+            final int better = (bestValue - value) >> 31;
+
+            next[s]   = value;
+            best      = (s & better) | (best & ~better);
+            bestValue = (value & better) | (bestValue & ~better);
+        }
+
+        metrics     = next;
+        nextMetrics = m;
+
+        final int step = (int)(steps++ & (HISTORY - 1));
+        decisions[step] = decision;
+
+        if (steps <= DELAY) {
+            return -1;
+        }
+
+        /* Trace back to the state DELAY steps ago. Its newest bit is the decision. */
+        int s = best;
+        for (int i = 0; i < DELAY; ++i) {
+            final int d = (decisions[(step - i) & (HISTORY - 1)] >>> s) & 1;
+            s = (s >> 1) | (d << (ConvolutionalEncoder.K - 2));
+        }
+
+        return s & 1;
+    }
+
+    /**
+     * Forget all history.
+     */
+    public void reset() {
+        Arrays.fill(metrics, 0);
+        steps = 0;
+    }
+}
@@ -15,6 +15,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.ByteArrayInputStream;
 import org.junit.Assert;
 import javax.sound.sampled.AudioFormat;
+import java.lang.management.ManagementFactory;
 
 import static org.junit.matchers.JUnitMatchers.containsString;
 
@@ -46,4 +47,277 @@ public class BpskDetectGeneratedTest
         }
         Assert.assertThat(result, containsString(testString));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void readGeneratedAtEachRate() throws IOException {
+        final double[] rates = {
+            BpskGenerator.PSK31_SYMBOLS_PER_SECOND,
+            BpskGenerator.PSK63_SYMBOLS_PER_SECOND,
+            BpskGenerator.PSK125_SYMBOLS_PER_SECOND,
+            BpskGenerator.PSK250_SYMBOLS_PER_SECOND
+        };
+        final String testString = "The quick brown fox jumps over the lazy dog 0123456789.";
+
+        for (final double rate : rates) {
+            for (final int sampleRate : new int[]{ 8000, 11025, 44100 }) {
+                final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                final BpskOutputStream os = new BpskOutputStream(bos, 1500, sampleRate, rate);
+
+                /* Send about half a second of preamble and postamble at every rate. */
+                os.preamble((int)(rate / 2));
+                os.write(testString.getBytes());
+                os.postamble((int)(rate / 2));
+                os.close();
+
+                final BpskInputStream is = new BpskInputStream(
+                    new ByteArrayInputStream(bos.toByteArray()), 1500, sampleRate, rate);
+
+                final byte[] bytes = new byte[1024];
+                String result = "";
+                for (int read = is.read(bytes); read != -1; read = is.read(bytes)) {
+                    result += new String(bytes, 0, read);
+                }
+
+                Assert.assertThat(rate+" symbols/s at "+sampleRate+": "+result, containsString(testString));
+            }
+        }
+    }
+
+    @Test
+    public void steadyStateDoesNotAllocate() throws IOException {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+
+        final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long thread = Thread.currentThread().getId();
+
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20; ++i) {
+            text.append("The quick brown fox jumps over the lazy dog. ");
+        }
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final BpskOutputStream os = new BpskOutputStream(bos, 1000, 8000, BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+        os.preamble(32);
+        os.write(text.toString().getBytes());
+        os.postamble(32);
+        os.close();
+
+        final BpskInputStream is = new BpskInputStream(
+            new ByteArrayInputStream(bos.toByteArray()), 1000, 8000, BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+
+        final byte[] bytes = new byte[text.length()];
+        int read = 0;
+
+        /* Warm up on the first few characters. */
+        while (read < 50) {
+            bytes[read++] = (byte) is.read();
+        }
+
+        final long before = threads.getThreadAllocatedBytes(thread);
+        for (int c = is.read(); c != -1 && read < bytes.length; c = is.read()) {
+            bytes[read++] = (byte) c;
+        }
+        final long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        Assert.assertThat(new String(bytes, 0, read), containsString("lazy dog. The quick"));
+        Assert.assertTrue("Allocated "+allocated+" bytes.", allocated < 1024);
+    }
+
+    @Test
+    public void bulkReadReturnsWhenCharactersAreReady() throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final BpskOutputStream os = new BpskOutputStream(bos, 1000, 8000, BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+        final String testString = "The quick brown fox jumps over the lazy dog.";
+        os.preamble(32);
+        os.write(testString.getBytes());
+        os.postamble(32);
+        os.close();
+
+        /* Like a live audio line, never report audio as available without blocking. */
+        class LineInputStream extends ByteArrayInputStream {
+            LineInputStream(final byte[] data) {
+                super(data);
+            }
+
+            @Override
+            public synchronized int available() {
+                return 0;
+            }
+
+            int unread() {
+                return count - pos;
+            }
+        }
+        final LineInputStream audio = new LineInputStream(bos.toByteArray());
+
+        final BpskInputStream is = new BpskInputStream(audio, 1000, 8000, BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+        final byte[] bytes = new byte[1024];
+
+        final int first = is.read(bytes);
+        Assert.assertTrue("Read "+first+" characters.", first > 0 && first < testString.length());
+        Assert.assertTrue("Most of the audio is still unread.", audio.unread() > bos.size() / 2);
+
+        String result = new String(bytes, 0, first);
+        for (int read = is.read(bytes); read != -1; read = is.read(bytes)) {
+            result += new String(bytes, 0, read);
+        }
+        Assert.assertThat(result, containsString(testString));
+    }
+
+    @Test
+    public void charactersAreReadyAfterTheirTerminator() throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final BpskOutputStream os = new BpskOutputStream(bos, 1000, 8000, BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+        final String testString = "e e tee eat";
+        os.preamble(32);
+        os.write(testString.getBytes());
+        os.postamble(32);
+        os.close();
+
+        final BpskInputStream is = new BpskInputStream(
+            new ByteArrayInputStream(bos.toByteArray()), 1000, 8000, BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+
+        /* The terminating 00 plus one read of audio. */
+        final double limit = 3.0 / BpskGenerator.PSK31_SYMBOLS_PER_SECOND;
+
+        String result = "";
+        for (int c = is.read(); c != -1; c = is.read()) {
+            result += (char) c;
+            Assert.assertTrue("Latency of "+(char) c+" was "+is.getLatency(), is.getLatency() <= limit);
+        }
+
+        Assert.assertThat(result, containsString(testString));
+    }
+
+    @Test
+    public void productDecisionsMatchAngleDecisions() throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final BpskOutputStream os = new BpskOutputStream(bos, 1000, 8000, BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+        os.preamble(32);
+        os.write("The quick brown fox jumps over the lazy dog 0123456789.".getBytes());
+        os.postamble(32);
+        os.close();
+
+        /* Enough noise that some windows are near the 90 degree boundary. */
+        final byte[] audio = bos.toByteArray();
+        final ChannelSimulator channel = new ChannelSimulator(8000, 1);
+        channel.setSignalToNoise(6);
+        channel.process(audio);
+
+        final BpskDetector angles = new BpskDetector(1000, 8000);
+        angles.setAngleDecisions(true);
+
+        final BpskDetector products = new BpskDetector(1000, 8000);
+
+        Assert.assertArrayEquals(
+            angles.detectSignal(audio, 0, audio.length),
+            products.detectSignal(audio, 0, audio.length));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectBadReversalThreshold() {
+        new BpskDetector().setReversalThreshold(1);
+    }
+
+    @Test
+    public void restoreSnapshot() throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final BpskOutputStream os = new BpskOutputStream(bos, 1000, 8000, BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+        os.preamble(32);
+        os.write("The quick brown fox jumps over the lazy dog 0123456789.".getBytes());
+        os.postamble(32);
+        os.close();
+        final byte[] audio = bos.toByteArray();
+
+        /* Stop part way through a window. */
+        final int half = (audio.length / 2 + 77) & ~1;
+
+        final BpskDetector detector = new BpskDetector(1000, 8000);
+        detector.detectSignal(audio, 0, half);
+        final BpskDetector.Snapshot snapshot = detector.snapshot();
+        final byte[] expected = detector.detectSignal(audio, half, audio.length - half);
+
+        /* A detector tuned elsewhere takes the tuning from the snapshot too. */
+        final BpskDetector restored = new BpskDetector(1500, 8000);
+        restored.restore(snapshot);
+
+        Assert.assertArrayEquals(expected, restored.detectSignal(audio, half, audio.length - half));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectSnapshotAtOtherSampleRate() {
+        new BpskDetector(1000, 11025).restore(new BpskDetector(1000, 8000).snapshot());
+    }
+
+    @Test
+    public void retuneFromAnotherThreadWithoutAllocating() throws Exception {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+
+        final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long thread = Thread.currentThread().getId();
+
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20; ++i) {
+            text.append("The quick brown fox jumps over the lazy dog. ");
+        }
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final BpskOutputStream os = new BpskOutputStream(bos, 1000, 8000, BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+        os.preamble(32);
+        os.write(text.toString().getBytes());
+        os.postamble(32);
+        os.close();
+        final byte[] audio = bos.toByteArray();
+
+        final VaricodeDecoder varicode = new VaricodeDecoder();
+        final StringBuilder result = new StringBuilder(2 * text.length());
+        final SymbolSink sink = new SymbolSink() {
+            @Override
+            public void putSymbol(final int symbol) {
+                final int c = varicode.decode(symbol);
+                if (c != VaricodeDecoder.NO_CHARACTER) {
+                    result.append((char) c);
+                }
+            }
+
+            @Override
+            public void putSymbols(final long symbols, final int count) {
+                for (int i = 0; i < count; ++i) {
+                    putSymbol((int) (symbols >>> i) & 1);
+                }
+            }
+        };
+
+        /* Start mistuned, as if waiting for a click on the signal. */
+        final BpskDetector detector = new BpskDetector(1500, 8000);
+        final int quarter = audio.length / 4 & ~1;
+        for (int i = 0; i < quarter; i += 512) {
+            detector.detectSignal(audio, i, Math.min(512, quarter - i), sink);
+        }
+
+        final Thread ui = new Thread() {
+            @Override
+            public void run() {
+                detector.tune(1000);
+            }
+        };
+        ui.start();
+        ui.join();
+        Assert.assertEquals(1000, detector.getFrequency(), 0);
+
+        final long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = quarter; i < audio.length; i += 512) {
+            detector.detectSignal(audio, i, Math.min(512, audio.length - i), sink);
+        }
+        final long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        Assert.assertThat(result.toString(), containsString("lazy dog. The quick"));
+        Assert.assertTrue("Allocated "+allocated+" bytes.", allocated < 1024);
+    }
+}
@@ -23,6 +23,23 @@ import static org.junit.matchers.JUnitMatchers.containsString;
  */
 public class BpskDetectLiveTest {
 
+    /**
+     * Read and print characters as they are decoded, returning everything read.
+     */
+    private static String readAll(final BpskInputStream is) throws IOException {
+        final byte[] bytes = new byte[1024];
+        final StringBuilder result = new StringBuilder();
+
+        for (int read = is.read(bytes); read != -1; read = is.read(bytes)) {
+            final String text = new String(bytes, 0, read);
+            System.out.print(text);
+            result.append(text);
+        }
+        System.out.println();
+
+        return result.toString();
+    }
+
     @Test
     public void readFilteredLivePskFileLinpsk() throws IOException, UnsupportedAudioFileException {
 
@@ -37,12 +54,9 @@ public class BpskDetectLiveTest {
                 (int)audioInputStream.getFormat().getSampleRate(),
                 BpskGenerator.PSK31_SYMBOLS_PER_SECOND));
 
-        final byte[] bytes = new byte[1024];
-
-        final int read = is.read(bytes);
-        System.out.println(new String(bytes, 0, read));
+        final String read = readAll(is);
         Assert.assertTrue(
-            new String(bytes, 0, read).
+            read.
                 contains(
                     "CQ CQ CQ de N2SWT N2SWT K\n"+
                     "CQ CQ CQ de N2SWT N2SWT K\n"+
@@ -65,16 +79,61 @@ public class BpskDetectLiveTest {
                 (int)audioInputStream.getFormat().getSampleRate(),
                 BpskGenerator.PSK31_SYMBOLS_PER_SECOND));
 
-        final byte[] bytes = new byte[1024];
-
-        final int read = is.read(bytes);
-        System.out.println(new String(bytes, 0, read));
+        final String read = readAll(is);
         Assert.assertEquals(
             "CQ CQ CQ de N2SWT N2SWT K\n"+
             "CQ CQ CQ de N2SWT N2SWT K\n"+
             "No one out there? Too bad!\n"+
             "N2SWT SK",
-            new String(bytes, 1, read-1));
+            read.substring(1));
+    }
+
+    @Test
+    public void readLivePskFileLinpskAcquired() throws IOException, UnsupportedAudioFileException {
+
+        final AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(
+            new AudioFormat(44100, 16, 1, true, true),
+            AudioSystem.getAudioInputStream(getClass().getResourceAsStream("cq.wav")));
+
+        /* The carrier is found from the signal rather than given. */
+        final BpskInputStream is = new BpskInputStream(
+            audioInputStream,
+            new AcquiringDetector(
+                (int)audioInputStream.getFormat().getSampleRate(),
+                BpskGenerator.PSK31_SYMBOLS_PER_SECOND));
+
+        final String read = readAll(is);
+        Assert.assertThat(
+            read,
+            containsString(
+                "CQ CQ CQ de N2SWT N2SWT K\n"+
+                "CQ CQ CQ de N2SWT N2SWT K\n"+
+                "No one out there? Too bad!\n"+
+                "N2SWT SK"));
+    }
+
+    @Test
+    public void readLivePskFileLinpskMatchedFilter() throws IOException, UnsupportedAudioFileException {
+
+        final AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(
+            new AudioFormat(44100, 16, 1, true, true),
+            AudioSystem.getAudioInputStream(getClass().getResourceAsStream("cq.wav")));
+
+        final BpskInputStream is = new BpskInputStream(
+            audioInputStream,
+            new MatchedFilterBpskDetector(
+                973,
+                (int)audioInputStream.getFormat().getSampleRate(),
+                BpskGenerator.PSK31_SYMBOLS_PER_SECOND));
+
+        final String read = readAll(is);
+        Assert.assertThat(
+            read,
+            containsString(
+                "CQ CQ CQ de N2SWT N2SWT K\n"+
+                "CQ CQ CQ de N2SWT N2SWT K\n"+
+                "No one out there? Too bad!\n"+
+                "N2SWT SK"));
     }
 
     @Test
@@ -90,13 +149,10 @@ public class BpskDetectLiveTest {
                 (int)audioInputStream.getFormat().getSampleRate(),
                 BpskGenerator.PSK31_SYMBOLS_PER_SECOND));
 
-        final byte[] bytes = new byte[1024];
-
-        final int read = is.read(bytes);
-        System.out.println(new String(bytes, 0, read));
+        final String read = readAll(is);
 
         Assert.assertTrue(
-            new String(bytes, 0, read).contains("I am the very model of a modern, major, general."));
+            read.contains("I am the very model of a modern, major, general."));
     }
 
     @Test
@@ -112,13 +168,10 @@ public class BpskDetectLiveTest {
                 (int)audioInputStream.getFormat().getSampleRate(),
                 BpskGenerator.PSK31_SYMBOLS_PER_SECOND));
 
-        final byte[] bytes = new byte[1024];
-
-        final int read = is.read(bytes);
-        System.out.println(new String(bytes, 0, read));
+        final String read = readAll(is);
 
         Assert.assertTrue(
-            new String(bytes, 0, read).contains("I am the very model of a modern, major, general."));
+            read.contains("I am the very model of a modern, major, general."));
 
     }
 
@@ -9,6 +9,8 @@ import javax.sound.sampled.LineUnavailableException;
 import java.io.IOException;
 import org.junit.Assert;
 
+import static org.junit.Assert.assertEquals;
+
 import static org.sdsai.ContainsByteArray.containsByteArray;
 
 public class BpskGeneratorTest {
@@ -177,6 +179,165 @@ public class BpskGeneratorTest {
         Assert.assertThat(testPattern, containsByteArray(checkPattern));
     }
 
+    @Test
+    public void matchesDirectSynthesis() throws IOException {
+        final byte[] testPattern = new byte[]{0,0,1,1,0,1,0,0,0,1,1,1,0,1,0,0,1,1,0,0};
+        final double[][] configs = {
+            { 1000, 44100, 31.25 },
+            { 1000,  8000, 31.25 },
+            {  700, 11025, 62.5  },
+            { 1500, 48000, 125   },
+        };
+
+        for (final double[] config : configs) {
+            final BpskGenerator gen = new BpskGenerator(config[0], (int)config[1], config[2]);
+
+            /* Generate twice so the second call starts part way through the carrier. */
+            for (int call = 0; call < 2; ++call) {
+                final byte[] expected = directSynthesis(config[0], (int)config[1], config[2], testPattern, call);
+                final byte[] actual   = gen.generateSignal(testPattern);
+
+                assertEquals(expected.length, actual.length);
+                for (int i = 0; i < expected.length; i += 2) {
+                    final short e = (short)(((expected[i] << 8) & 0xff00) | (expected[i+1] & 0xff));
+                    final short a = (short)(((actual[i] << 8) & 0xff00) | (actual[i+1] & 0xff));
+                    Assert.assertTrue(
+                        String.format("%s sample %d expected %d got %d", java.util.Arrays.toString(config), i/2, e, a),
+                        Math.abs(e - a) < Short.MAX_VALUE * 0.02);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void generateIntoCallerBuffers() throws IOException {
+        final byte[] testPattern = new byte[]{0,1,0,1,1,0,0,0,1};
+
+        /* 44100 renders each symbol, 8000 copies cached templates. */
+        for (final int sampleRate : new int[]{ 44100, 8000 }) {
+            final byte[] expected = new BpskGenerator(1000, sampleRate).generateSignal(testPattern);
+
+            final BpskGenerator arrayGen = new BpskGenerator(1000, sampleRate);
+            final byte[] array = new byte[expected.length + 3];
+            assertEquals(expected.length, arrayGen.getSignalLength(testPattern.length));
+            assertEquals(expected.length, arrayGen.generateSignal(testPattern, 0, testPattern.length, array, 3));
+            Assert.assertArrayEquals(expected, java.util.Arrays.copyOfRange(array, 3, array.length));
+
+            final BpskGenerator bufferGen = new BpskGenerator(1000, sampleRate);
+            final java.nio.ByteBuffer direct = java.nio.ByteBuffer.allocateDirect(expected.length);
+            assertEquals(expected.length, bufferGen.generateSignal(testPattern, 0, testPattern.length, direct));
+            assertEquals(0, direct.remaining());
+            direct.flip();
+            final byte[] fromDirect = new byte[expected.length];
+            direct.get(fromDirect);
+            Assert.assertArrayEquals(expected, fromDirect);
+        }
+    }
+
+    @Test
+    public void encodeDecodeShapedPulses() throws IOException {
+        final byte[] testPattern = new byte[]{1,0,1,0,1,0,1,0,1,1,0,0,0,1,0,1,0,1,1,0,0,1};
+        final PulseShape[] shapes = {
+            PulseShape.raisedCosine(0.8, 4),
+            PulseShape.rootRaisedCosine(0.5, 6),
+        };
+
+        for (final PulseShape shape : shapes) {
+            /* 44100 renders each symbol, 8000 copies cached templates. */
+            for (final int sampleRate : new int[]{ 44100, 8000 }) {
+                final BpskGenerator gen = new BpskGenerator(1000, sampleRate, 31.25, shape);
+                final BpskDetector det = new BpskDetector(1000, sampleRate);
+
+                /* Follow the pattern with idle reversals so the last symbols are not truncated. */
+                final byte[] signal = gen.generateSignal(java.util.Arrays.copyOf(testPattern, testPattern.length + 4));
+                for (int i = 0; i < signal.length; i += 2) {
+                    final short sample = (short)(((signal[i] << 8) & 0xff00) | (signal[i+1] & 0xff));
+                    Assert.assertTrue(Math.abs(sample) <= Short.MAX_VALUE * 0.8 + 1);
+                }
+
+                final byte[] checkPattern = det.detectSignal(prefixWithSilence(signal, 0.5));
+
+                printArrays("encodeDecodeShapedPulses", testPattern, checkPattern);
+                Assert.assertThat(testPattern, containsByteArray(checkPattern));
+            }
+        }
+    }
+
+    @Test
+    public void raisedCosineHasNoIntersymbolInterference() {
+        final PulseShape shape = PulseShape.raisedCosine(0.35, 8);
+
+        assertEquals(1.0, shape.amplitude(0), 1e-9);
+        for (int k = 1; k < 4; ++k) {
+            assertEquals(0.0, shape.amplitude(k), 1e-9);
+            assertEquals(0.0, shape.amplitude(-k), 1e-9);
+        }
+        assertEquals(0.0, shape.amplitude(4), 0.0);
+    }
+
+    /**
+     * The original, sample at a time, implementation of {@link BpskGenerator#generateSignal(byte[])},
+     * with the carrier phase kept across calls.
+     */
+    private static byte[] directSynthesis(
+        final double hz,
+        final int sampleRate,
+        final double symbolsPerSecond,
+        final byte[] symbols,
+        final int priorCalls
+    )
+    {
+        final double samplesPerSymbol = sampleRate / symbolsPerSecond;
+        final double radiansPerSample = hz * 2.0 * Math.PI / sampleRate;
+        final double[] start = new double[(int)(samplesPerSymbol / 2.0)];
+        final double[] end   = new double[start.length];
+        for (int i = 0; i < start.length; ++i) {
+            start[i] = Math.sin(i * Math.PI / samplesPerSymbol);
+            end[i]   = Math.cos(i * Math.PI / samplesPerSymbol);
+        }
+
+        final int symbolSamples = (int)samplesPerSymbol;
+        final short[] out = new short[symbols.length * symbolSamples];
+        long currentSample = (long)priorCalls * out.length;
+
+        /* The carrier phase continues from the reversals of prior calls. */
+        int reversals = 0;
+        for (final byte symbol : symbols) {
+            reversals += (symbol == 0) ? 1 : 0;
+        }
+        double shift = ((priorCalls * reversals) % 2 == 0) ? 0 : Math.PI;
+
+        for (int sym_i = 0, sample = 0; sym_i < symbols.length; ++sym_i) {
+            if (symbols[sym_i] == 0) {
+                shift = (shift == 0) ? Math.PI : 0;
+            }
+            if (sym_i > 0 && symbols[sym_i] == 0) {
+                fade(out, (int)(sample - samplesPerSymbol/2), end);
+            }
+            for (int i = 0; i < symbolSamples; ++i) {
+                out[sample++] = (short)(Short.MAX_VALUE * 0.8 * Math.cos(radiansPerSample * currentSample++ + shift));
+            }
+            if (sym_i > 0 && symbols[sym_i] == 0) {
+                fade(out, (int)(sample - samplesPerSymbol), start);
+            }
+        }
+        fade(out, 0, start);
+        fade(out, out.length - end.length, end);
+
+        final byte[] b = new byte[out.length * 2];
+        for (int i = 0; i < out.length; ++i) {
+            b[2*i]   = (byte)((out[i] >>> 8) & 0xff);
+            b[2*i+1] = (byte)((out[i]) & 0xff);
+        }
+        return b;
+    }
+
+    private static void fade(final short[] out, final int off, final double[] filter) {
+        for (int i = 0; i < filter.length; ++i) {
+            out[off+i] = (short)(out[off+i] * filter[i]);
+        }
+    }
+
     private void printArrays(String name, byte[] expect, byte[] test) {
         System.out.println("----"+name+"----");
         for (int i = 0; i < Math.max(expect.length, test.length); i++) {
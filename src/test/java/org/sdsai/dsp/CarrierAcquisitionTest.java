@@ -0,0 +1,76 @@
+package org.sdsai.dsp;
+
+import org.junit.Test;
+import org.junit.Assert;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.matchers.JUnitMatchers.containsString;
+
+public class CarrierAcquisitionTest {
+
+    private static final String TEST_STRING = "The quick brown fox jumps over the lazy dog 0123456789.";
+
+    private static byte[] generate(final double hz, final int sampleRate) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final BpskOutputStream os = new BpskOutputStream(bos, hz, sampleRate, BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+        os.preamble(64);
+        os.write(TEST_STRING.getBytes());
+        os.postamble(32);
+        os.close();
+        return bos.toByteArray();
+    }
+
+    private static void findCarrier(final double hz, final int sampleRate) throws IOException {
+        final byte[] audio = generate(hz, sampleRate);
+        final CarrierAcquisition acquisition = new CarrierAcquisition(sampleRate, BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+
+        boolean found = false;
+        for (int i = 0; i < audio.length; i += 1000) {
+            found |= acquisition.process(audio, i, Math.min(1000, audio.length - i));
+        }
+
+        assertTrue(found);
+        assertEquals(hz, acquisition.getCarrier(), 0.5);
+    }
+
+    @Test
+    public void findCarrier() throws IOException {
+        findCarrier(1000, 8000);
+        findCarrier(1237.3, 11025);
+    }
+
+    @Test
+    public void decodeMistuned() throws IOException {
+        final AcquiringDetector detector = new AcquiringDetector(new BpskDetector(1000, 8000));
+        final BpskInputStream is = new BpskInputStream(new ByteArrayInputStream(generate(1020, 8000)), detector);
+
+        final StringBuilder result = new StringBuilder();
+        final byte[] bytes = new byte[1024];
+        for (int read = is.read(bytes); read != -1; read = is.read(bytes)) {
+            result.append(new String(bytes, 0, read));
+        }
+
+        Assert.assertThat(result.toString(), containsString(TEST_STRING));
+        assertEquals(1020, detector.getFrequency(), 1);
+    }
+
+    @Test
+    public void ignoreNoise() {
+        final ChannelSimulator channel = new ChannelSimulator(8000, 1);
+        channel.setSignalToNoise(0);
+
+        final byte[] audio = new byte[10 * 8000 * 2];
+        channel.process(audio);
+
+        final CarrierAcquisition acquisition = new CarrierAcquisition(8000, BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+
+        assertFalse(acquisition.process(audio, 0, audio.length));
+        assertTrue(Double.isNaN(acquisition.getCarrier()));
+    }
+}
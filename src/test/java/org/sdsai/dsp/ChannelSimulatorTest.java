@@ -0,0 +1,172 @@
+package org.sdsai.dsp;
+
+import org.junit.Test;
+import org.junit.Assert;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.matchers.JUnitMatchers.containsString;
+
+public class ChannelSimulatorTest {
+
+    private static byte[] tone(final double hz, final int sampleRate, final int samples) {
+        final byte[] b = new byte[samples * 2];
+        new SignalGenerator(hz, sampleRate, (short)10000, true).read(b, 0, b.length, SampleFormat.PCM_16_BIG_ENDIAN);
+        return b;
+    }
+
+    private static double power(final byte[] b, final double hz, final int sampleRate) {
+        final short[] s = new short[b.length / 2];
+        for (int i = 0; i < s.length; ++i) {
+            s[i] = (short)(((b[2*i] << 8) & 0xff00) | (b[2*i+1] & 0xff));
+        }
+        final Goertzel g = new Goertzel(hz, sampleRate, s.length);
+        final Goertzel.FastResult r = new Goertzel.FastResult();
+        g.process(s, 0, s.length, r);
+        return r.magnitude_squared;
+    }
+
+    @Test
+    public void sameSeedSameOutput() {
+        final byte[] a = tone(1000, 8000, 8000);
+        final byte[] b = tone(1000, 8000, 8000);
+
+        for (final byte[] data : new byte[][]{ a, b }) {
+            final ChannelSimulator channel = new ChannelSimulator(8000, 42);
+            channel.setSignalToNoise(3);
+            channel.setFading(1);
+            channel.addPath(0.001, 0.3);
+            channel.setFrequencyOffset(2);
+            channel.setFrequencyDrift(0.5);
+            channel.process(data);
+        }
+
+        Assert.assertArrayEquals(a, b);
+    }
+
+    @Test
+    public void noisePower() {
+        final byte[] silence = new byte[2 * 100000];
+        final ChannelSimulator channel = new ChannelSimulator(8000, 1);
+        channel.setSignalRms(1000);
+        channel.setSignalToNoise(0);
+        channel.process(silence);
+
+        double sum = 0;
+        for (int i = 0; i < silence.length; i += 2) {
+            final short s = (short)(((silence[i] << 8) & 0xff00) | (silence[i+1] & 0xff));
+            sum += (double)s * s;
+        }
+
+        assertEquals(1000.0, Math.sqrt(sum / (silence.length / 2)), 20.0);
+    }
+
+    @Test
+    public void frequencyOffset() {
+        final byte[] b = tone(1000, 8000, 8000);
+
+        final ChannelSimulator channel = new ChannelSimulator(8000, 1);
+        channel.setFrequencyOffset(100);
+        channel.process(b);
+
+        Assert.assertTrue(power(b, 1100, 8000) > 100 * power(b, 1000, 8000));
+        Assert.assertTrue(power(b, 1100, 8000) > 100 * power(b, 900, 8000));
+    }
+
+    @Test
+    public void decodeThroughChannel() throws IOException {
+        final BpskGenerator generator = new BpskGenerator(1000, 8000);
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final BpskOutputStream os = new BpskOutputStream(bos, generator);
+        final String testString = "This is a very nice test.";
+        os.preamble(11);
+        os.write(testString.getBytes());
+        os.postamble(11);
+        os.close();
+
+        final byte[] data = bos.toByteArray();
+        final ChannelSimulator channel = new ChannelSimulator(8000, 7);
+        channel.setSignalToNoise(20);
+        channel.addPath(0.0005, 0.2);
+        channel.process(data);
+
+        final BpskInputStream is = new BpskInputStream(
+            new ByteArrayInputStream(data),
+            new BpskDetector(1000, 8000));
+
+        final byte[] bytes = new byte[1024];
+        String result = "";
+        for (int read = is.read(bytes); read != -1; read = is.read(bytes)) {
+            result += new String(bytes, 0, read);
+        }
+
+        Assert.assertThat(result, containsString(testString));
+    }
+
+    @Test
+    public void buildCorpus() throws IOException {
+        final File dir = new File(System.getProperty("java.io.tmpdir"), "sdsai-dsp-corpus-"+System.nanoTime());
+
+        final CorpusBuilder builder = new CorpusBuilder(dir, 5);
+        builder.setSecondsPerItem(3);
+        builder.build(3);
+
+        final byte[] first = readFile(builder.getAudioFile(1));
+        builder.buildItem(1);
+        Assert.assertArrayEquals(first, readFile(builder.getAudioFile(1)));
+
+        for (int i = 0; i < 3; ++i) {
+            Assert.assertTrue(builder.getAudioFile(i).length() > 3 * 8000 * 2 / 2);
+            Assert.assertThat(new String(readFile(builder.getLabelFile(i)), "US-ASCII"), containsString("text="));
+            builder.getAudioFile(i).delete();
+            builder.getLabelFile(i).delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void corporaDoNotShareItems() throws IOException {
+        final File dir = new File(System.getProperty("java.io.tmpdir"), "sdsai-dsp-corpus-"+System.nanoTime());
+
+        final CorpusBuilder first = new CorpusBuilder(new File(dir, "first"), 5);
+        final CorpusBuilder second = new CorpusBuilder(new File(dir, "second"), 6);
+        first.setSecondsPerItem(3);
+        second.setSecondsPerItem(3);
+        new File(dir, "first").mkdirs();
+        new File(dir, "second").mkdirs();
+
+        /* Item 31 of one corpus was once item 0 of the next. */
+        first.buildItem(31);
+        second.buildItem(0);
+
+        final String label = new String(readFile(first.getLabelFile(31)), "US-ASCII");
+        Assert.assertFalse(label.equals(new String(readFile(second.getLabelFile(0)), "US-ASCII")));
+
+        first.getAudioFile(31).delete();
+        first.getLabelFile(31).delete();
+        second.getAudioFile(0).delete();
+        second.getLabelFile(0).delete();
+        new File(dir, "first").delete();
+        new File(dir, "second").delete();
+        dir.delete();
+    }
+
+    private static byte[] readFile(final File f) throws IOException {
+        final java.io.FileInputStream in = new java.io.FileInputStream(f);
+        try {
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            final byte[] b = new byte[4096];
+            for (int read = in.read(b); read != -1; read = in.read(b)) {
+                bos.write(b, 0, read);
+            }
+            return bos.toByteArray();
+        }
+        finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.sdsai.dsp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measure how many real time PSK31 streams a {@link DecoderService} can decode.
+ *
+ * The same generated signal is offered to every stream as fast as the service accepts it.
+ * The heap used by the open streams gives the memory per stream, and the seconds of audio
+ * decoded per second of thread time gives the number of streams one processor can keep up with.
+ *
+ * This is a measurement tool, not part of the library. Run it from the test classpath.
+ */
+public class DecoderServiceBenchmark {
+
+    private static final String TEXT = "CQ CQ CQ DE N0CALL N0CALL K. The quick brown fox jumps over the lazy dog. ";
+
+    private final int streams;
+    private final int threads;
+    private final double seconds;
+    private final int sampleRate;
+
+    /**
+     * Constructor.
+     *
+     * @param streams The number of streams to decode at once.
+     * @param threads The number of decoding threads.
+     * @param seconds The seconds of audio offered to each stream.
+     * @param sampleRate The audio sample rate.
+     */
+    public DecoderServiceBenchmark(final int streams, final int threads, final double seconds, final int sampleRate) {
+        this.streams    = streams;
+        this.threads    = threads;
+        this.seconds    = seconds;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Generate at least {@link #seconds} of PSK31 audio.
+     */
+    private byte[] generate() throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final BpskOutputStream os = new BpskOutputStream(bos, 1000, sampleRate, BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+        final int bytes = (int) (seconds * sampleRate * 2);
+
+        while (bos.size() < bytes) {
+            os.write(TEXT.getBytes());
+            os.flush();
+        }
+
+        os.close();
+
+        return bos.toByteArray();
+    }
+
+    /**
+     * Return the heap in use after collecting garbage.
+     */
+    private static long usedMemory() {
+        final Runtime runtime = Runtime.getRuntime();
+
+        for (int i = 0; i < 3; ++i) {
+            System.gc();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Run the benchmark and print the results.
+     *
+     * @throws IOException on errors generating audio.
+     * @throws InterruptedException if interrupted.
+     */
+    public void run() throws IOException, InterruptedException {
+        final byte[] audio = generate();
+        final double audioSeconds = audio.length / 2.0 / sampleRate;
+
+        /* A tenth of a second of audio per buffer, and enough buffers for two per stream. */
+        final AudioBufferPool pool = new AudioBufferPool(sampleRate / 10 * 2, 2 * streams);
+        final DecoderService service = new DecoderService(threads, pool, 2);
+        final AtomicLong characters = new AtomicLong();
+
+        final PskDecoder.Listener listener = new PskDecoder.Listener() {
+            @Override
+            public void character(final PskDecoder decoder, final int c) {
+                characters.incrementAndGet();
+            }
+        };
+
+        final DecoderService.Stream[] open = new DecoderService.Stream[streams];
+        final long before = usedMemory();
+
+        for (int i = 0; i < streams; ++i) {
+            open[i] = service.open(1000, sampleRate, BpskGenerator.PSK31_SYMBOLS_PER_SECOND, listener);
+        }
+
+        final long perStream = (usedMemory() - before) / streams;
+
+        /* Offer audio to every stream in turn until all of it is queued. */
+        final int[] offered = new int[streams];
+        final long start = System.nanoTime();
+
+        for (int remaining = streams; remaining > 0; ) {
+            boolean progress = false;
+
+            for (int i = 0; i < streams; ++i) {
+                if (offered[i] < audio.length) {
+                    final int count = open[i].offer(audio, offered[i], audio.length - offered[i]);
+
+                    offered[i] += count;
+                    progress   |= count > 0;
+
+                    if (offered[i] == audio.length) {
+                        --remaining;
+                    }
+                }
+            }
+
+            if (!progress) {
+                Thread.yield();
+            }
+        }
+
+        for (int i = 0; i < streams; ++i) {
+            while (!open[i].isIdle()) {
+                Thread.yield();
+            }
+        }
+
+        final double elapsed = (System.nanoTime() - start) / 1e9;
+
+        service.shutdown(1, TimeUnit.MINUTES);
+
+        final double realTimeStreamsPerThread = streams * audioSeconds / elapsed / threads;
+
+        System.out.println("Streams:                      "+streams);
+        System.out.println("Threads:                      "+threads);
+        System.out.println("Audio per stream:             "+audioSeconds+" s at "+sampleRate+" Hz");
+        System.out.println("Shared pool:                  "+(pool.getBuffers() * (long) pool.getBufferSize())+" bytes");
+        System.out.println("Memory per stream:            "+perStream+" bytes");
+        System.out.println("Elapsed:                      "+elapsed+" s");
+        System.out.println("Characters decoded:           "+characters.get());
+        System.out.println("Real time streams per thread: "+(long) realTimeStreamsPerThread);
+    }
+
+    /**
+     * Run the benchmark from the command line.
+     *
+     * @param args The number of streams, and optionally the number of threads,
+     *        the seconds of audio per stream and the sample rate.
+     *
+     * @throws Exception on errors.
+     */
+    public static void main(final String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: DecoderServiceBenchmark <streams> [threads] [seconds] [sampleRate]");
+            return;
+        }
+
+        new DecoderServiceBenchmark(
+            Integer.parseInt(args[0]),
+            (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors(),
+            (args.length > 2) ? Double.parseDouble(args[2]) : 10,
+            (args.length > 3) ? Integer.parseInt(args[3]) : 8000).run();
+    }
+}
@@ -0,0 +1,203 @@
+package org.sdsai.dsp;
+
+import org.junit.Test;
+import org.junit.Assert;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.matchers.JUnitMatchers.containsString;
+
+public class DecoderServiceTest {
+
+    private static final String TEST_STRING = "The quick brown fox jumps over the lazy dog 0123456789.";
+
+    private static byte[] generate() throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final BpskOutputStream os = new BpskOutputStream(bos, 1000, 8000, BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+        os.preamble(32);
+        os.write(TEST_STRING.getBytes());
+        os.postamble(32);
+        os.close();
+        return bos.toByteArray();
+    }
+
+    private static class Collector implements PskDecoder.Listener {
+        private final StringBuffer text = new StringBuffer();
+
+        @Override
+        public void character(final PskDecoder decoder, final int c) {
+            text.append((char) c);
+        }
+    }
+
+    @Test
+    public void decodeManyStreams() throws Exception {
+        final byte[] audio = generate();
+        final int streams = 50;
+
+        /* Fewer buffers than the streams could queue, so the pool is shared. */
+        final AudioBufferPool pool = new AudioBufferPool(1001, streams);
+        final DecoderService service = new DecoderService(2, pool, 4);
+
+        final DecoderService.Stream[] open = new DecoderService.Stream[streams];
+        final Collector[] collectors = new Collector[streams];
+        final int[] offered = new int[streams];
+
+        for (int i = 0; i < streams; ++i) {
+            collectors[i] = new Collector();
+            open[i] = service.open(1000, 8000, BpskGenerator.PSK31_SYMBOLS_PER_SECOND, collectors[i]);
+        }
+
+        assertEquals(streams, service.getStreamCount());
+
+        for (boolean done = false; !done; ) {
+            done = true;
+            for (int i = 0; i < streams; ++i) {
+                offered[i] += open[i].offer(audio, offered[i], Math.min(3333, audio.length - offered[i]));
+                done &= offered[i] == audio.length;
+            }
+            Thread.yield();
+        }
+
+        for (int i = 0; i < streams; ++i) {
+            while (!open[i].isIdle()) {
+                Thread.yield();
+            }
+        }
+
+        assertTrue(service.shutdown(10, TimeUnit.SECONDS));
+        assertEquals(streams, pool.available());
+
+        for (int i = 0; i < streams; ++i) {
+            Assert.assertThat(collectors[i].text.toString(), containsString(TEST_STRING));
+            open[i].close();
+        }
+
+        assertEquals(0, service.getStreamCount());
+    }
+
+    @Test
+    public void refuseWhenQueueIsFull() throws Exception {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        /* An executor that only runs tasks when told to. */
+        final Executor executor = new Executor() {
+            @Override
+            public void execute(final Runnable task) {
+                tasks.add(task);
+            }
+        };
+
+        final AudioBufferPool pool = new AudioBufferPool(100, 3);
+        final DecoderService service = new DecoderService(executor, pool, 2);
+        final Collector collector = new Collector();
+        final DecoderService.Stream stream = service.open(1000, 8000, BpskGenerator.PSK31_SYMBOLS_PER_SECOND, collector);
+        final DecoderService.Stream other = service.open(1000, 8000, BpskGenerator.PSK31_SYMBOLS_PER_SECOND, collector);
+
+        final byte[] audio = new byte[1000];
+
+        /* The queue holds two buffers. */
+        assertEquals(200, stream.offer(audio, 0, audio.length));
+        assertEquals(0, stream.offer(audio, 0, audio.length));
+        assertEquals(1, tasks.size());
+
+        /* The pool has one buffer left. */
+        assertEquals(100, other.offer(audio, 0, audio.length));
+        assertEquals(0, pool.available());
+
+        tasks.remove(0).run();
+        assertTrue(stream.isIdle());
+        assertEquals(2, pool.available());
+
+        /* Closing returns queued buffers to the pool. */
+        other.close();
+        assertEquals(3, pool.available());
+        assertEquals(0, other.offer(audio, 0, audio.length));
+    }
+
+    @Test
+    public void closeWhenListenerThrows() throws Exception {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        final Executor executor = new Executor() {
+            @Override
+            public void execute(final Runnable task) {
+                tasks.add(task);
+            }
+        };
+
+        final AudioBufferPool pool = new AudioBufferPool(1000, 8);
+        final DecoderService service = new DecoderService(executor, pool, 8);
+        final DecoderService.Stream stream = service.open(
+            1000, 8000, BpskGenerator.PSK31_SYMBOLS_PER_SECOND,
+            new PskDecoder.Listener() {
+                @Override
+                public void character(final PskDecoder decoder, final int c) {
+                    throw new IllegalStateException("Listener failed.");
+                }
+            });
+
+        final byte[] audio = generate();
+        int offered = 0;
+
+        /* Run the stream until a character reaches the listener. */
+        while (!stream.isClosed() && offered < audio.length) {
+            offered += stream.offer(audio, offered, Math.min(4000, audio.length - offered));
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+
+        assertTrue(stream.isClosed());
+        assertTrue(stream.isIdle());
+        assertTrue(stream.getError().getCause() instanceof IllegalStateException);
+        assertEquals(8, pool.available());
+        assertEquals(0, service.getStreamCount());
+        assertEquals(0, stream.offer(audio, 0, 4000));
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    public void closeWhenExecutorRejects() throws Exception {
+        final Executor executor = new Executor() {
+            @Override
+            public void execute(final Runnable task) {
+                throw new RejectedExecutionException("Full.");
+            }
+        };
+
+        final AudioBufferPool pool = new AudioBufferPool(100, 4);
+        final DecoderService service = new DecoderService(executor, pool, 2);
+        final DecoderService.Stream stream = service.open(1000, 8000, BpskGenerator.PSK31_SYMBOLS_PER_SECOND, new Collector());
+
+        assertEquals(0, stream.offer(new byte[150], 0, 150));
+        assertTrue(stream.isClosed());
+        assertTrue(stream.isIdle());
+        assertTrue(stream.getError().getCause() instanceof RejectedExecutionException);
+        assertEquals(0, stream.queued());
+        assertEquals(4, pool.available());
+        assertEquals(0, service.getStreamCount());
+    }
+
+    @Test
+    public void refuseAfterShutdown() throws Exception {
+        final AudioBufferPool pool = new AudioBufferPool(100, 4);
+        final DecoderService service = new DecoderService(1, pool, 2);
+        final DecoderService.Stream stream = service.open(1000, 8000, BpskGenerator.PSK31_SYMBOLS_PER_SECOND, new Collector());
+
+        assertTrue(service.shutdown(10, TimeUnit.SECONDS));
+
+        assertEquals(0, stream.offer(new byte[150], 0, 150));
+        assertTrue(stream.isClosed());
+        assertTrue(stream.isIdle());
+        assertEquals(4, pool.available());
+    }
+}
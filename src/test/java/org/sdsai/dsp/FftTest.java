@@ -0,0 +1,41 @@
+package org.sdsai.dsp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FftTest {
+
+    @Test
+    public void matchesDft() {
+        final int n = 64;
+        final Fft fft = new Fft(n);
+        final FastRandom random = new FastRandom(7);
+        final double[] x  = new double[n];
+        final double[] re = new double[n];
+        final double[] im = new double[n];
+
+        for (int i = 0; i < n; ++i) {
+            x[i]  = random.nextGaussian();
+            re[i] = x[i];
+        }
+
+        fft.transform(re, im);
+
+        for (int k = 0; k < n; ++k) {
+            double sumRe = 0;
+            double sumIm = 0;
+            for (int j = 0; j < n; ++j) {
+                sumRe += x[j] * Math.cos(2 * Math.PI * k * j / n);
+                sumIm -= x[j] * Math.sin(2 * Math.PI * k * j / n);
+            }
+            assertEquals(sumRe, re[k], 1e-9);
+            assertEquals(sumIm, im[k], 1e-9);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectSizeNotAPowerOfTwo() {
+        new Fft(48);
+    }
+}
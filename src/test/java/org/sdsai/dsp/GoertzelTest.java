@@ -0,0 +1,60 @@
+package org.sdsai.dsp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class GoertzelTest {
+
+    @Test
+    public void bigEndianMatchesSamples() {
+        final FastRandom random = new FastRandom(5);
+        final byte[] data = new byte[2 * 1001];
+        for (int i = 0; i < data.length; ++i) {
+            data[i] = (byte) random.nextInt(256);
+        }
+
+        /* The reference path converts and filters the samples before processing them. */
+        final MovingAverageFilter filter = new MovingAverageFilter(1000, 8000);
+        final short[] samples = new short[data.length / 2];
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = filter.process((short)(((data[2*i] << 8) & 0xff00) | (data[2*i+1] & 0xff)));
+        }
+
+        final Goertzel expected = new Goertzel(1000, 8000, 16);
+        final Goertzel actual = new Goertzel(1000, 8000, 16);
+        final Goertzel.Result expectedResult = new Goertzel.Result();
+        final Goertzel.Result actualResult = new Goertzel.Result();
+        final MovingAverageFilter actualFilter = new MovingAverageFilter(1000, 8000);
+
+        /* Feed the bytes in uneven pieces so bins span calls. */
+        int samplesOff = 0;
+        int dataOff = 0;
+        int results = 0;
+        while (dataOff < data.length) {
+            final int piece = Math.min(data.length - dataOff, 2 * (1 + random.nextInt(40)));
+            final int end = dataOff + piece;
+
+            while (dataOff < end) {
+                final int consumed = actual.processBigEndian(data, dataOff, end - dataOff, actualFilter, actualResult);
+                final int sampled = expected.process(samples, samplesOff, (end - dataOff) / 2, expectedResult);
+
+                if (consumed == -1) {
+                    assertEquals(-1, sampled);
+                    samplesOff += (end - dataOff) / 2;
+                    dataOff = end;
+                }
+                else {
+                    assertEquals(sampled * 2, consumed);
+                    assertEquals(expectedResult.real, actualResult.real, 0);
+                    assertEquals(expectedResult.imaginary, actualResult.imaginary, 0);
+                    samplesOff += sampled;
+                    dataOff += consumed;
+                    ++results;
+                }
+            }
+        }
+
+        assertEquals(samples.length / 16, results);
+    }
+}
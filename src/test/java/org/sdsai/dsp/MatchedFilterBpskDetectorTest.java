@@ -0,0 +1,94 @@
+package org.sdsai.dsp;
+
+import org.junit.Test;
+import org.junit.Assert;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.matchers.JUnitMatchers.containsString;
+
+public class MatchedFilterBpskDetectorTest {
+
+    private static final String TEST_STRING = "The quick brown fox jumps over the lazy dog 0123456789.";
+
+    private static byte[] generate(final int sampleRate, final double symbolsPerSecond, final int repeats) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final BpskOutputStream os = new BpskOutputStream(bos, 1500, sampleRate, symbolsPerSecond);
+
+        os.preamble((int)(symbolsPerSecond / 2));
+        for (int i = 0; i < repeats; ++i) {
+            os.write(TEST_STRING.getBytes());
+        }
+        os.postamble((int)(symbolsPerSecond / 2));
+        os.close();
+
+        return bos.toByteArray();
+    }
+
+    private static String decode(final byte[] audio, final SymbolDetector detector) throws IOException {
+        final BpskInputStream is = new BpskInputStream(new ByteArrayInputStream(audio), detector);
+        final StringBuilder result = new StringBuilder();
+        final byte[] bytes = new byte[1024];
+
+        for (int read = is.read(bytes); read != -1; read = is.read(bytes)) {
+            result.append(new String(bytes, 0, read));
+        }
+
+        return result.toString();
+    }
+
+    @Test
+    public void readGeneratedAtEachRate() throws IOException {
+        final double[] rates = {
+            BpskGenerator.PSK31_SYMBOLS_PER_SECOND,
+            BpskGenerator.PSK63_SYMBOLS_PER_SECOND,
+            BpskGenerator.PSK125_SYMBOLS_PER_SECOND,
+            BpskGenerator.PSK250_SYMBOLS_PER_SECOND
+        };
+
+        for (final double rate : rates) {
+            for (final int sampleRate : new int[]{ 8000, 11025, 44100 }) {
+                final String result = decode(
+                    generate(sampleRate, rate, 1),
+                    new MatchedFilterBpskDetector(1500, sampleRate, rate));
+
+                Assert.assertThat(rate+" symbols/s at "+sampleRate+": "+result, containsString(TEST_STRING));
+            }
+        }
+    }
+
+    @Test
+    public void readThroughNoise() throws IOException {
+        final byte[] audio = generate(8000, BpskGenerator.PSK31_SYMBOLS_PER_SECOND, 1);
+
+        final ChannelSimulator channel = new ChannelSimulator(8000, 1);
+        channel.setSignalToNoise(0);
+        channel.setFrequencyOffset(2);
+        channel.process(audio);
+
+        Assert.assertThat(
+            decode(audio, new MatchedFilterBpskDetector(1500, 8000)),
+            containsString(TEST_STRING));
+    }
+
+    @Test
+    public void holdTimingOverLongTransmission() throws IOException {
+        /* At 11025 Hz the generator sends 352 samples per symbol, not quite 31.25 symbols per second. */
+        final int repeats = 100;
+        final byte[] audio = generate(11025, BpskGenerator.PSK31_SYMBOLS_PER_SECOND, repeats);
+        final MatchedFilterBpskDetector detector = new MatchedFilterBpskDetector(1500, 11025);
+
+        final String result = decode(audio, detector);
+
+        int found = 0;
+        for (int i = result.indexOf(TEST_STRING); i != -1; i = result.indexOf(TEST_STRING, i + 1)) {
+            ++found;
+        }
+
+        assertEquals(repeats, found);
+        assertEquals(11025.0 / 352, detector.getTrackedSymbolRate(), 0.01);
+    }
+}
@@ -0,0 +1,81 @@
+package org.sdsai.dsp;
+
+import org.junit.Test;
+import org.junit.Assert;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.matchers.JUnitMatchers.containsString;
+
+public class MultiCarrierBpskGeneratorTest {
+
+    private static String decode(final byte[] data, final double hz, final int sampleRate) throws IOException {
+        final BpskInputStream is = new BpskInputStream(
+            new ByteArrayInputStream(data),
+            new BpskDetector(hz, sampleRate));
+
+        final byte[] bytes = new byte[1024];
+        String result = "";
+        for (int read = is.read(bytes); read != -1; read = is.read(bytes)) {
+            result += new String(bytes, 0, read);
+        }
+        return result;
+    }
+
+    @Test
+    public void decodeEachCarrier() throws IOException {
+        final MultiCarrierBpskGenerator gen = new MultiCarrierBpskGenerator(8000, BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+        final int low  = gen.addCarrier(800);
+        final int high = gen.addCarrier(1600);
+
+        /* Idle for half a second so the detectors can find the carriers. */
+        final byte[] data = new byte[2 * 8000 * 12];
+        int off = gen.generate(data, 0, 8000);
+
+        final String lowString  = "This is a very nice test.";
+        final String highString = "Another carrier, 73.";
+        gen.queueCharacters(low, lowString.getBytes(), 0, lowString.length());
+        gen.queueCharacters(high, highString.getBytes(), 0, highString.length());
+
+        /* Generate in odd sized pieces until both queues drain, then a little idle. */
+        while (gen.getQueuedSymbols(low) > 0 || gen.getQueuedSymbols(high) > 0) {
+            off += gen.generate(data, off, 1001);
+        }
+        off += gen.generate(data, off, 2 * 8000);
+
+        final byte[] signal = java.util.Arrays.copyOf(data, off);
+
+        Assert.assertThat(decode(signal, 800, 8000), containsString(lowString));
+        Assert.assertThat(decode(signal, 1600, 8000), containsString(highString));
+    }
+
+    @Test
+    public void manyCarriersDoNotClip() throws IOException {
+        final MultiCarrierBpskGenerator gen = new MultiCarrierBpskGenerator(8000, 62.5, PulseShape.rootRaisedCosine(0.35, 6));
+        for (int c = 0; c < 8; ++c) {
+            gen.addCarrier(500 + c * 250);
+            gen.queueSymbols(c, new byte[]{ 1, 1, 1, 1, 1, 1, 1, 1 }, 0, 8);
+        }
+        assertEquals(8, gen.getCarriers());
+
+        final java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocateDirect(2 * 8000);
+        assertEquals(buffer.capacity(), gen.generate(buffer, buffer.capacity()));
+        buffer.flip();
+
+        int peak = 0;
+        while (buffer.hasRemaining()) {
+            peak = Math.max(peak, Math.abs(buffer.getShort()));
+        }
+
+        Assert.assertTrue(peak > 0);
+        Assert.assertTrue(peak <= Short.MAX_VALUE * 0.8 + 1);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectBadSymbols() throws IOException {
+        final MultiCarrierBpskGenerator gen = new MultiCarrierBpskGenerator(8000, BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+        gen.queueSymbols(gen.addCarrier(1000), new byte[]{ 1, 2 }, 0, 2);
+    }
+}
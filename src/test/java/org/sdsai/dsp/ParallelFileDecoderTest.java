@@ -0,0 +1,94 @@
+package org.sdsai.dsp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelFileDecoderTest {
+
+    private static final String TEST_STRING = "The quick brown fox jumps over the lazy dog 0123456789. ";
+
+    private static byte[] generate(final int repeats) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final BpskOutputStream os = new BpskOutputStream(bos, 1000, 8000, BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+        os.preamble(32);
+        for (int i = 0; i < repeats; ++i) {
+            os.write(TEST_STRING.getBytes());
+        }
+        os.postamble(32);
+        os.close();
+        return bos.toByteArray();
+    }
+
+    private static String decodeSequentially(final byte[] audio) throws IOException {
+        final BpskInputStream is = new BpskInputStream(new ByteArrayInputStream(audio), new BpskDetector(1000, 8000));
+        final StringBuilder sequential = new StringBuilder();
+        final byte[] bytes = new byte[1024];
+        for (int read = is.read(bytes); read != -1; read = is.read(bytes)) {
+            sequential.append(new String(bytes, 0, read));
+        }
+        return sequential.toString();
+    }
+
+    private static String decodeInParallel(final byte[] audio, final double chunk, final double overlap)
+        throws IOException
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final ParallelFileDecoder decoder = new ParallelFileDecoder(executor, new BpskDetector(1000, 8000));
+            decoder.setChunking(chunk, overlap);
+
+            return decoder.decode(audio);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void matchSequentialDecoding() throws IOException {
+        /* About four minutes of text, cut into many chunks. */
+        final byte[] audio = generate(20);
+
+        assertEquals(decodeSequentially(audio), decodeInParallel(audio, 10, 1));
+    }
+
+    @Test
+    public void matchSequentialDecodingInNoise() throws IOException {
+        final byte[] audio = generate(20);
+        final ChannelSimulator channel = new ChannelSimulator(8000, 3);
+        channel.setSignalToNoise(12);
+        channel.setFrequencyOffset(0.5);
+        channel.process(audio);
+
+        /* Seams that fall part way through the half symbol pieces given to each detector. */
+        final double chunk   = 7.3;
+        final double overlap = 1.37;
+        final String parallel = decodeInParallel(audio, chunk, overlap);
+
+        assertEquals(decodeSequentially(audio), parallel);
+
+        /* Every character at every seam is decoded once. */
+        final int seams = (int) (audio.length / 2 / (chunk * 8000));
+        assertTrue(seams > 20);
+        assertEquals(20, parallel.split(TEST_STRING, -1).length - 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectOverlapLongerThanChunk() {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            new ParallelFileDecoder(executor, new BpskDetector(1000, 8000)).setChunking(1, 2);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+}
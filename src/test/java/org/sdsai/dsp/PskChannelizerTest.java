@@ -0,0 +1,112 @@
+package org.sdsai.dsp;
+
+import org.junit.Test;
+import org.junit.Assert;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.matchers.JUnitMatchers.containsString;
+
+public class PskChannelizerTest {
+
+    /**
+     * Carriers on a channel center, between two channels and off center.
+     */
+    private static final double[] CARRIERS = { 700, 1031.25, 1500, 2213 };
+
+    private static final String[] TEXT = {
+        "Hello from seven hundred.",
+        "Between two channels here.",
+        "Fifteen hundred hertz 73.",
+        "Odd carrier 2213 Hz, K."
+    };
+
+    private static byte[] generate(final int sampleRate) {
+        final MultiCarrierBpskGenerator gen = new MultiCarrierBpskGenerator(sampleRate, BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+        for (int c = 0; c < CARRIERS.length; ++c) {
+            gen.addCarrier(CARRIERS[c]);
+        }
+
+        /* Idle for two seconds so the channels are found. */
+        final byte[] data = new byte[2 * sampleRate * 12];
+        int off = gen.generate(data, 0, 4 * sampleRate);
+
+        for (int c = 0; c < CARRIERS.length; ++c) {
+            gen.queueCharacters(c, TEXT[c].getBytes(), 0, TEXT[c].length());
+        }
+
+        boolean queued = true;
+        while (queued) {
+            off += gen.generate(data, off, 1000);
+            queued = false;
+            for (int c = 0; c < CARRIERS.length; ++c) {
+                queued |= gen.getQueuedSymbols(c) > 0;
+            }
+        }
+        off += gen.generate(data, off, 2 * sampleRate);
+
+        return Arrays.copyOf(data, off);
+    }
+
+    private static StringBuilder[] decode(final PskChannelizer channelizer, final byte[] data) throws IOException {
+        final StringBuilder[] text = new StringBuilder[channelizer.getChannels()];
+        for (int k = 0; k < text.length; ++k) {
+            text[k] = new StringBuilder();
+        }
+
+        channelizer.setListener(new PskChannelizer.Listener() {
+            @Override
+            public void character(final PskChannelizer c, final int channel, final int character) {
+                text[channel].append((char) character);
+            }
+        });
+
+        for (int i = 0; i < data.length; i += 1000) {
+            channelizer.detectSignal(data, i, Math.min(1000, data.length - i));
+        }
+
+        return text;
+    }
+
+    private static void checkCarriers(final int sampleRate, final int channels) throws IOException {
+        final PskChannelizer channelizer = new PskChannelizer(sampleRate, BpskGenerator.PSK31_SYMBOLS_PER_SECOND, channels);
+        channelizer.setBand(300, 3000);
+
+        final StringBuilder[] text = decode(channelizer, generate(sampleRate));
+
+        for (int c = 0; c < CARRIERS.length; ++c) {
+            final int channel = (int) Math.round(CARRIERS[c] / channelizer.getChannelSpacing() - 0.01);
+
+            assertTrue("Channel "+channel+" is active", channelizer.isActive(channel));
+            assertEquals(CARRIERS[c], channelizer.getCarrierFrequency(channel), 1.0);
+            Assert.assertThat(text[channel].toString(), containsString(TEXT[c]));
+        }
+    }
+
+    @Test
+    public void decodeEveryCarrier8000() throws IOException {
+        checkCarriers(8000, 128);
+    }
+
+    @Test
+    public void decodeEveryCarrier11025() throws IOException {
+        checkCarriers(11025, 128);
+    }
+
+    @Test
+    public void decodeThroughNoise() throws IOException {
+        final byte[] data = generate(8000);
+
+        final ChannelSimulator channel = new ChannelSimulator(8000, 5);
+        channel.setSignalToNoise(10);
+        channel.process(data);
+
+        final PskChannelizer channelizer = new PskChannelizer();
+        final StringBuilder[] text = decode(channelizer, data);
+
+        Assert.assertThat(text[24].toString(), containsString(TEXT[2]));
+    }
+}
@@ -0,0 +1,76 @@
+package org.sdsai.dsp;
+
+import org.junit.Test;
+import org.junit.Assert;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.matchers.JUnitMatchers.containsString;
+
+public class PskDecoderTest {
+
+    private static final String TEST_STRING = "The quick brown fox jumps over the lazy dog 0123456789.";
+
+    private static byte[] generate() throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final BpskOutputStream os = new BpskOutputStream(bos, 1000, 8000, BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+        os.preamble(32);
+        os.write(TEST_STRING.getBytes());
+        os.postamble(32);
+        os.close();
+        return bos.toByteArray();
+    }
+
+    @Test
+    public void feedToListener() throws IOException {
+        final byte[] audio = generate();
+        final StringBuilder result = new StringBuilder();
+
+        final PskDecoder decoder = new PskDecoder(1000, 8000, BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+        decoder.setListener(new PskDecoder.Listener() {
+            @Override
+            public void character(final PskDecoder d, final int c) {
+                result.append((char) c);
+            }
+        });
+
+        /* Feed odd sized pieces from a direct buffer, splitting samples across calls. */
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(audio.length);
+        buffer.put(audio).flip();
+
+        int decoded = 0;
+        while (buffer.hasRemaining()) {
+            final ByteBuffer piece = buffer.slice();
+            piece.limit(Math.min(piece.remaining(), 333));
+            decoded += decoder.feed(piece);
+            buffer.position(buffer.position() + piece.position());
+        }
+
+        Assert.assertThat(result.toString(), containsString(TEST_STRING));
+        assertEquals(result.length(), decoded);
+    }
+
+    @Test
+    public void decodeIntoSmallBuffer() throws IOException {
+        final ByteBuffer audio = ByteBuffer.wrap(generate());
+        final PskDecoder decoder = new PskDecoder(1000, 8000, BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+
+        /* A tiny output buffer leaves audio unread until characters are taken. */
+        final ByteBuffer out = ByteBuffer.allocate(3);
+        final StringBuilder result = new StringBuilder();
+
+        while (audio.hasRemaining() || decoder.pending() > 0) {
+            out.clear();
+            decoder.decode(audio, out);
+            out.flip();
+            while (out.hasRemaining()) {
+                result.append((char) out.get());
+            }
+        }
+
+        Assert.assertThat(result.toString(), containsString(TEST_STRING));
+    }
+}
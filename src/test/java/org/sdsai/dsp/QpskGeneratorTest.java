@@ -0,0 +1,87 @@
+package org.sdsai.dsp;
+
+import org.junit.Test;
+import org.junit.Assert;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.matchers.JUnitMatchers.containsString;
+
+public class QpskGeneratorTest {
+
+    private static byte[] generate(final QpskGenerator generator, final String text) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final BpskOutputStream os = new BpskOutputStream(bos, generator);
+        os.preamble(32);
+        os.write(text.getBytes());
+        os.postamble(32);
+        os.close();
+        return bos.toByteArray();
+    }
+
+    private static String decode(final byte[] data, final QpskDetector detector) throws IOException {
+        final BpskInputStream is = new BpskInputStream(new ByteArrayInputStream(data), detector);
+        final byte[] bytes = new byte[1024];
+        String result = "";
+        for (int read = is.read(bytes); read != -1; read = is.read(bytes)) {
+            result += new String(bytes, 0, read);
+        }
+        return result;
+    }
+
+    @Test
+    public void viterbiCorrectsErrors() {
+        final FastRandom random = new FastRandom(11);
+        final ConvolutionalEncoder encoder = new ConvolutionalEncoder();
+        final ViterbiDecoder decoder = new ViterbiDecoder();
+
+        final int[] bits = new int[2000];
+        int decoded = 0;
+        for (int i = 0; i < bits.length; ++i) {
+            bits[i] = random.nextInt(2);
+
+            final int symbol = encoder.encode(bits[i]);
+            int soft1 = ((symbol & 2) != 0) ? 64 : -64;
+            int soft0 = ((symbol & 1) != 0) ? 64 : -64;
+
+            /* Flip one code bit in every 16. */
+            if (i % 8 == 3) {
+                soft1 = -soft1;
+            }
+
+            final int bit = decoder.decode(soft1, soft0);
+            if (bit != -1) {
+                assertEquals("bit "+decoded, bits[decoded], bit);
+                ++decoded;
+            }
+        }
+
+        assertEquals(bits.length - ViterbiDecoder.DELAY, decoded);
+    }
+
+    @Test
+    public void readGenerated() throws IOException {
+        final String testString = "The quick brown fox jumps over the lazy dog 0123456789.";
+
+        for (final int sampleRate : new int[]{ 8000, 11025, 44100 }) {
+            final byte[] data = generate(new QpskGenerator(1500, sampleRate), testString);
+
+            Assert.assertThat(decode(data, new QpskDetector(1500, sampleRate)), containsString(testString));
+        }
+    }
+
+    @Test
+    public void readThroughNoise() throws IOException {
+        final String testString = "This is a very nice test.";
+        final byte[] data = generate(new QpskGenerator(1000, 8000), testString);
+
+        final ChannelSimulator channel = new ChannelSimulator(8000, 3);
+        channel.setSignalToNoise(0);
+        channel.process(data);
+
+        Assert.assertThat(decode(data, new QpskDetector(1000, 8000)), containsString(testString));
+    }
+}
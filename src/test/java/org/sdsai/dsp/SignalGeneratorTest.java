@@ -58,4 +58,63 @@ public class SignalGeneratorTest {
             assertEquals(s[i], s[j]);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void ncoMatchesDirect() {
+        final short amplitude = 10000;
+        final short[] direct = new short[4410];
+        final short[] nco = new short[direct.length];
+
+        new SignalGenerator(1000, 44100, amplitude).read(direct);
+        new SignalGenerator(1000, 44100, amplitude, true).read(nco);
+
+        for (int i = 0; i < direct.length; ++i) {
+            assertEquals(direct[i], nco[i], 2);
+        }
+    }
+
+    @Test
+    public void ncoTuneIsPhaseContinuous() {
+        final short amplitude = 10000;
+        final SignalGenerator g = new SignalGenerator(1000, 44100, amplitude, true);
+        final short[] s = new short[200];
+
+        g.read(s, 0, 100);
+        g.tune(1100);
+        g.read(s, 100, 100);
+
+        /* The largest step a 1100hz wave can take between two samples. */
+        final double maxStep = amplitude * 2.0 * Math.PI * 1100 / 44100;
+        for (int i = 1; i < s.length; ++i) {
+            Assert.assertTrue("Discontinuity at "+i, Math.abs(s[i] - s[i-1]) <= maxStep + 2);
+        }
+    }
+
+    @Test
+    public void directTuneIsPhaseContinuous() {
+        final short amplitude = 10000;
+        final SignalGenerator g = new SignalGenerator(1000, 44100, amplitude);
+        final short[] s = new short[200];
+
+        g.read(s, 0, 77);
+        g.tune(1100);
+        g.read(s, 77, 123);
+
+        final double maxStep = amplitude * 2.0 * Math.PI * 1100 / 44100;
+        for (int i = 1; i < s.length; ++i) {
+            Assert.assertTrue("Discontinuity at "+i, Math.abs(s[i] - s[i-1]) <= maxStep + 2);
+        }
+    }
+
+    @Test
+    public void readFloat() {
+        final float[] f = new float[16];
+        final SignalGenerator g = new SignalGenerator(1, f.length, Short.MAX_VALUE, true);
+
+        assertEquals(f.length, g.read(f));
+
+        assertEquals(0.0f, f[0], 0.0001f);
+        assertEquals(1.0f, f[f.length/4], 0.0001f);
+        assertEquals(-1.0f, f[f.length/4*3], 0.0001f);
+    }
+}
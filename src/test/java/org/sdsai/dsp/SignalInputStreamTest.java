@@ -0,0 +1,89 @@
+package org.sdsai.dsp;
+
+import org.junit.Test;
+import org.junit.Assert;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+
+public class SignalInputStreamTest {
+
+    @Test
+    public void bigEndian() throws IOException {
+        final short[] expected = new short[441];
+        new SignalGenerator(1000, 44100, (short)10000, true).read(expected);
+
+        final SignalInputStream is = new SignalInputStream(
+            new SignalGenerator(1000, 44100, (short)10000, true),
+            SampleFormat.PCM_16_BIG_ENDIAN);
+
+        final byte[] b = new byte[expected.length * 2];
+        assertEquals(b.length, is.read(b));
+
+        for (int i = 0; i < expected.length; ++i) {
+            assertEquals(expected[i], (short)(((b[2*i] << 8) & 0xff00) | (b[2*i+1] & 0xff)));
+        }
+    }
+
+    @Test
+    public void littleEndianByteBuffer() {
+        final short[] expected = new short[441];
+        new SignalGenerator(1000, 44100, (short)10000).read(expected);
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(expected.length * 2);
+        assertEquals(
+            buffer.capacity(),
+            new SignalGenerator(1000, 44100, (short)10000).read(buffer, SampleFormat.PCM_16_LITTLE_ENDIAN));
+
+        buffer.flip();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < expected.length; ++i) {
+            assertEquals(expected[i], buffer.getShort());
+        }
+    }
+
+    @Test
+    public void floatBigEndian() throws IOException {
+        final float[] expected = new float[441];
+        new SignalGenerator(1000, 44100, (short)10000, true).read(expected);
+
+        final SignalInputStream is = new SignalInputStream(
+            new SignalGenerator(1000, 44100, (short)10000, true),
+            SampleFormat.FLOAT_BIG_ENDIAN);
+
+        final byte[] b = new byte[expected.length * 4];
+        assertEquals(b.length, is.read(b));
+
+        final ByteBuffer buffer = ByteBuffer.wrap(b);
+        for (int i = 0; i < expected.length; ++i) {
+            assertEquals(expected[i], buffer.getFloat(), 0.0f);
+        }
+    }
+
+    @Test
+    public void oddSizedReadsAndEnd() throws IOException {
+        final byte[] expected = new byte[20];
+        new SignalGenerator(1000, 44100, (short)10000, true).read(expected, 0, expected.length, SampleFormat.PCM_16_BIG_ENDIAN);
+
+        final SignalInputStream is = new SignalInputStream(
+            new SignalGenerator(1000, 44100, (short)10000, true),
+            SampleFormat.PCM_16_BIG_ENDIAN,
+            expected.length / 2);
+
+        final byte[] b = new byte[expected.length];
+        int off = 0;
+        for (int read = is.read(b, off, 3); read != -1; read = is.read(b, off, Math.min(3, b.length - off))) {
+            off += read;
+            if (off == b.length) {
+                break;
+            }
+        }
+
+        Assert.assertArrayEquals(expected, b);
+        assertEquals(0, is.available());
+        assertEquals(-1, is.read());
+    }
+}
@@ -0,0 +1,123 @@
+package org.sdsai.dsp;
+
+import org.junit.Test;
+import org.junit.Assert;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SquelchedDetectorTest {
+
+    private static final String TEST_STRING = "CQ CQ de N0CALL N0CALL K";
+
+    /**
+     * Ten seconds of quiet, a short transmission, and ten more seconds of quiet, twice, all in noise.
+     */
+    private static byte[] generate() throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final BpskOutputStream os = new BpskOutputStream(bos, 1000, 8000, BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+        final byte[] quiet = new byte[10 * 8000 * 2];
+
+        for (int i = 0; i < 2; ++i) {
+            bos.write(quiet);
+            os.preamble(8);
+            os.write(TEST_STRING.getBytes());
+            os.postamble(8);
+            os.flush();
+        }
+        bos.write(quiet);
+        os.close();
+
+        final byte[] audio = bos.toByteArray();
+        final ChannelSimulator channel = new ChannelSimulator(8000, 1);
+        channel.setSignalToNoise(10);
+        channel.process(audio);
+
+        return audio;
+    }
+
+    private static String decode(final byte[] audio, final SymbolDetector detector) throws IOException {
+        final BpskInputStream is = new BpskInputStream(new ByteArrayInputStream(audio), detector);
+        final StringBuilder result = new StringBuilder();
+        final byte[] bytes = new byte[1024];
+
+        for (int read = is.read(bytes); read != -1; read = is.read(bytes)) {
+            result.append(new String(bytes, 0, read));
+        }
+
+        return result.toString();
+    }
+
+    @Test
+    public void skipQuietAudio() throws IOException {
+        final byte[] audio = generate();
+        final SquelchedDetector detector = new SquelchedDetector(new BpskDetector(1000, 8000));
+
+        final String result = decode(audio, detector);
+
+        assertEquals(2, result.split(TEST_STRING, -1).length - 1);
+        assertEquals(audio.length / 2, detector.getSamples());
+        assertTrue(
+            "Skipped "+detector.getSkippedSamples()+" of "+detector.getSamples()+" samples.",
+            detector.getSkippedSamples() > detector.getSamples() / 2);
+    }
+
+    @Test
+    public void firstSymbolsAreNotLost() throws IOException {
+        final byte[] audio = generate();
+
+        /* The attack window lets the squelched detector see the same transmissions as one left open. */
+        Assert.assertEquals(
+            decode(audio, new BpskDetector(1000, 8000)).trim(),
+            decode(audio, new SquelchedDetector(new BpskDetector(1000, 8000))).trim());
+    }
+
+    @Test
+    public void stayClosedInNoise() throws IOException {
+        final byte[] audio = new byte[30 * 8000 * 2];
+        final ChannelSimulator channel = new ChannelSimulator(8000, 1);
+        channel.setSignalToNoise(0);
+        channel.process(audio);
+
+        final SquelchedDetector detector = new SquelchedDetector(new MatchedFilterBpskDetector(1000, 8000), 1000);
+        decode(audio, detector);
+
+        assertFalse(detector.isOpen());
+        assertEquals(detector.getSamples(), detector.getSkippedSamples());
+    }
+
+    @Test
+    public void followRetunedDetector() throws IOException {
+        final byte[] audio = generate();
+        final BpskDetector psk = new BpskDetector(1500, 8000);
+        final SquelchedDetector detector = new SquelchedDetector(psk);
+
+        psk.tune(1000);
+        final String result = decode(audio, detector);
+
+        assertEquals(1000, detector.getFrequency(), 0);
+        assertEquals(2, result.split(TEST_STRING, -1).length - 1);
+    }
+
+    @Test
+    public void retuneSquelch() throws IOException {
+        final byte[] audio = generate();
+        final MatchedFilterBpskDetector psk = new MatchedFilterBpskDetector(1500, 8000);
+        final SquelchedDetector detector = new SquelchedDetector(psk, 1500);
+
+        psk.tune(1000);
+        detector.tune(1000);
+
+        assertEquals(2, decode(audio, detector).split(TEST_STRING, -1).length - 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectCloseAboveOpen() {
+        new SquelchedDetector(new BpskDetector()).setThresholds(3, 6);
+    }
+}
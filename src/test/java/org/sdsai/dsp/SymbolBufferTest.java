@@ -0,0 +1,100 @@
+package org.sdsai.dsp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SymbolBufferTest {
+
+    @Test
+    public void matchesByteBuffer() throws IOException {
+        final FastRandom random = new FastRandom(17);
+        final SymbolBuffer buffer = new SymbolBuffer(100);
+
+        /* A simple reference model of the buffer. */
+        final byte[] expected = new byte[100000];
+        int head = 0;
+        int tail = 0;
+
+        for (int round = 0; round < 2000; ++round) {
+            /* Append a mix of single symbols and words, crossing word boundaries and the end of the ring. */
+            final int count = Math.min(buffer.remaining(), random.nextInt(65));
+            final long bits = random.nextLong();
+            if (count == 1) {
+                buffer.putSymbol((int) bits & 1);
+            }
+            else {
+                buffer.putSymbols(bits, count);
+            }
+            for (int i = 0; i < count; ++i) {
+                expected[tail++] = (byte) ((bits >>> i) & 1);
+            }
+
+            assertEquals(tail - head, buffer.size());
+
+            final int peek = Math.min(buffer.size(), random.nextInt(65));
+            final int index = random.nextInt(buffer.size() - peek + 1);
+            long want = 0;
+            for (int i = 0; i < peek; ++i) {
+                want |= (long) expected[head + index + i] << i;
+            }
+            assertEquals(want, buffer.peekSymbols(index, peek));
+
+            if (buffer.size() > 0) {
+                assertEquals(expected[head + index], buffer.peek(index));
+            }
+
+            final int consume = random.nextInt(buffer.size() + 1);
+            buffer.consume(consume);
+            head += consume;
+        }
+
+        final byte[] actual = new byte[buffer.size()];
+        buffer.copyTo(0, actual, 0, actual.length);
+        final byte[] want = new byte[tail - head];
+        System.arraycopy(expected, head, want, 0, want.length);
+        assertArrayEquals(want, actual);
+    }
+
+    @Test
+    public void wrapsWithoutGrowing() throws IOException {
+        final SymbolBuffer buffer = new SymbolBuffer(100);
+        assertEquals(128, buffer.capacity());
+
+        for (int i = 0; i < 10000; ++i) {
+            buffer.putSymbols(0x5555555555555555L, 37);
+            assertEquals(0x5555555555L & ((1L << 37) - 1), buffer.peekSymbols(buffer.size() - 37, 37));
+            buffer.consume(buffer.size() > 90 ? 37 : 0);
+        }
+
+        assertEquals(128, buffer.capacity());
+    }
+
+    @Test(expected=IOException.class)
+    public void rejectOverflow() throws IOException {
+        final SymbolBuffer buffer = new SymbolBuffer(64);
+        buffer.putSymbols(-1L, 60);
+        buffer.putSymbols(-1L, 5);
+    }
+
+    @Test
+    public void writeTo() throws IOException {
+        final SymbolBuffer buffer = new SymbolBuffer(8);
+        buffer.append(new byte[]{ 1, 0, 0, 1, 1, 0, 1, 0, 1, 1 }, 0, 10);
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        buffer.writeTo(bos);
+
+        assertArrayEquals(new byte[]{ 1, 0, 0, 1, 1, 0, 1, 0, 1, 1 }, bos.toByteArray());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test(expected=IOException.class)
+    public void rejectBadSymbols() throws IOException {
+        new SymbolBuffer(8).append(new byte[]{ 1, 0, 2 }, 0, 3);
+    }
+}
@@ -0,0 +1,96 @@
+package org.sdsai.dsp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class VaricodeDecoderTest {
+
+    /**
+     * Feed symbols to the decoder and return the characters completed.
+     */
+    private static String decode(final VaricodeDecoder decoder, final byte[] symbols) {
+        final StringBuilder sb = new StringBuilder();
+        for (final byte symbol : symbols) {
+            final int c = decoder.decode(symbol);
+            if (c != VaricodeDecoder.NO_CHARACTER) {
+                sb.append((char) c);
+            }
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void decodeEveryCharacter() {
+        final VaricodeDecoder decoder = new VaricodeDecoder();
+
+        for (int c = 0; c < BpskOutputStream.CHARSET.length; ++c) {
+            final byte[] code = BpskOutputStream.CHARSET[c];
+            if (code == null) {
+                continue;
+            }
+
+            final byte[] symbols = new byte[code.length + 2];
+            System.arraycopy(code, 0, symbols, 0, code.length);
+
+            assertEquals("Character "+c, String.valueOf((char) c), decode(decoder, symbols));
+        }
+    }
+
+    @Test
+    public void recoverFromGarbage() {
+        final VaricodeDecoder decoder = new VaricodeDecoder();
+
+        /* Idle, a run of 1s far too long to be a character, then "hi". */
+        final byte[] symbols = new byte[100];
+        int i = 8;
+        for (; i < 60; ++i) {
+            symbols[i] = 1;
+        }
+        i += 2;
+        for (final char c : "hi".toCharArray()) {
+            for (final byte s : BpskOutputStream.CHARSET[c]) {
+                symbols[i++] = s;
+            }
+            i += 2;
+        }
+
+        assertEquals("hi", decode(decoder, symbols));
+    }
+
+    @Test
+    public void unknownCodeIsDropped() {
+        final VaricodeDecoder decoder = new VaricodeDecoder();
+
+        /* 1110111111 is not a character. It is followed by "e". */
+        assertEquals("e", decode(decoder, new byte[]{ 1,1,1,0,1,1,1,1,1,1,0,0, 1,1,0,0 }));
+        assertEquals(VaricodeDecoder.NO_CHARACTER, VaricodeDecoder.lookup(new byte[]{ 1,1,1,0,1,1,1,1,1,1 }, 0, 10));
+    }
+
+    @Test
+    public void restoreSnapshot() {
+        final byte[] code = BpskOutputStream.CHARSET['o'];
+        final int half = code.length / 2;
+
+        /* Stop part way through a character. */
+        final VaricodeDecoder decoder = new VaricodeDecoder();
+        decode(decoder, Arrays.copyOf(code, half));
+        final int state = decoder.snapshot();
+
+        final byte[] rest = new byte[code.length - half + 2];
+        System.arraycopy(code, half, rest, 0, code.length - half);
+
+        final VaricodeDecoder restored = new VaricodeDecoder();
+        restored.restore(state);
+
+        assertEquals("o", decode(decoder, rest));
+        assertEquals("o", decode(restored, rest));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectBadState() {
+        new VaricodeDecoder().restore(-1);
+    }
+}